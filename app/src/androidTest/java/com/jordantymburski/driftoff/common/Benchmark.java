@@ -0,0 +1,15 @@
+package com.jordantymburski.driftoff.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a timing test class. These are left out of the normal test run, and are run with the
+ * benchmark build property
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Benchmark {
+}
@@ -0,0 +1,134 @@
+package com.jordantymburski.driftoff.data;
+
+import com.jordantymburski.driftoff.common.ContextProvider;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MappedFileStorageTest {
+    private static final String FILE_NAME = "alarm_info_test.bin";
+
+    /**
+     * @return the backing file used by the test storage
+     */
+    private File getFile() {
+        return new File(ContextProvider.get().getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Creates a legacy preference storage instance
+     * @param deleteAll TRUE to delete all existing data. FALSE to leave as is
+     * @return the preference storage
+     */
+    private PreferenceStorage createLegacy(boolean deleteAll) {
+        PreferenceStorage storage = new PreferenceStorage(ContextProvider.get());
+        if (deleteAll) {
+            storage.deleteAll();
+        }
+        return storage;
+    }
+
+    /**
+     * Creates a storage instance
+     * @param deleteAll TRUE to delete all existing data. FALSE to leave as is
+     * @return the mapped file storage
+     */
+    private MappedFileStorage createStorage(boolean deleteAll) {
+        MappedFileStorage storage = new MappedFileStorage(getFile(), createLegacy(deleteAll));
+        if (deleteAll) {
+            storage.deleteAll();
+        }
+        return storage;
+    }
+
+    @Test
+    public void loadDefault() {
+        MappedFileStorage storage = createStorage(true);
+        AlarmInfo info = storage.load();
+        assertEquals(0, info.alarm);
+        assertEquals(21, info.timeHour);
+        assertEquals(30, info.timeMinute);
+    }
+
+    @Test
+    public void setValue() {
+        final MappedFileStorage storage = createStorage(true);
+        final AlarmInfo info = new AlarmInfo(new Date().getTime(), 14, 22);
+        storage.save(info);
+        assertEquals(info, storage.load());
+
+        final AlarmInfo info2 = new AlarmInfo(41523456L, 8, 14);
+        storage.save(info2);
+        assertEquals(info2, storage.load());
+    }
+
+    @Test
+    public void loadOldValue() {
+        final MappedFileStorage storage = createStorage(true);
+        final AlarmInfo info = new AlarmInfo(
+                new Date().getTime() - TimeUnit.DAYS.toMillis(4),
+                14, 22);
+        storage.save(info);
+
+        final MappedFileStorage storageNew = createStorage(false);
+        assertEquals(info, storageNew.load());
+    }
+
+    @Test
+    public void migrate() {
+        // Legacy preferences hold a value, but the mapped file does not
+        final AlarmInfo info = new AlarmInfo(new Date().getTime(), 6, 45);
+        final PreferenceStorage legacy = createLegacy(true);
+        legacy.save(info);
+        final MappedFileStorage storage = new MappedFileStorage(getFile(), legacy);
+        storage.deleteAll();
+        assertEquals(info, storage.load());
+
+        // Once migrated, the legacy value is no longer read
+        legacy.deleteAll();
+        assertEquals(info, createStorage(false).load());
+    }
+
+    @Test
+    public void tornWrite() throws IOException {
+        final MappedFileStorage storage = createStorage(true);
+        final AlarmInfo info = new AlarmInfo(new Date().getTime(), 14, 22);
+        final AlarmInfo info2 = new AlarmInfo(41523456L, 8, 14);
+        storage.save(info);
+        storage.save(info2);
+
+        // Damage the alarm value of the slot holding the latest save
+        final RandomAccessFile file = new RandomAccessFile(getFile(), "rw");
+        try {
+            long sequence0 = readSequence(file, 0);
+            long sequence1 = readSequence(file, 32);
+            file.seek((sequence0 > sequence1 ? 0 : 32) + 12);
+            file.writeLong(-1L);
+        } finally {
+            file.close();
+        }
+
+        // The previous save is recovered
+        assertEquals(info, createStorage(false).load());
+    }
+
+    /**
+     * Reads the sequence number of the slot at the base offset
+     * @param file the open backing file
+     * @param base slot offset
+     * @return the sequence
+     * @throws IOException if the read fails
+     */
+    private long readSequence(RandomAccessFile file, int base) throws IOException {
+        file.seek(base + 4);
+        return file.readLong();
+    }
+}
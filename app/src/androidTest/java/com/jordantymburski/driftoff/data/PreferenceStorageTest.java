@@ -1,5 +1,7 @@
 package com.jordantymburski.driftoff.data;
 
+import android.content.Context;
+
 import com.jordantymburski.driftoff.common.ContextProvider;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
@@ -56,4 +58,29 @@ public class PreferenceStorageTest {
         final PreferenceStorage storageNew = createStorage(false);
         assertEquals(info, storageNew.load());
     }
+
+    @Test
+    public void loadSeparateEntries() {
+        // Written by a version before the packed entry
+        createStorage(true);
+        ContextProvider.get().getSharedPreferences("DataStorage", Context.MODE_PRIVATE).edit()
+                .putLong("alarm", 41523456L)
+                .putInt("timeHour", 8)
+                .putInt("timeMinute", 14)
+                .commit();
+        assertEquals(new AlarmInfo(41523456L, 8, 14), createStorage(false).load());
+
+        // Replaced by the packed entry on the next save
+        final AlarmInfo info = new AlarmInfo(new Date().getTime(), 14, 22);
+        createStorage(false).save(info);
+        assertEquals(info, createStorage(false).load());
+    }
+
+    @Test
+    public void outOfPackedRange() {
+        final PreferenceStorage storage = createStorage(true);
+        final AlarmInfo info = new AlarmInfo(Long.MAX_VALUE, 14, 22);
+        storage.save(info);
+        assertEquals(info, storage.load());
+    }
 }
@@ -1,13 +1,22 @@
 package com.jordantymburski.driftoff.domain;
 
+import androidx.lifecycle.MutableLiveData;
+
 import com.jordantymburski.driftoff.App;
 import com.jordantymburski.driftoff.common.ContextProvider;
+import com.jordantymburski.driftoff.di.AppModule;
 import com.jordantymburski.driftoff.di.testing.DaggerMockAppComponent;
 import com.jordantymburski.driftoff.di.testing.MockDomainModule;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.model.TransferResult;
 import com.jordantymburski.driftoff.domain.usecase.GetInfo;
 import com.jordantymburski.driftoff.domain.usecase.RescheduleAlarm;
 import com.jordantymburski.driftoff.domain.usecase.SetInfo;
 import com.jordantymburski.driftoff.domain.usecase.StopAudio;
+import com.jordantymburski.driftoff.domain.usecase.TransferHistory;
+import com.jordantymburski.driftoff.service.SystemTimeSource;
+import com.jordantymburski.driftoff.service.TimerMultiplexer;
 
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -38,18 +47,41 @@ public class MockDomain {
     @Mock
     private StopAudio mStopAudio;
 
+    /**
+     * Wall clock source. Real, since the UI compares against the actual time
+     */
+    private final TimeSource mTimeSource = new SystemTimeSource();
+
+    /**
+     * Logical timers on the system alarm
+     */
+    @Mock
+    private TimerMultiplexer mTimerMultiplexer;
+
+    /**
+     * Transfer history domain use case
+     */
+    @Mock
+    private TransferHistory mTransferHistory;
+
     /**
      * Default constructor. Sets up the mocks and swaps the app main component with the new mocked
      * component
      */
     public MockDomain() {
         MockitoAnnotations.initMocks(this);
-
-        ((App) ContextProvider.get().getApplicationContext())
-                .component(DaggerMockAppComponent.builder()
-                        .mockDomainModule(new MockDomainModule(
-                                mGetInfo, mRescheduleAlarm, mSetInfo, mStopAudio))
-                        .build());
+        Mockito.when(mRescheduleAlarm.execute()).thenReturn(Completion.done());
+        Mockito.when(mStopAudio.execute()).thenReturn(Completion.done());
+        Mockito.when(mTransferHistory.observable())
+                .thenReturn(new MutableLiveData<TransferResult>());
+
+        final App app = (App) ContextProvider.get().getApplicationContext();
+        app.component(DaggerMockAppComponent.builder()
+                .appModule(new AppModule(app))
+                .mockDomainModule(new MockDomainModule(
+                        mGetInfo, mRescheduleAlarm, mSetInfo, mStopAudio,
+                        mTimeSource, mTimerMultiplexer, mTransferHistory))
+                .build());
     }
 
     /* ----------------------------------------------
@@ -65,7 +97,9 @@ public class MockDomain {
                 mGetInfo,
                 mRescheduleAlarm,
                 mSetInfo,
-                mStopAudio
+                mStopAudio,
+                mTimerMultiplexer,
+                mTransferHistory
         };
     }
 
@@ -108,6 +142,27 @@ public class MockDomain {
         return mStopAudio;
     }
 
+    /**
+     * @return the wall clock source
+     */
+    public TimeSource timeSource() {
+        return mTimeSource;
+    }
+
+    /**
+     * @return the logical timers on the system alarm
+     */
+    public TimerMultiplexer timerMultiplexer() {
+        return mTimerMultiplexer;
+    }
+
+    /**
+     * @return the transfer history use case
+     */
+    public TransferHistory transferHistory() {
+        return mTransferHistory;
+    }
+
     /**
      * Verifies that there are no more interactions on all domain use cases
      */
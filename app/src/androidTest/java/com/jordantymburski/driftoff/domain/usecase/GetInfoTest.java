@@ -6,6 +6,7 @@ import androidx.test.annotation.UiThreadTest;
 
 import com.jordantymburski.driftoff.common.ResettableCountDownLatch;
 import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
 import org.junit.After;
@@ -16,15 +17,25 @@ import org.junit.Test;
 import org.junit.rules.TestRule;
 import org.junit.runners.MethodSorters;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static org.junit.Assert.*;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class GetInfoTest implements Observer<AlarmInfo> {
+    /**
+     * Domain command executor
+     */
+    private final DomainExecutor mExecutor = new DomainExecutor();
+
     /**
      * Get info use case
      */
@@ -79,7 +90,7 @@ public class GetInfoTest implements Observer<AlarmInfo> {
         Mockito.when(mStorage.load()).thenReturn(mInitInfo);
 
         // GetInfo use case set-up and observe
-        mGetInfo = new GetInfo(mStorage);
+        mGetInfo = new GetInfo(mExecutor, mStorage);
         mGetInfo.observable().observeForever(this);
     }
 
@@ -113,7 +124,7 @@ public class GetInfoTest implements Observer<AlarmInfo> {
         assertEquals(mInitInfo, mGetInfo.current());
 
         // Create a new use case but do not observe. It should still properly fetch
-        final AlarmInfo fetchedFreshInfo = new GetInfo(mStorage).current();
+        final AlarmInfo fetchedFreshInfo = new GetInfo(mExecutor, mStorage).current();
         assertNotNull(fetchedFreshInfo);
         assertEquals(mInitInfo, fetchedFreshInfo);
     }
@@ -136,7 +147,114 @@ public class GetInfoTest implements Observer<AlarmInfo> {
         assertEquals(newInfo, mObservedInfo);
 
         // Try and post on a fresh object. This should do nothing but NOT crash
-        new GetInfo(mStorage).post(newInfo);
+        new GetInfo(mExecutor, mStorage).post(newInfo);
+    }
+
+    @Test
+    public void t4_singleFlight() throws InterruptedException {
+        // Slow storage so every caller arrives while the first load is still in flight
+        final Storage slowStorage = Mockito.mock(Storage.class);
+        Mockito.when(slowStorage.load()).thenAnswer(new Answer<AlarmInfo>() {
+            @Override
+            public AlarmInfo answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(100);
+                return new AlarmInfo(mInitInfo.alarm, mInitInfo.timeHour, mInitInfo.timeMinute);
+            }
+        });
+        final GetInfo getInfo = new GetInfo(mExecutor, slowStorage);
+
+        // Hammer the cold path from many threads at once
+        final int threadCount = 32;
+        final int callsPerThread = 100;
+        final AtomicReferenceArray<AlarmInfo> results = new AtomicReferenceArray<>(threadCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        AlarmInfo info = null;
+                        for (int call = 0; call < callsPerThread; call++) {
+                            final AlarmInfo next = getInfo.current();
+                            assertTrue(info == null || info == next);
+                            info = next;
+                        }
+                        results.set(index, info);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // Every caller got the very same snapshot from exactly one storage read
+        Mockito.verify(slowStorage, Mockito.times(1)).load();
+        for (int i = 0; i < threadCount; i++) {
+            assertNotNull(results.get(i));
+            assertSame(results.get(0), results.get(i));
+        }
+        assertEquals(mInitInfo, results.get(0));
+    }
+
+    @Test
+    public void t5_stalePost() throws InterruptedException {
+        // Storage that holds the load in flight until released
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch loadRelease = new CountDownLatch(1);
+        final Storage slowStorage = Mockito.mock(Storage.class);
+        Mockito.when(slowStorage.load()).thenAnswer(new Answer<AlarmInfo>() {
+            @Override
+            public AlarmInfo answer(InvocationOnMock invocation) throws Throwable {
+                loadStarted.countDown();
+                loadRelease.await();
+                return mInitInfo;
+            }
+        });
+        final GetInfo getInfo = new GetInfo(mExecutor, slowStorage);
+
+        // Start the cold load
+        final AtomicReference<AlarmInfo> loadResult = new AtomicReference<>();
+        final Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loadResult.set(getInfo.current());
+            }
+        });
+        loader.start();
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+        // Post newer info while the load is still reading the storage
+        final AlarmInfo newInfo = new AlarmInfo(
+                new Date().getTime(), mRandom.nextInt(24), mRandom.nextInt(60));
+        getInfo.post(newInfo);
+        assertEquals(1L, getInfo.version());
+
+        // Let the stale load finish. It must not replace the posted info
+        loadRelease.countDown();
+        loader.join(5000);
+        assertSame(newInfo, loadResult.get());
+        assertSame(newInfo, getInfo.current());
+        assertEquals(1L, getInfo.version());
+    }
+
+    @Test
+    public void t6_outOfRange() {
+        // Legacy storage can hold infos that can not be packed. They are normalized, not refused
+        final Storage legacyStorage = Mockito.mock(Storage.class);
+        Mockito.when(legacyStorage.load()).thenReturn(new AlarmInfo(-1L, 24, 75));
+        final GetInfo getInfo = new GetInfo(mExecutor, legacyStorage);
+        assertEquals(new AlarmInfo(0L, 23, 59), getInfo.current());
+
+        getInfo.post(new AlarmInfo(1L << 50, 12, 0));
+        assertEquals(new AlarmInfo(0L, 12, 0), getInfo.current());
+        assertEquals(2L, getInfo.version());
     }
 
     /**
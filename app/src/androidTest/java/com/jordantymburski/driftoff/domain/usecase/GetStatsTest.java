@@ -0,0 +1,253 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.domain.model.SleepStats;
+import com.jordantymburski.driftoff.service.SystemTimeSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GetStatsTest {
+    private static final double DELTA = 1e-6;
+
+    /**
+     * Domain command executor
+     */
+    private final DomainExecutor mExecutor = new DomainExecutor();
+
+    /**
+     * Get stats use case
+     */
+    private GetStats mGetStats;
+
+    /**
+     * In memory history
+     */
+    private final List<SleepSession> mHistory = new ArrayList<>();
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Number of history scans
+     */
+    private int mScans;
+
+    @Before
+    public void setup() {
+        mGetStats = new GetStats(mExecutor, new HistoryStorage() {
+            @Override
+            public boolean appendSessions(List<SleepSession> sessions) {
+                return true;
+            }
+
+            @Override
+            public void armed(long time, int timeHour, int timeMinute) {
+            }
+
+            @Override
+            public void scan(Visitor visitor) {
+                mScans++;
+                for (SleepSession session : mHistory) {
+                    visitor.visit(session);
+                }
+            }
+
+            @Override
+            public SleepSession stopped(long time, boolean cancelled) {
+                return null;
+            }
+        }, new SystemTimeSource());
+    }
+
+    /**
+     * Recomputes the statistics for one period directly from every session in the history
+     * @param month TRUE for the month of the time. FALSE for the week
+     * @param time unix epoch time in the period
+     * @return the brute force statistics
+     */
+    private SleepStats bruteForce(boolean month, long time) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        final int key = month ? GetStats.monthKey(calendar) : GetStats.weekKey(calendar);
+
+        SleepStats stats = SleepStats.EMPTY;
+        for (SleepSession session : mHistory) {
+            calendar.setTimeInMillis(session.armedAt);
+            final int sessionKey = month
+                    ? GetStats.monthKey(calendar) : GetStats.weekKey(calendar);
+            if (sessionKey == key) {
+                calendar.setTimeInMillis(session.stoppedAt);
+                stats = stats.plus(session.timeHour * 60 + session.timeMinute,
+                        calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE),
+                        session.cancelled);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Checks the averages and variance of the statistics against a direct two pass computation
+     * @param stats statistics to check
+     * @param setpoints setpoints in minutes from noon
+     * @param cancelled number of cancelled sessions
+     */
+    private void checkMoments(SleepStats stats, List<Integer> setpoints, int cancelled) {
+        double mean = 0.0;
+        for (int setpoint : setpoints) {
+            mean += setpoint;
+        }
+        mean /= setpoints.size();
+
+        double variance = 0.0;
+        for (int setpoint : setpoints) {
+            variance += (setpoint - mean) * (setpoint - mean);
+        }
+        variance /= setpoints.size();
+
+        assertEquals(setpoints.size(), stats.count);
+        assertEquals((mean + 12 * 60) % (24 * 60), stats.getAverageSetpoint(), DELTA);
+        assertEquals(variance, stats.getSetpointVariance(), DELTA);
+        assertEquals((double) cancelled / setpoints.size(), stats.getCancelRate(), DELTA);
+    }
+
+    /**
+     * Generates a synthetic history of nightly sessions
+     * @param nights number of nights
+     * @param start unix epoch time of the first night
+     */
+    private void generate(int nights, long start) {
+        long night = start;
+        for (int i = 0; i < nights; i++) {
+            final long armedAt = night + mRandom.nextInt((int) TimeUnit.HOURS.toMillis(4));
+            mHistory.add(new SleepSession(armedAt, (20 + mRandom.nextInt(8)) % 24,
+                    mRandom.nextInt(60),
+                    armedAt + mRandom.nextInt((int) TimeUnit.HOURS.toMillis(3)),
+                    mRandom.nextInt(5) == 0));
+            night += TimeUnit.DAYS.toMillis(1);
+        }
+    }
+
+    /**
+     * Blocks until everything queued on the executor has run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void waitForExecutor() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void empty() throws InterruptedException {
+        mGetStats.getWeek(System.currentTimeMillis());
+        waitForExecutor();
+        assertEquals(SleepStats.EMPTY, mGetStats.getWeek(System.currentTimeMillis()));
+        assertEquals(0.0, SleepStats.EMPTY.getCancelRate(), DELTA);
+    }
+
+    @Test
+    public void moments() {
+        // Bedtimes either side of midnight average to around midnight, not midday
+        final List<Integer> setpoints = new ArrayList<>();
+        SleepStats stats = SleepStats.EMPTY;
+        int cancelled = 0;
+        for (int i = 0; i < 1000; i++) {
+            final int minute = (23 * 60 + mRandom.nextInt(120)) % (24 * 60);
+            final boolean cancel = mRandom.nextBoolean();
+            stats = stats.plus(minute, minute, cancel);
+            setpoints.add((minute + 12 * 60) % (24 * 60));
+            cancelled += cancel ? 1 : 0;
+        }
+        checkMoments(stats, setpoints, cancelled);
+        assertEquals(stats.getAverageSetpoint(), stats.getAverageStop(), DELTA);
+        assertTrue(stats.getAverageSetpoint() >= 23 * 60
+                || stats.getAverageSetpoint() <= 60);
+    }
+
+    @Test
+    public void rebuildMatchesBruteForce() throws InterruptedException {
+        final long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(3 * 365);
+        generate(3 * 365, start);
+
+        mGetStats.rebuild();
+        waitForExecutor();
+
+        for (long time = start; time < start + TimeUnit.DAYS.toMillis(3 * 365);
+                time += TimeUnit.DAYS.toMillis(3)) {
+            assertEquals(bruteForce(false, time), mGetStats.getWeek(time));
+            assertEquals(bruteForce(true, time), mGetStats.getMonth(time));
+        }
+    }
+
+    @Test
+    public void incrementalMatchesRebuild() throws InterruptedException {
+        final long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2 * 365);
+        generate(365, start);
+        mGetStats.rebuild();
+        waitForExecutor();
+
+        // Sessions are added one at a time as they complete
+        final int existing = mHistory.size();
+        generate(365, start + TimeUnit.DAYS.toMillis(365));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = existing; i < mHistory.size(); i++) {
+                    mGetStats.record(mHistory.get(i));
+                }
+            }
+        });
+        waitForExecutor();
+
+        for (long time = start; time < start + TimeUnit.DAYS.toMillis(2 * 365);
+                time += TimeUnit.DAYS.toMillis(1)) {
+            assertEquals(bruteForce(false, time), mGetStats.getWeek(time));
+            assertEquals(bruteForce(true, time), mGetStats.getMonth(time));
+        }
+    }
+
+    @Test
+    public void recordBeforeLoad() throws InterruptedException {
+        final long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30);
+        generate(30, start);
+
+        // Completed sessions do not build the rollups
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mGetStats.record(mHistory.get(mHistory.size() - 1));
+            }
+        });
+        waitForExecutor();
+        assertEquals(0, mScans);
+
+        // The first read builds them, with every session counted once
+        mGetStats.getWeek(start);
+        waitForExecutor();
+        assertEquals(1, mScans);
+        for (long time = start; time < start + TimeUnit.DAYS.toMillis(30);
+                time += TimeUnit.DAYS.toMillis(1)) {
+            assertEquals(bruteForce(false, time), mGetStats.getWeek(time));
+            assertEquals(bruteForce(true, time), mGetStats.getMonth(time));
+        }
+    }
+}
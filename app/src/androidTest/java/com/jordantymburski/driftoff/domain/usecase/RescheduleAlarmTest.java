@@ -1,6 +1,8 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
 import org.junit.Before;
@@ -11,6 +13,9 @@ import org.mockito.MockitoAnnotations;
 
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 
 public class RescheduleAlarmTest {
     /**
@@ -19,6 +24,11 @@ public class RescheduleAlarmTest {
     @Mock
     private AlarmScheduler mAlarmScheduler;
 
+    /**
+     * Domain command executor
+     */
+    private final DomainExecutor mExecutor = new DomainExecutor();
+
     /**
      * Get info mock class
      */
@@ -41,40 +51,98 @@ public class RescheduleAlarmTest {
         MockitoAnnotations.initMocks(this);
 
         // RescheduleAlarm use case set-up
-        mRescheduleAlarm = new RescheduleAlarm(mAlarmScheduler, mGetInfo);
+        mRescheduleAlarm = new RescheduleAlarm(mAlarmScheduler, mExecutor, mGetInfo, 100L);
     }
 
     @Test
-    public void active() {
+    public void active() throws InterruptedException {
         // Set up get info with an active alarm object
         final AlarmInfo info = new AlarmInfo(
                 new Date().getTime(), mRandom.nextInt(24), mRandom.nextInt(60));
         Mockito.when(mGetInfo.current()).thenReturn(info);
 
-        // Trigger
+        // Trigger and wait for the quiet window
         mRescheduleAlarm.execute();
+        Thread.sleep(250);
 
         // Check on the execution
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verifyNoMoreInteractions(mGetInfo);
-        Mockito.verify(mAlarmScheduler).cancel();
         Mockito.verify(mAlarmScheduler).schedule(info.alarm);
         Mockito.verifyNoMoreInteractions(mAlarmScheduler);
     }
 
     @Test
-    public void inactive() {
+    public void inactive() throws InterruptedException {
         // Set up get info with an inactive alarm
         final AlarmInfo info = new AlarmInfo(
                 0L, mRandom.nextInt(24), mRandom.nextInt(60));
         Mockito.when(mGetInfo.current()).thenReturn(info);
 
-        // Trigger
+        // Trigger and wait for the quiet window
         mRescheduleAlarm.execute();
+        Thread.sleep(250);
 
         // Check on the execution
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verifyNoMoreInteractions(mGetInfo);
         Mockito.verifyZeroInteractions(mAlarmScheduler);
     }
+
+    @Test
+    public void burst() throws InterruptedException {
+        // Set up get info with an active alarm object
+        final AlarmInfo info = new AlarmInfo(
+                new Date().getTime(), mRandom.nextInt(24), mRandom.nextInt(60));
+        Mockito.when(mGetInfo.current()).thenReturn(info);
+
+        // A burst of requests, each inside the quiet window of the last
+        final Completion[] completions = new Completion[10];
+        for (int i = 0; i < completions.length; i++) {
+            completions[i] = mRescheduleAlarm.execute();
+            Thread.sleep(20);
+        }
+        Mockito.verifyZeroInteractions(mAlarmScheduler);
+        assertFalse(completions[0].isDone());
+
+        // Only one reschedule after the burst settles, completing every request
+        assertTrue(completions[completions.length - 1].await(1, TimeUnit.SECONDS));
+        for (Completion completion : completions) {
+            assertTrue(completion.isDone());
+        }
+        Mockito.verify(mAlarmScheduler).schedule(info.alarm);
+        Mockito.verifyNoMoreInteractions(mAlarmScheduler);
+        assertEquals(10L, mRescheduleAlarm.getReceivedRequests());
+        assertEquals(1L, mRescheduleAlarm.getPerformedReschedules());
+
+        // A later request reschedules again
+        mRescheduleAlarm.execute();
+        Thread.sleep(250);
+        Mockito.verify(mAlarmScheduler, Mockito.times(2)).schedule(info.alarm);
+        assertEquals(11L, mRescheduleAlarm.getReceivedRequests());
+        assertEquals(2L, mRescheduleAlarm.getPerformedReschedules());
+    }
+
+    @Test
+    public void failure() throws InterruptedException {
+        // Set up get info with an active alarm object, and a scheduler that fails
+        final AlarmInfo info = new AlarmInfo(
+                new Date().getTime(), mRandom.nextInt(24), mRandom.nextInt(60));
+        Mockito.when(mGetInfo.current()).thenReturn(info);
+        final IllegalStateException error = new IllegalStateException("Failed schedule");
+        Mockito.doThrow(error).when(mAlarmScheduler).schedule(info.alarm);
+
+        // Every waiting request fails with it
+        final Completion first = mRescheduleAlarm.execute();
+        final Completion second = mRescheduleAlarm.execute();
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        assertSame(error, first.getError());
+        assertSame(error, second.getError());
+
+        // A later request succeeds once the scheduler recovers
+        Mockito.doNothing().when(mAlarmScheduler).schedule(info.alarm);
+        final Completion later = mRescheduleAlarm.execute();
+        assertTrue(later.await(1, TimeUnit.SECONDS));
+        assertNull(later.getError());
+    }
 }
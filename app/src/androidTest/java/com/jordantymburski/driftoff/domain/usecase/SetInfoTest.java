@@ -1,18 +1,30 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
 import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.service.SystemTimeSource;
 
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -24,12 +36,34 @@ public class SetInfoTest {
     @Mock
     private AlarmScheduler mAlarmScheduler;
 
+    /**
+     * Shared background worker
+     */
+    private final BackgroundExecutor mBackground = new BackgroundExecutor();
+
+    /**
+     * Domain command executor
+     */
+    private final DomainExecutor mExecutor = new DomainExecutor();
+
     /**
      * Get info mock class
      */
     @Mock
     private GetInfo mGetInfo;
 
+    /**
+     * Get stats mock class
+     */
+    @Mock
+    private GetStats mGetStats;
+
+    /**
+     * History storage mock class
+     */
+    @Mock
+    private HistoryStorage mHistory;
+
     /**
      * Initialized info
      */
@@ -51,6 +85,11 @@ public class SetInfoTest {
     @Mock
     private Storage mStorage;
 
+    /**
+     * Wall clock source
+     */
+    private final TimeSource mTimeSource = new SystemTimeSource();
+
     @Before
     public void setup() {
         // Initialize mocks
@@ -61,7 +100,8 @@ public class SetInfoTest {
                 new AlarmInfo(0L, mRandom.nextInt(24), mRandom.nextInt(60)));
 
         // SetInfo use case set-up
-        mSetInfo = new SetInfo(mAlarmScheduler, mGetInfo, mStorage);
+        mSetInfo = new SetInfo(mAlarmScheduler, mExecutor, mGetInfo, mGetStats, mHistory,
+                new SaveCoalescer(mBackground, mExecutor, mStorage, 0L), mTimeSource);
     }
 
     @Test
@@ -78,6 +118,7 @@ public class SetInfoTest {
         Thread.sleep(250);
         assertNotEquals(mInitInfo, newInfo);
         Mockito.verifyZeroInteractions(mAlarmScheduler);
+        Mockito.verifyZeroInteractions(mHistory);
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verify(mGetInfo).post(newInfo);
         Mockito.verifyNoMoreInteractions(mGetInfo);
@@ -96,6 +137,7 @@ public class SetInfoTest {
         Thread.sleep(250);
         assertNotEquals(mInitInfo, newInfo2);
         Mockito.verifyZeroInteractions(mAlarmScheduler);
+        Mockito.verifyZeroInteractions(mHistory);
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verify(mGetInfo).post(newInfo2);
         Mockito.verifyNoMoreInteractions(mGetInfo);
@@ -111,12 +153,17 @@ public class SetInfoTest {
 
         // Generate the expected info
         Thread.sleep(250);
-        final AlarmInfo freshAlarmInfo = new AlarmInfo(mInitInfo, mInitInfo.getTimeInMillis());
+        final AlarmInfo freshAlarmInfo =
+                new AlarmInfo(mInitInfo, mInitInfo.getTimeInMillis(mTimeSource));
 
         // Check
         Mockito.verify(mAlarmScheduler).schedule(freshAlarmInfo.alarm);
         Mockito.verifyNoMoreInteractions(mAlarmScheduler);
 
+        Mockito.verify(mHistory).armed(Mockito.anyLong(),
+                Mockito.eq(mInitInfo.timeHour), Mockito.eq(mInitInfo.timeMinute));
+        Mockito.verifyNoMoreInteractions(mHistory);
+
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verify(mGetInfo).post(freshAlarmInfo);
         Mockito.verifyNoMoreInteractions(mGetInfo);
@@ -128,7 +175,11 @@ public class SetInfoTest {
     @Test
     public void t3_resetAlarm() throws InterruptedException {
         // Swap the default set-up for one that already has an alarm ready
-        setInitInfo(new AlarmInfo(mInitInfo, mInitInfo.getTimeInMillis()));
+        setInitInfo(new AlarmInfo(mInitInfo, mInitInfo.getTimeInMillis(mTimeSource)));
+        final SleepSession session = new SleepSession(System.currentTimeMillis(),
+                mInitInfo.timeHour, mInitInfo.timeMinute, System.currentTimeMillis(), true);
+        Mockito.when(mHistory.stopped(Mockito.anyLong(), Mockito.anyBoolean()))
+                .thenReturn(session);
 
         // Reset it and wait for the update
         resetState();
@@ -142,6 +193,12 @@ public class SetInfoTest {
         Mockito.verify(mAlarmScheduler).cancel();
         Mockito.verifyNoMoreInteractions(mAlarmScheduler);
 
+        Mockito.verify(mHistory).stopped(Mockito.anyLong(),
+                Mockito.eq(mInitInfo.alarm > System.currentTimeMillis()));
+        Mockito.verifyNoMoreInteractions(mHistory);
+        Mockito.verify(mGetStats).record(session);
+        Mockito.verifyNoMoreInteractions(mGetStats);
+
         Mockito.verify(mGetInfo, Mockito.atLeastOnce()).current();
         Mockito.verify(mGetInfo).post(emptyInfo);
         Mockito.verifyNoMoreInteractions(mGetInfo);
@@ -150,12 +207,120 @@ public class SetInfoTest {
         Mockito.verifyNoMoreInteractions(mStorage);
     }
 
+    @Test
+    public void t4_coalesce() throws InterruptedException {
+        // Use case with a quiet window that is longer than the burst
+        final SetInfo setInfo = new SetInfo(mAlarmScheduler, mExecutor, mGetInfo, mGetStats,
+                mHistory, new SaveCoalescer(mBackground, mExecutor, mStorage, 500L),
+                mTimeSource);
+
+        // Burst of changes
+        resetState();
+        AlarmInfo lastInfo = mInitInfo;
+        for (int i = 0; i < 5; i++) {
+            lastInfo = new AlarmInfo(mInitInfo, (mInitInfo.timeHour + i + 1) % 24,
+                    mInitInfo.timeMinute);
+            setInfo.setTime(lastInfo.timeHour, lastInfo.timeMinute);
+        }
+
+        // Observers are updated right away but nothing is persisted yet
+        Thread.sleep(250);
+        Mockito.verify(mGetInfo).post(lastInfo);
+        Mockito.verifyZeroInteractions(mStorage);
+
+        // Once quiet, only the final state is saved
+        Thread.sleep(750);
+        Mockito.verify(mStorage).save(lastInfo);
+        Mockito.verifyNoMoreInteractions(mStorage);
+        assertEquals(4L, setInfo.getAbsorbedWrites());
+
+        // A flush with nothing pending does not write again, but still syncs the storage
+        setInfo.flush();
+        Thread.sleep(250);
+        Mockito.verify(mStorage).flush();
+        Mockito.verifyNoMoreInteractions(mStorage);
+    }
+
+    @Test
+    public void t5_flush() throws InterruptedException {
+        // Use case with a quiet window far longer than the test
+        final SetInfo setInfo = new SetInfo(mAlarmScheduler, mExecutor, mGetInfo, mGetStats,
+                mHistory, new SaveCoalescer(mBackground, mExecutor, mStorage, 60000L),
+                mTimeSource);
+        final AlarmInfo newInfo = new AlarmInfo(
+                mInitInfo, (mInitInfo.timeHour + 1) % 24, mInitInfo.timeMinute);
+
+        // Change and flush right away
+        resetState();
+        setInfo.setTime(newInfo.timeHour, newInfo.timeMinute);
+
+        // Check it was saved and synced without waiting for the window
+        assertTrue(setInfo.flush().await(1, TimeUnit.SECONDS));
+        final InOrder inOrder = Mockito.inOrder(mStorage);
+        inOrder.verify(mStorage).save(newInfo);
+        inOrder.verify(mStorage).flush();
+        Mockito.verifyNoMoreInteractions(mStorage);
+        assertEquals(0L, setInfo.getAbsorbedWrites());
+    }
+
+    @Test
+    public void t6_armScheduled() throws InterruptedException {
+        // A scheduled day with a setpoint other than the user's
+        final int hour = (mInitInfo.timeHour + 1) % 24;
+        final long alarm = System.currentTimeMillis() + 3600000L;
+        resetState();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSetInfo.armAsync(alarm, hour, mInitInfo.timeMinute);
+            }
+        });
+
+        // The history records the scheduled setpoint, the user's setpoint is kept
+        Thread.sleep(250);
+        final AlarmInfo armedInfo = new AlarmInfo(mInitInfo, alarm);
+        Mockito.verify(mAlarmScheduler).schedule(alarm);
+        Mockito.verifyNoMoreInteractions(mAlarmScheduler);
+        Mockito.verify(mHistory).armed(Mockito.anyLong(),
+                Mockito.eq(hour), Mockito.eq(mInitInfo.timeMinute));
+        Mockito.verifyNoMoreInteractions(mHistory);
+        Mockito.verify(mGetInfo).post(armedInfo);
+        Mockito.verify(mStorage).save(armedInfo);
+        Mockito.verifyNoMoreInteractions(mStorage);
+    }
+
+    @Test
+    public void t7_flushOffExecutor() throws InterruptedException {
+        // A storage that takes a long time to sync
+        final CountDownLatch synced = new CountDownLatch(1);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                synced.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(mStorage).flush();
+
+        // The executor keeps running commands while the sync is in progress
+        resetState();
+        final Completion durable = mSetInfo.flush();
+        assertTrue(mSetInfo.setTime((mInitInfo.timeHour + 1) % 24, mInitInfo.timeMinute)
+                .await(1, TimeUnit.SECONDS));
+        assertFalse(durable.isDone());
+
+        // Durable once the sync finishes
+        synced.countDown();
+        assertTrue(durable.await(1, TimeUnit.SECONDS));
+        assertNull(durable.getError());
+    }
+
     /**
      * Resets any pending objects in preparation for the next test assert
      */
     private void resetState() {
         Mockito.clearInvocations(mAlarmScheduler);
         Mockito.clearInvocations(mGetInfo);
+        Mockito.clearInvocations(mHistory);
         Mockito.clearInvocations(mStorage);
     }
 
@@ -0,0 +1,103 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.ScheduleStorage;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.WeeklySchedule;
+import com.jordantymburski.driftoff.service.SystemTimeSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Calendar;
+
+public class SetScheduleTest {
+    /**
+     * Domain command executor
+     */
+    private final DomainExecutor mExecutor = new DomainExecutor();
+
+    /**
+     * Get info mock class
+     */
+    @Mock
+    private GetInfo mGetInfo;
+
+    /**
+     * Set info mock class
+     */
+    @Mock
+    private SetInfo mSetInfo;
+
+    /**
+     * Set schedule use case
+     */
+    private SetSchedule mSetSchedule;
+
+    /**
+     * Schedule storage mock class
+     */
+    @Mock
+    private ScheduleStorage mStorage;
+
+    /**
+     * Wall clock source
+     */
+    private final TimeSource mTimeSource = new SystemTimeSource();
+
+    @Before
+    public void setup() {
+        // Initialize mocks
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(mStorage.load()).thenReturn(WeeklySchedule.EMPTY);
+        Mockito.when(mGetInfo.current()).thenReturn(new AlarmInfo(0L, 22, 30));
+
+        // SetSchedule use case set-up
+        mSetSchedule = new SetSchedule(mExecutor, mGetInfo, mSetInfo, mStorage, mTimeSource);
+    }
+
+    @Test
+    public void rearmEmpty() throws InterruptedException {
+        // Nothing scheduled, nothing armed
+        mSetSchedule.rearm();
+        Thread.sleep(250);
+        Mockito.verify(mStorage).load();
+        Mockito.verifyNoMoreInteractions(mStorage);
+        Mockito.verifyZeroInteractions(mSetInfo);
+    }
+
+    @Test
+    public void setArms() throws InterruptedException {
+        // Saved and armed on the next scheduled time
+        final WeeklySchedule schedule = WeeklySchedule.EMPTY.with(Calendar.MONDAY, 22, 30);
+        final AlarmInfo next = schedule.nextAlarm(mTimeSource);
+        mSetSchedule.set(schedule);
+        Thread.sleep(250);
+        Mockito.verify(mStorage).save(schedule);
+        Mockito.verify(mSetInfo).armAsync(next.alarm, next.timeHour, next.timeMinute);
+        Mockito.verifyNoMoreInteractions(mSetInfo);
+
+        // Fired and reset: the following one is armed, without saving again
+        mSetSchedule.rearm();
+        Thread.sleep(250);
+        Mockito.verify(mSetInfo, Mockito.times(2))
+                .armAsync(next.alarm, next.timeHour, next.timeMinute);
+        Mockito.verify(mStorage).save(schedule);
+    }
+
+    @Test
+    public void setWhileActive() throws InterruptedException {
+        // An active alarm is left alone
+        Mockito.when(mGetInfo.current()).thenReturn(
+                new AlarmInfo(System.currentTimeMillis() + 3600000L, 22, 30));
+        final WeeklySchedule schedule = WeeklySchedule.EMPTY.with(Calendar.MONDAY, 22, 30);
+        mSetSchedule.set(schedule);
+        Thread.sleep(250);
+        Mockito.verify(mStorage).save(schedule);
+        Mockito.verifyZeroInteractions(mSetInfo);
+    }
+}
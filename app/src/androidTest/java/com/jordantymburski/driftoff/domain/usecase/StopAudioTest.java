@@ -1,13 +1,17 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AudioController;
+import com.jordantymburski.driftoff.domain.executor.Completion;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import static org.junit.Assert.*;
+
 public class StopAudioTest {
     /**
      * Audio controller mock class
@@ -21,6 +25,12 @@ public class StopAudioTest {
     @Mock
     private SetInfo mSetInfo;
 
+    /**
+     * Set schedule mock class
+     */
+    @Mock
+    private SetSchedule mSetSchedule;
+
     /**
      * Stop audio use case
      */
@@ -32,18 +42,35 @@ public class StopAudioTest {
         MockitoAnnotations.initMocks(this);
 
         // StopAudio use case set-up
-        mStopAudio = new StopAudio(mAudioController, mSetInfo);
+        mStopAudio = new StopAudio(mAudioController, mSetInfo, mSetSchedule);
     }
 
     @Test
     public void execute() {
         // Trigger
-        mStopAudio.execute();
+        final Completion reset = new Completion();
+        final Completion rearmed = new Completion();
+        final Completion flushed = new Completion();
+        Mockito.when(mSetInfo.resetAlarm()).thenReturn(reset);
+        Mockito.when(mSetSchedule.rearm()).thenReturn(rearmed);
+        Mockito.when(mSetInfo.flush()).thenReturn(flushed);
+        final Completion completion = mStopAudio.execute();
+
+        // Completes once every step has
+        reset.complete();
+        flushed.complete();
+        assertFalse(completion.isDone());
+        rearmed.complete();
+        assertTrue(completion.isDone());
+        assertNull(completion.getError());
 
         // Check on the execution
         Mockito.verify(mAudioController).requestFocus();
         Mockito.verifyNoMoreInteractions(mAudioController);
-        Mockito.verify(mSetInfo).resetAlarm();
-        Mockito.verifyNoMoreInteractions(mSetInfo);
+        final InOrder order = Mockito.inOrder(mSetInfo, mSetSchedule);
+        order.verify(mSetInfo).resetAlarm();
+        order.verify(mSetSchedule).rearm();
+        order.verify(mSetInfo).flush();
+        Mockito.verifyNoMoreInteractions(mSetInfo, mSetSchedule);
     }
 }
@@ -0,0 +1,267 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.domain.model.TransferResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TransferHistoryTest {
+    private static final String HEADER = "armed_at,time_hour,time_minute,stopped_at,cancelled\n";
+
+    /**
+     * Sessions written to the export document
+     */
+    private final List<SleepSession> mExported = new ArrayList<>();
+
+    /**
+     * Export document under test
+     */
+    private File mFile;
+
+    /**
+     * Get stats mock class
+     */
+    @Mock
+    private GetStats mGetStats;
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * TRUE if the target history has an open session, so it refuses imported sessions
+     */
+    private boolean mSessionOpen;
+
+    /**
+     * Sessions provided by the source history. Cleared once exported
+     */
+    private final List<SleepSession> mSource = new ArrayList<>();
+
+    /**
+     * Sessions written into the target history
+     */
+    private final List<SleepSession> mTarget = new ArrayList<>();
+
+    /**
+     * Transfer history use case
+     */
+    private TransferHistory mTransferHistory;
+
+    @Before
+    public void setup() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        mFile = File.createTempFile("history", ".csv");
+        mTransferHistory = new TransferHistory(new BackgroundExecutor(), new DomainExecutor(),
+                mGetStats, new HistoryStorage() {
+                    @Override
+                    public boolean appendSessions(List<SleepSession> sessions) {
+                        if (mSessionOpen) {
+                            return false;
+                        }
+                        mTarget.addAll(sessions);
+                        return true;
+                    }
+
+                    @Override
+                    public void armed(long time, int timeHour, int timeMinute) {
+                    }
+
+                    @Override
+                    public void scan(Visitor visitor) {
+                        for (SleepSession session : mSource) {
+                            visitor.visit(session);
+                        }
+                        for (SleepSession session : mTarget) {
+                            visitor.visit(session);
+                        }
+                    }
+
+                    @Override
+                    public SleepSession stopped(long time, boolean cancelled) {
+                        return null;
+                    }
+                });
+    }
+
+    @After
+    public void cleanUp() {
+        mFile.delete();
+    }
+
+    /**
+     * Exports the source history to the test document. The source is then moved to the exported
+     * list, so the history only holds what is imported after
+     * @return the export result
+     * @throws IOException if the document can not be opened
+     */
+    private TransferResult exportFile() throws IOException {
+        final FileChannel channel = new FileOutputStream(mFile).getChannel();
+        try {
+            return mTransferHistory.exportAsync(channel);
+        } finally {
+            channel.close();
+            mExported.addAll(mSource);
+            mSource.clear();
+        }
+    }
+
+    /**
+     * Imports the test document into the target history
+     * @return the import result
+     * @throws IOException if the document can not be opened
+     */
+    private TransferResult importFile() throws IOException {
+        final FileChannel channel = new FileInputStream(mFile).getChannel();
+        try {
+            return mTransferHistory.importAsync(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Imports the text directly into the target history
+     * @param text document contents
+     * @return the import result
+     */
+    private TransferResult importText(String text) {
+        return mTransferHistory.importAsync(
+                Channels.newChannel(new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /**
+     * Generates a synthetic source history of nightly sessions
+     * @param nights number of nights
+     */
+    private void generate(int nights) {
+        long night = TimeUnit.DAYS.toMillis(1);
+        for (int i = 0; i < nights; i++) {
+            mSource.add(new SleepSession(night, mRandom.nextInt(24), mRandom.nextInt(60),
+                    night + mRandom.nextInt((int) TimeUnit.HOURS.toMillis(3)),
+                    mRandom.nextBoolean()));
+            night += TimeUnit.DAYS.toMillis(1);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        generate(100);
+
+        final TransferResult exported = exportFile();
+        assertTrue(exported.success);
+        assertTrue(exported.export);
+        assertEquals(100, exported.sessions);
+
+        final TransferResult imported = importFile();
+        assertTrue(imported.success);
+        assertFalse(imported.export);
+        assertEquals(100, imported.sessions);
+        assertEquals(0, imported.rejected);
+        assertEquals(mExported, mTarget);
+        Mockito.verify(mGetStats).rebuild();
+    }
+
+    @Test
+    public void invalidRecords() {
+        final TransferResult result = importText(HEADER
+                + "1000,22,30,2000,1\n"
+                + "1000,24,30,2000,1\n"      // Hour out of range
+                + "1000,22,60,2000,1\n"      // Minute out of range
+                + "3000,22,30,2000,0\n"      // Stopped before armed
+                + "1000,22,30,2000,2\n"      // Not a flag
+                + "1000,22,30,2000\n"        // Missing field
+                + "1000,22,30,2000,0,5\n"    // Extra field
+                + "1000,22,,2000,0\n"        // Empty field
+                + "1000,2x,30,2000,0\n"      // Not a number
+                + "99999999999999999999,22,30,2000,0\n" // Overflow
+                + "\r\n"
+                + "4000,7,5,5000,0\r\n"
+                + "6000,7,5,7000");          // Incomplete final record
+        assertTrue(result.success);
+        assertEquals(2, result.sessions);
+        assertEquals(10, result.rejected);
+        assertEquals(new SleepSession(1000L, 22, 30, 2000L, true), mTarget.get(0));
+        assertEquals(new SleepSession(4000L, 7, 5, 5000L, false), mTarget.get(1));
+    }
+
+    @Test
+    public void duplicates() throws IOException {
+        generate(100);
+        assertTrue(exportFile().success);
+
+        // Importing the same document again adds nothing
+        assertEquals(100, importFile().sessions);
+        final TransferResult again = importFile();
+        assertTrue(again.success);
+        assertEquals(0, again.sessions);
+        assertEquals(0, again.rejected);
+        assertEquals(mExported, mTarget);
+
+        // Repeats within a document are added once, matched on the start and stop time
+        mTarget.clear();
+        final TransferResult result = importText(HEADER
+                + "1000,22,30,2000,1\n"
+                + "1000,22,30,2000,1\n"
+                + "1000,23,0,2000,0\n"
+                + "1000,22,30,3000,1\n");
+        assertEquals(2, result.sessions);
+        assertEquals(new SleepSession(1000L, 22, 30, 2000L, true), mTarget.get(0));
+        assertEquals(new SleepSession(1000L, 22, 30, 3000L, true), mTarget.get(1));
+    }
+
+    @Test
+    public void notAnExport() {
+        final TransferResult result = importText("name,value\n1000,22,30,2000,1\n");
+        assertFalse(result.success);
+        assertEquals(0, result.sessions);
+        assertTrue(mTarget.isEmpty());
+        Mockito.verifyZeroInteractions(mGetStats);
+    }
+
+    @Test
+    public void sessionOpen() throws IOException {
+        generate(10);
+        assertTrue(exportFile().success);
+
+        mSessionOpen = true;
+        final TransferResult result = importFile();
+        assertFalse(result.success);
+        assertEquals(0, result.sessions);
+        assertTrue(mTarget.isEmpty());
+        Mockito.verifyZeroInteractions(mGetStats);
+    }
+
+    @Test
+    public void largeHistory() throws IOException {
+        // 100k nights stream through fixed buffers in both directions
+        generate(100000);
+        assertEquals(100000, exportFile().sessions);
+        assertEquals(100000, importFile().sessions);
+        assertEquals(mExported, mTarget);
+    }
+}
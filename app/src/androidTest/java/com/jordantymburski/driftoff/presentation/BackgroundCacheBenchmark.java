@@ -0,0 +1,123 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.jordantymburski.driftoff.R;
+import com.jordantymburski.driftoff.common.Benchmark;
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+@Benchmark
+public class BackgroundCacheBenchmark {
+    private static final int HEIGHT = 1280;
+    private static final int WIDTH = 720;
+
+    /**
+     * Runs the loads on the calling thread
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Directory of the scaled image files
+     */
+    private File mDirectory;
+
+    @Rule
+    public TestRule syncRule = new InstantTaskExecutorRule();
+
+    @Before
+    public void setup() {
+        mDirectory = new File(ContextProvider.get().getCacheDir(), "backgrounds_benchmark");
+        deleteDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory();
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Creates a cache that loads on the calling thread
+     * @return the new cache
+     */
+    private BackgroundCache createCache() {
+        return new BackgroundCache(ContextProvider.get(), mDirectory, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Deletes the directory of the scaled image files, and all files in it
+     */
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        mDirectory.delete();
+    }
+
+    /* ----------------------------------------------
+     * TEST CASES
+     * ---------------------------------------------- */
+
+    @Test
+    public void themeAndCache() {
+        final Context context = ContextProvider.get();
+
+        // Before: the full image, decoded by the theme on every activity start
+        long begin = System.nanoTime();
+        final Drawable theme = context.getDrawable(R.raw.background);
+        final long themeTime = System.nanoTime() - begin;
+        assertTrue(theme instanceof BitmapDrawable);
+        final long themeBytes = ((BitmapDrawable) theme).getBitmap().getAllocationByteCount();
+
+        // After: first decode, a new process and a recreation
+        begin = System.nanoTime();
+        final Bitmap decoded = createCache().get(R.raw.background, WIDTH, HEIGHT).getValue();
+        final long decodeTime = System.nanoTime() - begin;
+
+        final BackgroundCache cache = createCache();
+        begin = System.nanoTime();
+        final Bitmap read = cache.get(R.raw.background, WIDTH, HEIGHT).getValue();
+        final long readTime = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        cache.get(R.raw.background, WIDTH, HEIGHT).getValue();
+        final long memoryTime = System.nanoTime() - begin;
+
+        assertNotNull(decoded);
+        assertNotNull(read);
+        assertTrue(read.getAllocationByteCount() < themeBytes);
+        assertTrue(readTime < themeTime);
+        System.out.println("BackgroundCache before: theme decode " + themeTime + " ns, "
+                + themeBytes + " bytes");
+        System.out.println("BackgroundCache after: first decode " + decodeTime + " ns, file "
+                + readTime + " ns, memory " + memoryTime + " ns, "
+                + read.getAllocationByteCount() + " bytes");
+    }
+}
@@ -0,0 +1,131 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.graphics.Bitmap;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.jordantymburski.driftoff.R;
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class BackgroundCacheTest {
+    private static final int HEIGHT = 1280;
+    private static final int WIDTH = 720;
+
+    /**
+     * Runs the loads on the calling thread
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Directory of the scaled image files
+     */
+    private File mDirectory;
+
+    @Rule
+    public TestRule syncRule = new InstantTaskExecutorRule();
+
+    @Before
+    public void setup() {
+        mDirectory = new File(ContextProvider.get().getCacheDir(), "backgrounds_test");
+        deleteDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory();
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Creates a cache that loads on the calling thread
+     * @return the new cache
+     */
+    private BackgroundCache createCache() {
+        return new BackgroundCache(ContextProvider.get(), mDirectory, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Deletes the directory of the scaled image files, and all files in it
+     */
+    private void deleteDirectory() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        mDirectory.delete();
+    }
+
+    /* ----------------------------------------------
+     * TEST CASES
+     * ---------------------------------------------- */
+
+    @Test
+    public void load() {
+        // Decoded to the size, and written to a file
+        final Bitmap decoded = createCache().get(R.raw.background, WIDTH, HEIGHT).getValue();
+        assertNotNull(decoded);
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, decoded.getConfig());
+        final File[] files = mDirectory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertEquals(decoded.getByteCount(), files[0].length());
+
+        // A new process reads the same pixels from the file
+        final BackgroundCache cache = createCache();
+        final Bitmap read = cache.get(R.raw.background, WIDTH, HEIGHT).getValue();
+        assertNotNull(read);
+        assertTrue(decoded.sameAs(read));
+
+        // Recreations share it in memory
+        assertSame(read, cache.get(R.raw.background, WIDTH, HEIGHT).getValue());
+
+        // Another size is another image
+        final Bitmap other = cache.get(R.raw.background, HEIGHT, WIDTH).getValue();
+        assertNotNull(other);
+        assertEquals(HEIGHT, other.getWidth());
+        assertEquals(2, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void wrongSize() throws IOException {
+        final Bitmap decoded = createCache().get(R.raw.background, WIDTH, HEIGHT).getValue();
+        assertNotNull(decoded);
+        final File[] files = mDirectory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+
+        // A file cut short is decoded again and rewritten
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.setLength(files[0].length() / 2);
+        }
+        final Bitmap read = createCache().get(R.raw.background, WIDTH, HEIGHT).getValue();
+        assertNotNull(read);
+        assertTrue(decoded.sameAs(read));
+        assertEquals(decoded.getByteCount(), files[0].length());
+    }
+}
@@ -0,0 +1,171 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import com.jordantymburski.driftoff.common.Benchmark;
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+@Benchmark
+public class ClockViewBenchmark {
+    private static final int BENCHMARK_ROUNDS = 200;
+    private static final int HEIGHT = 1280;
+    private static final int WIDTH = 720;
+
+    /**
+     * Target of the benchmark draws
+     */
+    private Bitmap mBitmap;
+
+    /**
+     * Canvas that draws into the bitmap
+     */
+    private Canvas mCanvas;
+
+    @Before
+    public void setup() {
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Creates the text view hierarchy that the clock view replaced, matching its old layout
+     * @param context android context
+     * @return the root of the hierarchy
+     */
+    private static RelativeLayout createTextViews(Context context) {
+        final RelativeLayout root = new RelativeLayout(context);
+        final float density = context.getResources().getDisplayMetrics().density;
+        final Typeface light = Typeface.create("sans-serif-light", Typeface.NORMAL);
+
+        final TextView time = new TextView(context);
+        time.setId(View.generateViewId());
+        time.setTextSize(TypedValue.COMPLEX_UNIT_SP, 82f);
+        time.setTypeface(light);
+        final RelativeLayout.LayoutParams timeParams = new RelativeLayout.LayoutParams(
+                RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
+        timeParams.addRule(RelativeLayout.CENTER_IN_PARENT);
+        root.addView(time, timeParams);
+
+        final TextView period = new TextView(context);
+        period.setAllCaps(true);
+        period.setLetterSpacing(0.15f);
+        period.setTextSize(TypedValue.COMPLEX_UNIT_SP, 18f);
+        period.setTypeface(light);
+        final RelativeLayout.LayoutParams periodParams = new RelativeLayout.LayoutParams(
+                RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
+        periodParams.addRule(RelativeLayout.ALIGN_BASELINE, time.getId());
+        periodParams.addRule(RelativeLayout.END_OF, time.getId());
+        periodParams.setMarginStart((int) (8 * density));
+        root.addView(period, periodParams);
+
+        final TextView remaining = new TextView(context);
+        remaining.setAllCaps(true);
+        remaining.setLetterSpacing(0.1f);
+        final RelativeLayout.LayoutParams remainingParams = new RelativeLayout.LayoutParams(
+                RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
+        remainingParams.addRule(RelativeLayout.BELOW, time.getId());
+        remainingParams.addRule(RelativeLayout.CENTER_HORIZONTAL);
+        remainingParams.topMargin = (int) (16 * density);
+        root.addView(remaining, remainingParams);
+
+        return root;
+    }
+
+    /**
+     * Runs any pending measure and layout pass, and draws the view
+     * @param view the root view
+     */
+    private void layoutAndDraw(View view) {
+        if (view.isLayoutRequested()) {
+            view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, WIDTH, HEIGHT);
+        }
+        view.draw(mCanvas);
+    }
+
+    /**
+     * Sets the text of the replaced text view hierarchy
+     * @param root the root of the hierarchy
+     * @param time the time text
+     * @param period the period text
+     * @param remaining the time remaining text
+     */
+    private static void setText(RelativeLayout root, String time, String period,
+                                String remaining) {
+        ((TextView) root.getChildAt(0)).setText(time);
+        ((TextView) root.getChildAt(1)).setText(period);
+        ((TextView) root.getChildAt(2)).setText(remaining);
+    }
+
+    /* ----------------------------------------------
+     * TEST CASES
+     * ---------------------------------------------- */
+
+    @Test
+    public void coldAndUpdate() {
+        final Context context = ContextProvider.get();
+
+        // Cold creation, through the first draw
+        long begin = System.nanoTime();
+        final RelativeLayout textViews = createTextViews(context);
+        setText(textViews, "10:30", "pm", "Stops music in 6 hours");
+        layoutAndDraw(textViews);
+        final long textViewsCold = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        final ClockView clock = new ClockView(context);
+        clock.setTimeText("10:30", "pm");
+        clock.setRemainingText("Stops music in 6 hours");
+        layoutAndDraw(clock);
+        final long clockCold = System.nanoTime() - begin;
+
+        // Updates of the time remaining, as in the final minute countdown
+        final String[] remaining = new String[60];
+        for (int i = 0; i < remaining.length; i++) {
+            remaining[i] = "Stops music in " + (i + 1) + " seconds";
+        }
+        begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            ((TextView) textViews.getChildAt(2)).setText(remaining[i % remaining.length]);
+            layoutAndDraw(textViews);
+        }
+        final long textViewsUpdate = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            clock.setRemainingText(remaining[i % remaining.length]);
+            layoutAndDraw(clock);
+        }
+        final long clockUpdate = System.nanoTime() - begin;
+
+        assertTrue(clockUpdate < textViewsUpdate);
+        System.out.println("ClockView cold: text views " + textViewsCold + " ns, clock "
+                + clockCold + " ns");
+        System.out.println("ClockView " + BENCHMARK_ROUNDS + " updates: text views "
+                + (double) textViewsUpdate / BENCHMARK_ROUNDS + " ns/op, clock "
+                + (double) clockUpdate / BENCHMARK_ROUNDS + " ns/op");
+    }
+}
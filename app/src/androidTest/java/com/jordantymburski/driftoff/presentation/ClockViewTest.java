@@ -0,0 +1,83 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClockViewTest {
+    private static final int HEIGHT = 1280;
+    private static final int WIDTH = 720;
+
+    /**
+     * Target of the test draws
+     */
+    private Bitmap mBitmap;
+
+    /**
+     * Canvas that draws into the bitmap
+     */
+    private Canvas mCanvas;
+
+    @Before
+    public void setup() {
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Runs any pending measure and layout pass, and draws the view
+     * @param view the root view
+     */
+    private void layoutAndDraw(View view) {
+        if (view.isLayoutRequested()) {
+            view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, WIDTH, HEIGHT);
+        }
+        view.draw(mCanvas);
+    }
+
+    /* ----------------------------------------------
+     * TEST CASES
+     * ---------------------------------------------- */
+
+    @Test
+    public void drawOnlyUpdate() {
+        final ClockView clock = new ClockView(ContextProvider.get());
+        clock.setTimeText("10:30", "pm");
+        clock.setRemainingText("Stops music in 6 hours");
+        layoutAndDraw(clock);
+        assertFalse(clock.isLayoutRequested());
+
+        // Text changes keep the layout
+        clock.setRemainingText("Stops music in 59 seconds");
+        clock.setTimeText("10:31", "am");
+        assertFalse(clock.isLayoutRequested());
+        assertEquals("Stops music in 59 seconds", clock.getRemainingText());
+        assertEquals("10:31", clock.getTimeText());
+        assertEquals("am", clock.getPeriodText());
+
+        // Clearing is also just a draw
+        clock.setRemainingText(null);
+        assertNull(clock.getRemainingText());
+        assertFalse(clock.isLayoutRequested());
+        layoutAndDraw(clock);
+    }
+}
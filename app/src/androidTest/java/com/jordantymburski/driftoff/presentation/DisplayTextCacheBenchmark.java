@@ -0,0 +1,98 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import com.jordantymburski.driftoff.R;
+import com.jordantymburski.driftoff.common.Benchmark;
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+@Benchmark
+public class DisplayTextCacheBenchmark {
+    private static final int BENCHMARK_ROUNDS = 20000;
+
+    /**
+     * Creates a time at a minute of the day
+     * @param minuteOfDay 0-1439
+     * @return the time
+     */
+    private static Calendar time(int minuteOfDay) {
+        final Calendar c = Calendar.getInstance();
+        c.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        c.set(Calendar.MINUTE, minuteOfDay % 60);
+        return c;
+    }
+
+    /**
+     * One update pass with the previous direct formatting
+     * @param context android context
+     * @param time alarm time
+     * @param minutes rounded up minutes remaining
+     * @return the formatted text lengths, to keep the work alive
+     */
+    private static int updateDirect(Context context, Calendar time, long minutes) {
+        final CharSequence text;
+        final CharSequence period;
+        if (DateFormat.is24HourFormat(context)) {
+            text = DateFormat.getTimeFormat(context).format(time.getTime());
+            period = "";
+        } else {
+            text = DateFormat.format("h:mm", time);
+            period = DateFormat.format("a", time).toString().replace(".", "");
+        }
+        final String remaining = context.getResources().getQuantityString(
+                R.plurals.alarm_notice_minutes, (int) minutes, minutes);
+        return text.length() + period.length() + remaining.length();
+    }
+
+    /**
+     * One update pass with the cache
+     * @param cache the label cache
+     * @param time alarm time
+     * @param minutes rounded up minutes remaining
+     * @return the formatted text lengths, to keep the work alive
+     */
+    private static int updateCached(DisplayTextCache cache, Calendar time, long minutes) {
+        final String period = cache.getPeriod(time);
+        return cache.getTime(time).length() + (period != null ? period.length() : 0)
+                + cache.getRemainingMinutes(minutes).length();
+    }
+
+    @Test
+    public void updatePasses() {
+        final Context context = ContextProvider.get();
+        final DisplayTextCache cache = new DisplayTextCache(context);
+        final Calendar time = time(22 * 60 + 30);
+        int sink = 0;
+
+        // Warm up
+        for (int i = 0; i < BENCHMARK_ROUNDS / 10; i++) {
+            sink += updateDirect(context, time, i % 60);
+            sink += updateCached(cache, time, i % 60);
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            sink += updateDirect(context, time, i % 60);
+        }
+        final long directTime = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            sink += updateCached(cache, time, i % 60);
+        }
+        final long cachedTime = System.nanoTime() - begin;
+
+        assertNotEquals(0, sink);
+        assertTrue(cachedTime < directTime);
+        System.out.println("DisplayTextCache " + BENCHMARK_ROUNDS + " update passes: direct "
+                + (double) directTime / BENCHMARK_ROUNDS + " ns/op, cached "
+                + (double) cachedTime / BENCHMARK_ROUNDS + " ns/op");
+    }
+}
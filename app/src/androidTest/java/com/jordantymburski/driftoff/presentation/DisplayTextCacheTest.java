@@ -0,0 +1,72 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import com.jordantymburski.driftoff.R;
+import com.jordantymburski.driftoff.common.ContextProvider;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class DisplayTextCacheTest {
+    /**
+     * Creates a time at a minute of the day
+     * @param minuteOfDay 0-1439
+     * @return the time
+     */
+    private static Calendar time(int minuteOfDay) {
+        final Calendar c = Calendar.getInstance();
+        c.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        c.set(Calendar.MINUTE, minuteOfDay % 60);
+        return c;
+    }
+
+    @Test
+    public void matchesDirect() {
+        final Context context = ContextProvider.get();
+        final DisplayTextCache cache = new DisplayTextCache(context);
+        final boolean use24Hour = DateFormat.is24HourFormat(context);
+
+        for (int minute = 0; minute < 24 * 60; minute += 7) {
+            final Calendar time = time(minute);
+            for (int pass = 0; pass < 2; pass++) {
+                if (use24Hour) {
+                    assertEquals(DateFormat.getTimeFormat(context).format(time.getTime()),
+                            cache.getTime(time));
+                    assertNull(cache.getPeriod(time));
+                } else {
+                    assertEquals(DateFormat.format("h:mm", time).toString(), cache.getTime(time));
+                    assertEquals(DateFormat.format("a", time).toString().replace(".", ""),
+                            cache.getPeriod(time));
+                }
+            }
+        }
+        for (int count = 0; count < 100; count++) {
+            assertEquals(context.getResources().getQuantityString(
+                    R.plurals.alarm_notice_hours, count, (long) count),
+                    cache.getRemainingHours(count));
+            assertEquals(context.getResources().getQuantityString(
+                    R.plurals.alarm_notice_minutes, count, (long) count),
+                    cache.getRemainingMinutes(count));
+        }
+    }
+
+    @Test
+    public void reused() {
+        // Repeat lookups return the same instance
+        final DisplayTextCache cache = new DisplayTextCache(ContextProvider.get());
+        final Calendar time = time(22 * 60 + 30);
+        assertSame(cache.getTime(time), cache.getTime(time));
+        assertSame(cache.getRemainingHours(5), cache.getRemainingHours(5));
+        assertSame(cache.getRemainingMinutes(42), cache.getRemainingMinutes(42));
+
+        // Unchanged settings keep the labels
+        final String label = cache.getTime(time);
+        cache.validate();
+        assertSame(label, cache.getTime(time));
+    }
+}
@@ -7,8 +7,14 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.VectorDrawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.TextUtils;
 import android.text.format.DateFormat;
+import android.view.FrameMetrics;
 import android.view.View;
+import android.view.Window;
 import android.widget.ImageButton;
 
 import androidx.lifecycle.MutableLiveData;
@@ -19,6 +25,7 @@ import androidx.test.rule.ActivityTestRule;
 import com.jordantymburski.driftoff.R;
 import com.jordantymburski.driftoff.common.ContextProvider;
 import com.jordantymburski.driftoff.domain.MockDomain;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
 import org.hamcrest.CoreMatchers;
@@ -34,17 +41,24 @@ import org.mockito.Mockito;
 
 import java.util.Calendar;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static androidx.test.espresso.Espresso.onView;
 import static androidx.test.espresso.action.ViewActions.click;
 import static androidx.test.espresso.assertion.ViewAssertions.matches;
 import static androidx.test.espresso.matcher.ViewMatchers.withId;
-import static androidx.test.espresso.matcher.ViewMatchers.withText;
 
 import static org.junit.Assert.*;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class HomeActivityTest {
+    /**
+     * Duration of a frame at 60 Hz. Frames over it missed the display refresh
+     */
+    private static final long FRAME_BUDGET_NS = TimeUnit.SECONDS.toNanos(1) / 60;
+
     /**
      * The domain interception object
      */
@@ -66,6 +80,11 @@ public class HomeActivityTest {
     private static AlarmInfo mStartInfo = new AlarmInfo(
             0L, mRandom.nextInt(24), mRandom.nextInt(60));
 
+    /**
+     * Wall clock source shared with the activity
+     */
+    private static TimeSource mTimeSource;
+
     @Rule
     public final ActivityTestRule<HomeActivity> activityRule
             = new ActivityTestRule<>(HomeActivity.class);
@@ -73,6 +92,7 @@ public class HomeActivityTest {
     @BeforeClass
     public static void preSetup() {
         mDomain = new MockDomain();
+        mTimeSource = mDomain.timeSource();
 
         // Observable
         mObservable = new MutableLiveData<>();
@@ -97,7 +117,7 @@ public class HomeActivityTest {
         checkTime(ContextProvider.get(), mStartInfo);
 
         // Check the remaining status
-        checkText(getViewTextRemaining(), null);
+        checkRemaining(null);
 
         // Make sure the button is in play mode
         getViewBtnRun().check(matches(withImageDrawable(R.drawable.ic_play)));
@@ -112,7 +132,7 @@ public class HomeActivityTest {
         checkTime(activity, mStartInfo);
 
         // Click on the time to open the calendar mod
-        getViewTextTime().perform(click());
+        getViewClock().perform(click());
         waitForUpdate();
 
         // Check that the time picker is opened
@@ -143,7 +163,7 @@ public class HomeActivityTest {
         checkTime(activity, mStartInfo);
 
         // Click on the time to open the calendar mod
-        getViewTextTime().perform(click());
+        getViewClock().perform(click());
         waitForUpdate();
 
         // Check that the time picker is opened
@@ -175,7 +195,7 @@ public class HomeActivityTest {
         checkTime(activity, mStartInfo);
 
         // Click on the time to open the calendar mod
-        getViewTextTime().perform(click());
+        getViewClock().perform(click());
         waitForUpdate();
 
         // Check that the time picker is opened
@@ -224,7 +244,8 @@ public class HomeActivityTest {
         mDomain.verifyNoMoreInteractions();
 
         // Set the alarm in the observer and witness the result
-        final AlarmInfo setInfo = new AlarmInfo(mStartInfo, mStartInfo.getTimeInMillis());
+        final AlarmInfo setInfo =
+                new AlarmInfo(mStartInfo, mStartInfo.getTimeInMillis(mTimeSource));
         mObservable.postValue(setInfo);
         waitForUpdate();
         checkAlarmActive(context, setInfo);
@@ -254,15 +275,15 @@ public class HomeActivityTest {
                 0L, calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE));
 
         // Start the alarm
-        final AlarmInfo infoActive = new AlarmInfo(info, info.getTimeInMillis());
+        final AlarmInfo infoActive = new AlarmInfo(info, info.getTimeInMillis(mTimeSource));
         mObservable.postValue(infoActive);
         waitForUpdate();
 
         // Check the time string
         checkAlarmActive(activity, infoActive);
-        checkText(getViewTextRemaining(), activity.getResources().getQuantityString(
-                R.plurals.alarm_notice_hours, (int) infoActive.getHoursTillAlarm(),
-                infoActive.getHoursTillAlarm()));
+        checkRemaining(activity.getResources().getQuantityString(
+                R.plurals.alarm_notice_hours, (int) infoActive.getHoursTillAlarm(mTimeSource),
+                infoActive.getHoursTillAlarm(mTimeSource)));
 
         // Reset the observable state
         mObservable.postValue(mStartInfo);
@@ -279,15 +300,15 @@ public class HomeActivityTest {
                 0L, calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE));
 
         // Start the alarm
-        mStartInfo = new AlarmInfo(info, info.getTimeInMillis());
+        mStartInfo = new AlarmInfo(info, info.getTimeInMillis(mTimeSource));
         mObservable.postValue(mStartInfo);
         waitForUpdate();
 
         // Check the time string
         checkAlarmActive(activity, mStartInfo);
-        checkText(getViewTextRemaining(), activity.getResources().getQuantityString(
-                R.plurals.alarm_notice_minutes, (int) mStartInfo.getMinutesTillAlarm(),
-                mStartInfo.getMinutesTillAlarm()));
+        checkRemaining(activity.getResources().getQuantityString(
+                R.plurals.alarm_notice_minutes, (int) mStartInfo.getMinutesTillAlarm(mTimeSource),
+                mStartInfo.getMinutesTillAlarm(mTimeSource)));
     }
 
     @Test
@@ -296,11 +317,11 @@ public class HomeActivityTest {
         final HomeActivity activity = activityRule.getActivity();
 
         // Check that an alarm is active
-        assertTrue(mStartInfo.isActive());
+        assertTrue(mStartInfo.isActive(mTimeSource));
         checkAlarmActive(activity, mStartInfo);
 
         // Try to open the dialog
-        getViewTextTime().perform(click());
+        getViewClock().perform(click());
         waitForUpdate();
         assertNull(activity.mTimePicker);
     }
@@ -311,12 +332,12 @@ public class HomeActivityTest {
         final Context context = ContextProvider.get();
 
         // Check that an alarm is active
-        assertTrue(mStartInfo.isActive());
+        assertTrue(mStartInfo.isActive(mTimeSource));
         checkAlarmActive(context, mStartInfo);
 
         // Change to a non-active alarm and update
         mStartInfo = new AlarmInfo(mStartInfo, 0L);
-        assertFalse(mStartInfo.isActive());
+        assertFalse(mStartInfo.isActive(mTimeSource));
         mObservable.postValue(mStartInfo);
         waitForUpdate();
 
@@ -330,12 +351,13 @@ public class HomeActivityTest {
         final Context context = ContextProvider.get();
 
         // Make sure the alarm is inactive
-        assertFalse(mStartInfo.isActive());
+        assertFalse(mStartInfo.isActive(mTimeSource));
         checkAlarmInactive(context, mStartInfo);
 
         // Change to an active alarm
-        final AlarmInfo activeInfo = new AlarmInfo(mStartInfo, mStartInfo.getTimeInMillis());
-        assertTrue(activeInfo.isActive());
+        final AlarmInfo activeInfo =
+                new AlarmInfo(mStartInfo, mStartInfo.getTimeInMillis(mTimeSource));
+        assertTrue(activeInfo.isActive(mTimeSource));
         mObservable.postValue(activeInfo);
         waitForUpdate();
 
@@ -343,21 +365,82 @@ public class HomeActivityTest {
         checkAlarmActive(context, activeInfo);
     }
 
+    @Test
+    public void t11_finalMinuteCountdown() throws Throwable {
+        waitForUpdate();
+        final HomeActivity activity = activityRule.getActivity();
+
+        // Measure the frames drawn during the countdown, off the main thread
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicInteger jankFrames = new AtomicInteger();
+        final HandlerThread metricsThread = new HandlerThread("FrameMetrics");
+        Window.OnFrameMetricsAvailableListener metricsListener = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            metricsThread.start();
+            metricsListener = new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                                                    int dropCountSinceLastInvocation) {
+                    frames.incrementAndGet();
+                    if (frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION) > FRAME_BUDGET_NS) {
+                        jankFrames.incrementAndGet();
+                    }
+                }
+            };
+            activity.getWindow().addOnFrameMetricsAvailableListener(
+                    metricsListener, new Handler(metricsThread.getLooper()));
+        }
+
+        // Start an alarm in the final minute
+        final long alarm = mTimeSource.currentTimeMillis() + 3500L;
+        final AlarmInfo info = new AlarmInfo(mStartInfo, alarm);
+        mObservable.postValue(info);
+        waitForUpdate();
+
+        // It counts down in seconds. The second may change just before the frame shows it
+        final AtomicReference<CharSequence> text = new AtomicReference<>();
+        final AtomicReference<Long> seconds = new AtomicReference<>();
+        activityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                text.set(((ClockView) activity.findViewById(R.id.clock_view)).getRemainingText());
+                seconds.set(info.getSecondsTillAlarm(mTimeSource));
+            }
+        });
+        assertTrue(seconds.get() > 0 && seconds.get() <= 4);
+        final String shown = text.get().toString();
+        assertTrue(shown, shown.equals(getRemainingSeconds(activity, seconds.get()))
+                || shown.equals(getRemainingSeconds(activity, seconds.get() + 1)));
+
+        // Once reached, it drops back to the inactive state
+        Thread.sleep(alarm - mTimeSource.currentTimeMillis());
+        waitForUpdate();
+        checkRemaining(null);
+        getViewBtnRun().check(matches(withImageDrawable(R.drawable.ic_play)));
+
+        // Only frames for changes in the second are drawn, none of which miss the display
+        if (metricsListener != null) {
+            activity.getWindow().removeOnFrameMetricsAvailableListener(metricsListener);
+            metricsThread.quitSafely();
+            assertTrue(frames.get() + " frames", frames.get() < 30);
+            assertTrue(jankFrames.get() + " frames over " + FRAME_BUDGET_NS + " ns",
+                    jankFrames.get() <= 1);
+        }
+
+        // Reset the observable state
+        mObservable.postValue(mStartInfo);
+    }
+
     /* ----------------------------------------------
      * INTERNAL FUNCTIONS
      * ---------------------------------------------- */
 
     /**
-     * Run a text comparison
-     * @param view the espresso view to check on
-     * @param text the text that should be in the field
+     * Check the displayed time remaining in the UI
+     * @param text the text that should be displayed. NULL if none
      */
-    private void checkText(ViewInteraction view, String text) {
-        if (text != null) {
-            view.check(matches(withText(text)));
-        } else {
-            view.check(matches(withText("")));
-        }
+    private void checkRemaining(String text) {
+        getViewClock().check(matches(withRemainingText(text)));
     }
 
     /**
@@ -367,7 +450,7 @@ public class HomeActivityTest {
      */
     private void checkAlarmActive(Context context, AlarmInfo alarmInfo) {
         checkTime(context, alarmInfo);
-        getViewTextRemaining().check(matches(CoreMatchers.not(withText(""))));
+        getViewClock().check(matches(CoreMatchers.not(withRemainingText(null))));
         getViewBtnRun().check(matches(withImageDrawable(R.drawable.ic_stop)));
     }
 
@@ -378,7 +461,7 @@ public class HomeActivityTest {
      */
     private void checkAlarmInactive(Context context, AlarmInfo alarmInfo) {
         checkTime(context, alarmInfo);
-        checkText(getViewTextRemaining(), null);
+        checkRemaining(null);
         getViewBtnRun().check(matches(withImageDrawable(R.drawable.ic_play)));
     }
 
@@ -388,50 +471,43 @@ public class HomeActivityTest {
      * @param alarmInfo the alarm info that should be displayed
      */
     private void checkTime(Context context, AlarmInfo alarmInfo) {
-        final Calendar alarmCalendar = alarmInfo.getTime();
+        final Calendar alarmCalendar = alarmInfo.getTime(mTimeSource);
 
         if (DateFormat.is24HourFormat(context)) {
-            checkText(getViewTextTime(),
-                    DateFormat.getTimeFormat(context).format(alarmCalendar.getTime()));
-            checkText(getViewTextPeriod(), null);
+            getViewClock().check(matches(withTimeText(
+                    DateFormat.getTimeFormat(context).format(alarmCalendar.getTime()), null)));
         } else {
-            checkText(getViewTextTime(),
-                    DateFormat.format("h:mm", alarmCalendar).toString());
-            checkText(getViewTextPeriod(), DateFormat.format("a", alarmCalendar).toString()
-                    .replace(".", ""));
+            getViewClock().check(matches(withTimeText(
+                    DateFormat.format("h:mm", alarmCalendar).toString(),
+                    DateFormat.format("a", alarmCalendar).toString().replace(".", ""))));
         }
     }
 
     /**
-     * Fetch the run button
-     * @return espresso view for testing
-     */
-    private ViewInteraction getViewBtnRun() {
-        return onView(withId(R.id.run_button));
-    }
-
-    /**
-     * Fetch the time period text field (am/pm)
-     * @return espresso view for testing
+     * Formats the time remaining text in seconds
+     * @param context application reference context
+     * @param seconds rounded up seconds remaining
+     * @return time remaining text
      */
-    private ViewInteraction getViewTextPeriod() {
-        return onView(withId(R.id.time_period));
+    private String getRemainingSeconds(Context context, long seconds) {
+        return context.getResources().getQuantityString(
+                R.plurals.alarm_notice_seconds, (int) seconds, seconds);
     }
 
     /**
-     * Fetch the time remaining text (when the alarm is active and running)
+     * Fetch the clock with the time, period and time remaining
      * @return espresso view for testing
      */
-    private ViewInteraction getViewTextRemaining() {
-        return onView(withId(R.id.time_remaining));
+    private ViewInteraction getViewClock() {
+        return onView(withId(R.id.clock_view));
     }
 
     /**
-     * Fetch the time text field
+     * Fetch the run button
      * @return espresso view for testing
      */
-    private ViewInteraction getViewTextTime() {
-        return onView(withId(R.id.time_text));
+    private ViewInteraction getViewBtnRun() {
+        return onView(withId(R.id.run_button));
     }
 
     /**
@@ -460,6 +536,56 @@ public class HomeActivityTest {
         return bitmap;
     }
 
+    /**
+     * Treats missing text the same as empty text, as a text view does
+     * @param text the text. May be NULL
+     * @return the text, or empty if NULL
+     */
+    private static CharSequence emptyIfNull(CharSequence text) {
+        return text != null ? text : "";
+    }
+
+    /**
+     * Static matcher comparison to check the time remaining displayed by the clock
+     * @param text the expected text. NULL if none
+     * @return the espresso matcher
+     */
+    private static Matcher<View> withRemainingText(final String text) {
+        return new BoundedMatcher<View, ClockView>(ClockView.class) {
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("has time remaining " + text);
+            }
+
+            @Override
+            public boolean matchesSafely(ClockView clock) {
+                return TextUtils.equals(emptyIfNull(clock.getRemainingText()), emptyIfNull(text));
+            }
+        };
+    }
+
+    /**
+     * Static matcher comparison to check the time and period displayed by the clock
+     * @param time the expected time text
+     * @param period the expected period text. NULL if none
+     * @return the espresso matcher
+     */
+    private static Matcher<View> withTimeText(final String time, final String period) {
+        return new BoundedMatcher<View, ClockView>(ClockView.class) {
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("has time " + time + " " + period);
+            }
+
+            @Override
+            public boolean matchesSafely(ClockView clock) {
+                return TextUtils.equals(emptyIfNull(clock.getTimeText()), emptyIfNull(time))
+                        && TextUtils.equals(emptyIfNull(clock.getPeriodText()),
+                                emptyIfNull(period));
+            }
+        };
+    }
+
     /**
      * Static matcher comparison to check that an image drawable matches a noted resource ID
      * @param resourceId the expected resource ID
@@ -6,6 +6,7 @@ import androidx.lifecycle.MutableLiveData;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 import com.jordantymburski.driftoff.domain.usecase.GetInfo;
 import com.jordantymburski.driftoff.domain.usecase.SetInfo;
+import com.jordantymburski.driftoff.domain.usecase.TransferHistory;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -15,6 +16,11 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 import java.util.Random;
 
@@ -48,6 +54,12 @@ public class HomeViewModelTest {
     @Mock
     private SetInfo mSetInfo;
 
+    /**
+     * Transfer history use case mock class
+     */
+    @Mock
+    private TransferHistory mTransferHistory;
+
     /**
      * The presentation view model
      */
@@ -69,10 +81,23 @@ public class HomeViewModelTest {
         Mockito.when(mGetInfo.observable()).thenReturn(mObservable);
 
         // Create the model
-        mViewModel = new HomeViewModelFactory(mGetInfo, mSetInfo).create(HomeViewModel.class);
+        mViewModel = new HomeViewModelFactory(mGetInfo, mSetInfo, mTransferHistory)
+                .create(HomeViewModel.class);
 
         // Clear out any invocations
-        Mockito.clearInvocations(mGetInfo, mSetInfo);
+        Mockito.clearInvocations(mGetInfo, mSetInfo, mTransferHistory);
+    }
+
+    @Test
+    public void exportHistory() {
+        // Execute
+        final WritableByteChannel channel = Channels.newChannel(new ByteArrayOutputStream());
+        mViewModel.exportHistory(channel);
+
+        // Check
+        Mockito.verifyZeroInteractions(mGetInfo, mSetInfo);
+        Mockito.verify(mTransferHistory).exportTo(channel);
+        Mockito.verifyNoMoreInteractions(mTransferHistory);
     }
 
     @Test
@@ -82,6 +107,19 @@ public class HomeViewModelTest {
         assertEquals(mAlarmInfo, mViewModel.getInfoObservable().getValue());
     }
 
+    @Test
+    public void importHistory() {
+        // Execute
+        final ReadableByteChannel channel = Channels.newChannel(
+                new ByteArrayInputStream(new byte[0]));
+        mViewModel.importHistory(channel);
+
+        // Check
+        Mockito.verifyZeroInteractions(mGetInfo, mSetInfo);
+        Mockito.verify(mTransferHistory).importFrom(channel);
+        Mockito.verifyNoMoreInteractions(mTransferHistory);
+    }
+
     @Test
     public void resetAlarm() {
         // Execute
@@ -13,6 +13,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+
 public class AlarmReceiverTest {
     /**
      * The domain interception object
@@ -43,7 +45,33 @@ public class AlarmReceiverTest {
                 .sendBroadcast(new Intent(Intent.ACTION_BOOT_COMPLETED));
         Thread.sleep(250);
 
-        // Check that just the reschedule was called
+        // Check that the timers were dropped and the reschedule was called
+        Mockito.verify(mDomain.timerMultiplexer()).reset();
+        Mockito.verify(mDomain.rescheduleAlarm()).execute();
+        mDomain.verifyNoMoreInteractions();
+
+        // Clean up
+        LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+    }
+
+    @Test
+    public void packageReplaced() throws InterruptedException {
+        // System service connections
+        final Context context = ContextProvider.get();
+
+        // Register the receiver for local broadcasts
+        final AlarmReceiver receiver = new AlarmReceiver();
+        final IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_MY_PACKAGE_REPLACED);
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver, intentFilter);
+
+        // Broadcast the upgrade
+        LocalBroadcastManager.getInstance(context)
+                .sendBroadcast(new Intent(Intent.ACTION_MY_PACKAGE_REPLACED));
+        Thread.sleep(250);
+
+        // Check that the legacy alarm was cancelled and the reschedule was called
+        Mockito.verify(mDomain.timerMultiplexer()).cancelLegacy();
         Mockito.verify(mDomain.rescheduleAlarm()).execute();
         mDomain.verifyNoMoreInteractions();
 
@@ -78,6 +106,33 @@ public class AlarmReceiverTest {
         LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
     }
 
+    @Test
+    public void timer() throws InterruptedException {
+        // System service connections
+        final Context context = ContextProvider.get();
+        Mockito.when(mDomain.timerMultiplexer().takeDue())
+                .thenReturn(Collections.singletonList(AlarmReceiver.ACTION_STOP_AUDIO));
+
+        // Register the receiver for local broadcasts
+        final AlarmReceiver receiver = new AlarmReceiver();
+        final IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(AlarmReceiver.ACTION_TIMER);
+        LocalBroadcastManager.getInstance(context).registerReceiver(receiver, intentFilter);
+
+        // Broadcast the system alarm wake up
+        LocalBroadcastManager.getInstance(context)
+                .sendBroadcast(new Intent(AlarmReceiver.ACTION_TIMER));
+        Thread.sleep(250);
+
+        // Check that the due stop audio timer was dispatched
+        Mockito.verify(mDomain.timerMultiplexer()).takeDue();
+        Mockito.verify(mDomain.stopAudio()).execute();
+        mDomain.verifyNoMoreInteractions();
+
+        // Clean up
+        LocalBroadcastManager.getInstance(context).unregisterReceiver(receiver);
+    }
+
     @Test
     public void timeChanged() throws InterruptedException {
         // System service connections
@@ -0,0 +1,46 @@
+package com.jordantymburski.driftoff.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class SystemTimeSourceTest {
+    /**
+     * Default time zone before the test
+     */
+    private TimeZone mDefault;
+
+    @Before
+    public void setup() {
+        mDefault = TimeZone.getDefault();
+        SystemTimeSource.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefault);
+        SystemTimeSource.invalidate();
+    }
+
+    @Test
+    public void cachedTimeZone() {
+        // Read once and shared
+        final SystemTimeSource timeSource = new SystemTimeSource();
+        final TimeZone first = timeSource.getTimeZone();
+        assertEquals(mDefault, first);
+        assertSame(first, timeSource.getTimeZone());
+        assertSame(first, new SystemTimeSource().getTimeZone());
+
+        // A zone change applies once it is received
+        final TimeZone other = TimeZone.getTimeZone(
+                mDefault.getID().equals("Asia/Tokyo") ? "Europe/Paris" : "Asia/Tokyo");
+        TimeZone.setDefault(other);
+        assertSame(first, timeSource.getTimeZone());
+        SystemTimeSource.invalidate();
+        assertEquals(other, timeSource.getTimeZone());
+    }
+}
@@ -0,0 +1,173 @@
+package com.jordantymburski.driftoff.service;
+
+import com.jordantymburski.driftoff.common.ContextProvider;
+import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TimerMultiplexerTest {
+    private static final String TIMER_A = "com.jordantymburski.driftoff.test.A";
+    private static final String TIMER_B = "com.jordantymburski.driftoff.test.B";
+    private static final String TIMER_C = "com.jordantymburski.driftoff.test.C";
+    private static final long NOW = 1556928000000L;
+
+    /**
+     * System alarm mock class
+     */
+    @Mock
+    private AlarmScheduler mSystemAlarm;
+
+    /**
+     * Timer multiplexer instance to test with
+     */
+    private TimerMultiplexer mTimers;
+
+    /**
+     * Time source mock class
+     */
+    @Mock
+    private TimeSource mTimeSource;
+
+    @Before
+    public void setup() {
+        // Initialize mocks
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(mTimeSource.currentTimeMillis()).thenReturn(NOW);
+
+        // Start without any persisted timers
+        mTimers = new TimerMultiplexer(ContextProvider.get(), mSystemAlarm, mTimeSource);
+        mTimers.reset();
+        Mockito.clearInvocations(mSystemAlarm);
+    }
+
+    @Test
+    public void earliestOnly() {
+        // Only a new earliest time reaches the system alarm
+        mTimers.schedule(TIMER_A, NOW + 2000L);
+        mTimers.schedule(TIMER_B, NOW + 3000L);
+        mTimers.schedule(TIMER_C, NOW + 1000L);
+        mTimers.schedule(TIMER_B, NOW + 3000L);
+        Mockito.verify(mSystemAlarm).schedule(NOW + 2000L);
+        Mockito.verify(mSystemAlarm).schedule(NOW + 1000L);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+
+        // Cancelling a later timer changes nothing, cancelling the earliest moves to the next
+        mTimers.cancel(TIMER_B);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+        mTimers.cancel(TIMER_C);
+        Mockito.verify(mSystemAlarm, Mockito.times(2)).schedule(NOW + 2000L);
+        mTimers.cancel(TIMER_A);
+        Mockito.verify(mSystemAlarm).cancel();
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+    }
+
+    @Test
+    public void batch() {
+        // Two timers at the same time share one system alarm
+        mTimers.schedule(TIMER_A, NOW + 1000L);
+        mTimers.schedule(TIMER_B, NOW + 1000L);
+        mTimers.schedule(TIMER_C, NOW + 5000L);
+        Mockito.verify(mSystemAlarm).schedule(NOW + 1000L);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+
+        // Fire: both due timers in one batch, then the next is registered
+        Mockito.when(mTimeSource.currentTimeMillis()).thenReturn(NOW + 1000L);
+        assertEquals(Arrays.asList(TIMER_A, TIMER_B), mTimers.takeDue());
+        Mockito.verify(mSystemAlarm).schedule(NOW + 5000L);
+
+        // Fire: the last timer, with nothing left to register
+        Mockito.when(mTimeSource.currentTimeMillis()).thenReturn(NOW + 6000L);
+        assertEquals(Collections.singletonList(TIMER_C), mTimers.takeDue());
+        assertTrue(mTimers.takeDue().isEmpty());
+        Mockito.verify(mSystemAlarm, Mockito.never()).cancel();
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+    }
+
+    @Test
+    public void restore() {
+        // Pending timers survive a new process, which registers the earliest again in case the
+        // system dropped it, such as on a force stop
+        mTimers.schedule(TIMER_A, NOW + 1000L);
+        mTimers.schedule(TIMER_B, NOW + 2000L);
+        final TimerMultiplexer restored =
+                new TimerMultiplexer(ContextProvider.get(), mSystemAlarm, mTimeSource);
+        Mockito.verify(mSystemAlarm, Mockito.times(2)).schedule(NOW + 1000L);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+
+        Mockito.when(mTimeSource.currentTimeMillis()).thenReturn(NOW + 1500L);
+        assertEquals(Collections.singletonList(TIMER_A), restored.takeDue());
+        Mockito.verify(mSystemAlarm).schedule(NOW + 2000L);
+
+        // A reset drops them all
+        restored.reset();
+        assertTrue(new TimerMultiplexer(ContextProvider.get(), mSystemAlarm, mTimeSource)
+                .takeDue().isEmpty());
+    }
+
+    @Test
+    public void reconcile() {
+        // A reschedule storm on the same time issues one call per process
+        mTimers.schedule(NOW + 1000L);
+        final TimerMultiplexer restored =
+                new TimerMultiplexer(ContextProvider.get(), mSystemAlarm, mTimeSource);
+        for (int i = 0; i < 10; i++) {
+            mTimers.schedule(NOW + 1000L);
+            restored.schedule(NOW + 1000L);
+        }
+        Mockito.verify(mSystemAlarm, Mockito.times(2)).schedule(NOW + 1000L);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+        assertEquals(1L, mTimers.issuedCount());
+        assertEquals(10L, mTimers.skippedCount());
+        assertEquals(1L, restored.issuedCount());
+        assertEquals(10L, restored.skippedCount());
+
+        // Cancelling a timer that is not pending issues nothing
+        mTimers.cancel(TIMER_A);
+        Mockito.verifyNoMoreInteractions(mSystemAlarm);
+        assertEquals(11L, mTimers.skippedCount());
+    }
+
+    @Test
+    public void cancelLegacy() {
+        // The legacy alarm is only cancelled, leaving the timers alone
+        final AlarmScheduler legacyAlarm = Mockito.mock(AlarmScheduler.class);
+        final TimerMultiplexer upgraded = new TimerMultiplexer(ContextProvider.get(),
+                mSystemAlarm, legacyAlarm, mTimeSource);
+        upgraded.cancelLegacy();
+        Mockito.verify(legacyAlarm).cancel();
+        Mockito.verifyNoMoreInteractions(legacyAlarm);
+        Mockito.verifyZeroInteractions(mSystemAlarm);
+
+        // The stop audio timer is registered again on the single alarm
+        upgraded.schedule(NOW + 1000L);
+        Mockito.verify(mSystemAlarm).schedule(NOW + 1000L);
+        Mockito.verifyNoMoreInteractions(legacyAlarm);
+
+        // Without a legacy alarm there is nothing to cancel
+        mTimers.cancelLegacy();
+        assertEquals(0L, mTimers.issuedCount());
+    }
+
+    @Test
+    public void stopAudio() {
+        // The alarm scheduler port is the stop audio timer
+        mTimers.schedule(NOW - 1000L);
+        Mockito.verify(mSystemAlarm).schedule(NOW - 1000L);
+        assertEquals(Collections.singletonList(TimerMultiplexer.TIMER_STOP_AUDIO),
+                mTimers.takeDue());
+
+        mTimers.schedule(NOW + 1000L);
+        mTimers.cancel();
+        Mockito.verify(mSystemAlarm).cancel();
+    }
+}
@@ -3,9 +3,11 @@ package com.jordantymburski.driftoff;
 import android.app.Activity;
 import android.app.Application;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 
 import com.jordantymburski.driftoff.di.AppModule;
 import com.jordantymburski.driftoff.di.DaggerAppComponent;
+import com.jordantymburski.driftoff.domain.usecase.SetInfo;
 
 import javax.inject.Inject;
 
@@ -24,6 +26,9 @@ public class App extends Application
     @Inject
     DispatchingAndroidInjector<BroadcastReceiver> dispatchingReceiverInjector;
 
+    @Inject
+    SetInfo useSetInfo;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -33,6 +38,16 @@ public class App extends Application
                 .build());
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // The process is now a candidate to be killed. Persist any batched changes
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            useSetInfo.flush();
+        }
+    }
+
     @Override
     public DispatchingAndroidInjector<Activity> activityInjector() {
         return dispatchingActivityInjector;
@@ -0,0 +1,614 @@
+package com.jordantymburski.driftoff.data;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of history storage using a compact, append-only binary event file. Each event
+ * is a type byte, the time as a variable length delta from the previous event, the setpoint for
+ * armed events, and a check byte. A typical night is about 15 bytes.
+ * Appends write the new event and then a checksummed checkpoint in the header, with the tail
+ * offset, the last event time and the open session. The first append of a process reads the
+ * checkpoint and only reads the events written after it, if any were appended before a crash.
+ * The whole file is only read if the checkpoint is damaged. Scans stream the file event by event
+ * and pair armed and stopped events into sessions, so the history is never loaded into memory as
+ * a whole
+ */
+public class BinaryHistoryStorage implements HistoryStorage {
+    private static final int MAGIC = 0x444F4853; // "DOHS"
+    private static final int MAGIC_SIZE = 4;
+    private static final int MAX_RECORD_SIZE = 16;
+
+    // Checkpoint layout, after the magic: tail offset, last time, armed at, armed minute, checksum
+    private static final int OFFSET_LENGTH = 0;
+    private static final int OFFSET_LAST_TIME = 8;
+    private static final int OFFSET_ARMED_AT = 16;
+    private static final int OFFSET_ARMED_MINUTE = 24;
+    private static final int OFFSET_CHECKSUM = 28;
+    private static final int CHECKPOINT_SIZE = 32;
+    private static final int HEADER_SIZE = MAGIC_SIZE + CHECKPOINT_SIZE;
+
+    @VisibleForTesting
+    static final int TYPE_ARMED = 1;
+    @VisibleForTesting
+    static final int TYPE_STOPPED = 2;
+    @VisibleForTesting
+    static final int TYPE_CANCELLED = 3;
+
+    /**
+     * Reusable checkpoint encoding buffer
+     */
+    private final ByteBuffer mCheckpoint = ByteBuffer.allocate(CHECKPOINT_SIZE);
+
+    /**
+     * The history file
+     */
+    private final File mFile;
+
+    /**
+     * TRUE if the last event in the file is an armed event that has not been stopped yet
+     */
+    private boolean mArmed;
+
+    /**
+     * Time the open session was armed. Only valid while armed
+     */
+    private long mArmedAt;
+
+    /**
+     * Setpoint minute of the day of the open session. Only valid while armed
+     */
+    private int mArmedMinute;
+
+    /**
+     * Time of the last event in the file. Base for the next delta
+     */
+    private long mLastTime;
+
+    /**
+     * Length of the valid part of the file. -1 until the tail has been located
+     */
+    private long mLength = -1;
+
+    /**
+     * Open file for appending. NULL until first use
+     */
+    private RandomAccessFile mOut;
+
+    /**
+     * Reusable record encoding buffer
+     */
+    private final byte[] mRecord = new byte[MAX_RECORD_SIZE];
+
+    /**
+     * Main constructor
+     * @param file the history file. Created on the first append
+     */
+    public BinaryHistoryStorage(File file) {
+        mFile = file;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Appends one event record at the end of the file, then updates the open session and the
+     * checkpoint. The file tail must already be open
+     * @param type event type
+     * @param time unix epoch time of the event
+     * @param minuteOfDay setpoint minute of the day. Only written for armed events
+     * @return TRUE if appended. FALSE if the write failed
+     */
+    private boolean append(int type, long time, int minuteOfDay) {
+        try {
+            final int length = encode(mRecord, 0, type, time - mLastTime, minuteOfDay);
+
+            mOut.seek(mLength);
+            mOut.write(mRecord, 0, length);
+            mLength += length;
+            mLastTime = time;
+            mArmed = type == TYPE_ARMED;
+            if (mArmed) {
+                mArmedAt = time;
+                mArmedMinute = minuteOfDay;
+            }
+            writeCheckpoint();
+            return true;
+        } catch (IOException e) {
+            // History is best effort. Locate the tail again on the next append
+            closeQuietly();
+            return false;
+        }
+    }
+
+    /**
+     * Computes the checksum of the checkpoint contents, excluding the checksum itself
+     * @param checkpoint the checkpoint buffer
+     * @return checksum value
+     */
+    private static int checksum(ByteBuffer checkpoint) {
+        final CRC32 crc = new CRC32();
+        crc.update(checkpoint.array(), checkpoint.arrayOffset(), OFFSET_CHECKSUM);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Computes the check byte of a record
+     * @param bytes record buffer
+     * @param offset record start
+     * @param length record length, excluding the check byte
+     * @return the check byte
+     */
+    private static byte check(byte[] bytes, int offset, int length) {
+        int check = 0x5A;
+        for (int i = offset; i < offset + length; i++) {
+            check = (check * 31 + (bytes[i] & 0xFF)) & 0xFF;
+        }
+        return (byte) check;
+    }
+
+    /**
+     * Closes the append file, ignoring any failure
+     */
+    private void closeQuietly() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                // Nothing more can be done with it
+            }
+            mOut = null;
+        }
+        mLength = -1;
+    }
+
+    /**
+     * Encodes one event record
+     * @param bytes output buffer, with room for MAX_RECORD_SIZE bytes at the offset
+     * @param offset write offset
+     * @param type event type
+     * @param delta time since the previous event
+     * @param minuteOfDay setpoint minute of the day. Only written for armed events
+     * @return the offset after the record
+     */
+    private static int encode(byte[] bytes, int offset, int type, long delta, int minuteOfDay) {
+        int index = offset;
+        bytes[index++] = (byte) type;
+        index = writeVarLong(bytes, index, zigZag(delta));
+        if (type == TYPE_ARMED) {
+            index = writeVarLong(bytes, index, minuteOfDay);
+        }
+        bytes[index] = check(bytes, offset, index - offset);
+        return index + 1;
+    }
+
+    /**
+     * Opens the file for appending and locates the end of the last valid record, cutting off
+     * anything after it. Reading starts from the checkpoint when it is valid
+     * @throws IOException if the file can not be opened or read
+     */
+    private void openTail() throws IOException {
+        if (mOut != null) {
+            return;
+        }
+
+        mOut = new RandomAccessFile(mFile, "rw");
+        if (mOut.length() < HEADER_SIZE) {
+            mOut.setLength(0);
+            mOut.writeInt(MAGIC);
+            mLength = HEADER_SIZE;
+            mLastTime = 0L;
+            mArmed = false;
+            writeCheckpoint();
+            return;
+        }
+
+        final FileInputStream input = new FileInputStream(mFile);
+        final EventReader reader = new EventReader(new BufferedInputStream(input), mOut.length());
+        try {
+            if (readCheckpoint(mOut.length())) {
+                // Only the events appended after the checkpoint are read
+                input.getChannel().position(mLength);
+                reader.position = mLength;
+                reader.time = mLastTime;
+            } else if (reader.readHeader()) {
+                mArmed = false;
+            } else {
+                throw new IOException("Not a history file: " + mFile);
+            }
+            while (reader.next()) {
+                mArmed = reader.type == TYPE_ARMED;
+                if (mArmed) {
+                    mArmedAt = reader.time;
+                    mArmedMinute = reader.minuteOfDay;
+                }
+            }
+            mLength = reader.position;
+            mLastTime = reader.time;
+        } finally {
+            reader.close();
+        }
+
+        if (mLength < mOut.length()) {
+            mOut.setLength(mLength);
+        }
+    }
+
+    /**
+     * Reads the checkpoint from the header into the tail state
+     * @param fileLength current length of the file
+     * @return TRUE if it is valid and within the file. FALSE if the whole file must be read
+     * @throws IOException if the read fails
+     */
+    private boolean readCheckpoint(long fileLength) throws IOException {
+        mOut.seek(0);
+        if (mOut.readInt() != MAGIC) {
+            return false;
+        }
+        mCheckpoint.clear();
+        mOut.readFully(mCheckpoint.array(), mCheckpoint.arrayOffset(), CHECKPOINT_SIZE);
+
+        final long length = mCheckpoint.getLong(OFFSET_LENGTH);
+        if (mCheckpoint.getInt(OFFSET_CHECKSUM) != checksum(mCheckpoint)
+                || length < HEADER_SIZE || length > fileLength) {
+            return false;
+        }
+        mLength = length;
+        mLastTime = mCheckpoint.getLong(OFFSET_LAST_TIME);
+        mArmedMinute = mCheckpoint.getInt(OFFSET_ARMED_MINUTE);
+        mArmed = mArmedMinute >= 0;
+        mArmedAt = mCheckpoint.getLong(OFFSET_ARMED_AT);
+        return true;
+    }
+
+    /**
+     * Writes the tail state into the checkpoint in the header. Called after each append, so a
+     * crash in between only leaves the checkpoint behind the tail
+     * @throws IOException if the write fails
+     */
+    private void writeCheckpoint() throws IOException {
+        mCheckpoint.clear();
+        mCheckpoint.putLong(OFFSET_LENGTH, mLength);
+        mCheckpoint.putLong(OFFSET_LAST_TIME, mLastTime);
+        mCheckpoint.putLong(OFFSET_ARMED_AT, mArmed ? mArmedAt : 0L);
+        mCheckpoint.putInt(OFFSET_ARMED_MINUTE, mArmed ? mArmedMinute : -1);
+        mCheckpoint.putInt(OFFSET_CHECKSUM, checksum(mCheckpoint));
+
+        mOut.seek(MAGIC_SIZE);
+        mOut.write(mCheckpoint.array(), mCheckpoint.arrayOffset(), CHECKPOINT_SIZE);
+    }
+
+    /**
+     * Opens the file for appending, like openTail(), without passing on a failure
+     * @return TRUE if open. FALSE if it failed, in which case the tail is located again next time
+     */
+    private boolean openTailQuietly() {
+        try {
+            openTail();
+            return true;
+        } catch (IOException e) {
+            // History is best effort
+            closeQuietly();
+            return false;
+        }
+    }
+
+    /**
+     * Writes a value as an unsigned variable length number, 7 bits per byte
+     * @param bytes output buffer
+     * @param offset write offset
+     * @param value value to write
+     * @return the offset after the value
+     */
+    private static int writeVarLong(byte[] bytes, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so small magnitudes stay small
+     * @param value signed value
+     * @return zig-zag encoded value
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Delete all history
+     */
+    @VisibleForTesting
+    public synchronized void deleteAll() {
+        closeQuietly();
+        mFile.delete();
+    }
+
+    /* ----------------------------------------------
+     * HistoryStorage OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Append completed sessions, such as imported ones, with a single write. Refused while a
+     * session is open, since its stop must follow its own armed event to pair with it
+     * @param sessions completed sessions, oldest first
+     * @return TRUE if appended. FALSE if a session is open or the write failed
+     */
+    @Override
+    public synchronized boolean appendSessions(List<SleepSession> sessions) {
+        try {
+            openTail();
+            if (mArmed) {
+                return false;
+            }
+
+            final byte[] chunk = new byte[sessions.size() * 2 * MAX_RECORD_SIZE];
+            int length = 0;
+            long lastTime = mLastTime;
+            for (SleepSession session : sessions) {
+                length = encode(chunk, length, TYPE_ARMED, session.armedAt - lastTime,
+                        session.timeHour * 60 + session.timeMinute);
+                length = encode(chunk, length, session.cancelled ? TYPE_CANCELLED : TYPE_STOPPED,
+                        session.stoppedAt - session.armedAt, 0);
+                lastTime = session.stoppedAt;
+            }
+
+            mOut.seek(mLength);
+            mOut.write(chunk, 0, length);
+            mLength += length;
+            mLastTime = lastTime;
+            writeCheckpoint();
+            return true;
+        } catch (IOException e) {
+            // History is best effort. Locate the tail again on the next append
+            closeQuietly();
+            return false;
+        }
+    }
+
+    /**
+     * Record that the alarm was armed
+     * @param time unix epoch time it was armed
+     * @param timeHour 0-23 hour setpoint
+     * @param timeMinute minute setpoint
+     */
+    @Override
+    public synchronized void armed(long time, int timeHour, int timeMinute) {
+        if (openTailQuietly()) {
+            append(TYPE_ARMED, time, timeHour * 60 + timeMinute);
+        }
+    }
+
+    /**
+     * Stream every completed session, oldest first. Events appended while the scan is running
+     * are not included
+     * @param visitor receives each session
+     */
+    @Override
+    public void scan(Visitor visitor) {
+        final long length;
+        synchronized (this) {
+            length = mLength >= 0 ? mLength : mFile.length();
+        }
+        if (length < HEADER_SIZE) {
+            return;
+        }
+
+        EventReader reader = null;
+        try {
+            reader = new EventReader(
+                    new BufferedInputStream(new FileInputStream(mFile)), length);
+            if (!reader.readHeader()) {
+                return;
+            }
+
+            boolean armed = false;
+            long armedAt = 0L;
+            int minuteOfDay = 0;
+            while (reader.next()) {
+                if (reader.type == TYPE_ARMED) {
+                    armed = true;
+                    armedAt = reader.time;
+                    minuteOfDay = reader.minuteOfDay;
+                } else if (armed) {
+                    visitor.visit(new SleepSession(armedAt, minuteOfDay / 60, minuteOfDay % 60,
+                            reader.time, reader.type == TYPE_CANCELLED));
+                    armed = false;
+                }
+            }
+        } catch (IOException e) {
+            // History is best effort. Stop at the read failure
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Record that the active session ended. Nothing is written if no session is armed
+     * @param time unix epoch time it ended
+     * @param cancelled TRUE if cancelled before the alarm fired
+     * @return the completed session. NULL if no session was armed or the write failed
+     */
+    @Override
+    public synchronized SleepSession stopped(long time, boolean cancelled) {
+        if (!openTailQuietly() || !mArmed) {
+            return null;
+        }
+
+        final SleepSession session = new SleepSession(mArmedAt, mArmedMinute / 60,
+                mArmedMinute % 60, time, cancelled);
+        return append(cancelled ? TYPE_CANCELLED : TYPE_STOPPED, time, 0) ? session : null;
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL CLASSES
+     * ---------------------------------------------- */
+
+    /**
+     * Streaming reader of event records. Stops at the first incomplete or invalid record
+     */
+    private static class EventReader {
+        private final InputStream mInput;
+        private final long mLimit;
+        private final byte[] mRecord = new byte[MAX_RECORD_SIZE];
+
+        /**
+         * Position after the last valid record
+         */
+        long position;
+
+        /**
+         * Fields of the last valid record
+         */
+        int type;
+        long time;
+        int minuteOfDay;
+
+        EventReader(InputStream input, long limit) {
+            mInput = input;
+            mLimit = limit;
+        }
+
+        void close() {
+            try {
+                mInput.close();
+            } catch (IOException e) {
+                // Read only. Nothing is lost
+            }
+        }
+
+        /**
+         * Reads one byte into the record buffer
+         * @param index buffer index
+         * @return the unsigned byte. -1 at the end of the valid data
+         * @throws IOException if the read fails
+         */
+        private int readByte(int index) throws IOException {
+            if (index >= MAX_RECORD_SIZE || position + index >= mLimit) {
+                return -1;
+            }
+            final int value = mInput.read();
+            if (value >= 0) {
+                mRecord[index] = (byte) value;
+            }
+            return value;
+        }
+
+        /**
+         * Reads an unsigned variable length number into the record buffer
+         * @param index buffer index to start at
+         * @return the index after the number. -1 if the data ended first
+         * @throws IOException if the read fails
+         */
+        private int readVarLong(int index, long[] out) throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                final int b = readByte(index++);
+                if (b < 0 || shift > 63) {
+                    return -1;
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    out[0] = value;
+                    return index;
+                }
+                shift += 7;
+            }
+        }
+
+        /**
+         * Reads and validates the file header, and skips the checkpoint
+         * @return TRUE if valid
+         * @throws IOException if the read fails
+         */
+        boolean readHeader() throws IOException {
+            int magic = 0;
+            for (int i = 0; i < MAGIC_SIZE; i++) {
+                final int b = readByte(i);
+                if (b < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            if (magic != MAGIC || mLimit < HEADER_SIZE) {
+                return false;
+            }
+
+            // The checkpoint is only used for appending
+            long remaining = CHECKPOINT_SIZE;
+            while (remaining > 0) {
+                final long skipped = mInput.skip(remaining);
+                if (skipped <= 0) {
+                    return false;
+                }
+                remaining -= skipped;
+            }
+            position = HEADER_SIZE;
+            return true;
+        }
+
+        /**
+         * Reads the next record
+         * @return TRUE if a valid record was read. FALSE at the end of the valid data
+         * @throws IOException if the read fails
+         */
+        boolean next() throws IOException {
+            final long[] value = new long[1];
+
+            final int recordType = readByte(0);
+            if (recordType != TYPE_ARMED && recordType != TYPE_STOPPED
+                    && recordType != TYPE_CANCELLED) {
+                return false;
+            }
+
+            int index = readVarLong(1, value);
+            if (index < 0) {
+                return false;
+            }
+            final long delta = (value[0] >>> 1) ^ -(value[0] & 1);
+
+            int recordMinute = 0;
+            if (recordType == TYPE_ARMED) {
+                index = readVarLong(index, value);
+                if (index < 0) {
+                    return false;
+                }
+                recordMinute = (int) value[0];
+            }
+
+            final int recordCheck = readByte(index);
+            if (recordCheck < 0 || (byte) recordCheck != check(mRecord, 0, index)) {
+                return false;
+            }
+
+            type = recordType;
+            time += delta;
+            minuteOfDay = recordMinute;
+            position += index + 1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.jordantymburski.driftoff.data;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of storage using an append-only journal file. Each save appends one small
+ * checksummed record, so a write is a short sequential append without a sync. On open, the
+ * journal is replayed up to the last complete, valid record and anything after it (a torn
+ * append) is cut off. Once enough records build up, a background compaction replaces the
+ * journal with a single record using an atomic rename.
+ * On first use, when the journal holds no valid record, the state is migrated from the legacy
+ * storage. If the journal fails, it is deleted and the legacy storage is used for the rest of
+ * the process, so the next start migrates the newer legacy state instead of replaying a stale
+ * journal
+ */
+public class JournalStorage implements Storage {
+    private static final byte MARKER = (byte) 0xA5;
+    private static final int COMPACT_THRESHOLD = 64;
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    // Record layout: marker, alarm, hour, minute, checksum
+    private static final int OFFSET_ALARM = 1;
+    private static final int OFFSET_TIME_HOUR = 9;
+    private static final int OFFSET_TIME_MINUTE = 13;
+    private static final int OFFSET_CHECKSUM = 17;
+    private static final int RECORD_SIZE = 21;
+
+    /**
+     * Number of records appended. Lets a compaction tell if a save landed while it synced
+     */
+    private long mAppendCount;
+
+    /**
+     * Open journal channel, positioned at the end. NULL until first use, or if it failed
+     */
+    private FileChannel mChannel;
+
+    /**
+     * Runs compactions off the saving thread
+     */
+    private final Executor mCompactor;
+
+    /**
+     * TRUE if a compaction has been queued and not yet run
+     */
+    private boolean mCompactPending;
+
+    /**
+     * The latest replayed or saved info. NULL if the journal holds no record
+     */
+    private AlarmInfo mCurrent;
+
+    /**
+     * The journal file
+     */
+    private final File mFile;
+
+    /**
+     * Storage that held the state before this implementation. Read once for migration, and
+     * used instead if the journal can not be opened or written
+     */
+    private final Storage mLegacyStorage;
+
+    /**
+     * TRUE once opening has been attempted
+     */
+    private boolean mOpened;
+
+    /**
+     * Number of records in the journal
+     */
+    private int mRecordCount;
+
+    /**
+     * Reusable record buffer
+     */
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    /**
+     * Background compaction run
+     */
+    private final Runnable mCompactRunnable = new Runnable() {
+        @Override
+        public void run() {
+            compact();
+        }
+    };
+
+    /**
+     * Main constructor
+     * @param file the journal file. Created if it does not exist
+     * @param legacyStorage previous storage to migrate from
+     * @param compactor executor that compactions are run on
+     */
+    public JournalStorage(File file, Storage legacyStorage, Executor compactor) {
+        mFile = file;
+        mLegacyStorage = legacyStorage;
+        mCompactor = compactor;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Appends a record for the info at the current end of the journal
+     * @param info the alarm info to append
+     * @throws IOException if the write fails
+     */
+    private void append(AlarmInfo info) throws IOException {
+        encode(mRecord, info);
+        while (mRecord.hasRemaining()) {
+            mChannel.write(mRecord);
+        }
+        mAppendCount++;
+        mCurrent = info;
+        mRecordCount++;
+
+        if (mRecordCount >= COMPACT_THRESHOLD && !mCompactPending) {
+            mCompactPending = true;
+            mCompactor.execute(mCompactRunnable);
+        }
+    }
+
+    /**
+     * Computes the checksum of the record contents, excluding the checksum itself
+     * @param record the record buffer
+     * @return checksum value
+     */
+    private static int checksum(ByteBuffer record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), record.arrayOffset(), OFFSET_CHECKSUM);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Closes the journal channel, ignoring any failure
+     */
+    private void closeQuietly() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                // Nothing more can be done with it
+            }
+            mChannel = null;
+        }
+    }
+
+    /**
+     * Replaces the journal with a single record holding the latest info. The new journal is
+     * fully written and synced before it is renamed over the old one. The sync runs without
+     * holding the lock, so saves and loads are not held up by it
+     */
+    private void compact() {
+        final AlarmInfo current;
+        final long appendCount;
+        synchronized (this) {
+            mCompactPending = false;
+            if (mChannel == null || mCurrent == null || mRecordCount <= 1) {
+                return;
+            }
+            current = mCurrent;
+            appendCount = mAppendCount;
+        }
+
+        final File compactFile = new File(mFile.getPath() + COMPACT_SUFFIX);
+        try {
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            encode(record, current);
+            final RandomAccessFile compact = new RandomAccessFile(compactFile, "rw");
+            try {
+                compact.setLength(0);
+                compact.write(record.array(), 0, RECORD_SIZE);
+                compact.getFD().sync();
+            } finally {
+                compact.close();
+            }
+        } catch (IOException e) {
+            // The existing journal is untouched and still valid. Try again on a later save
+            compactFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (mChannel == null || mAppendCount != appendCount) {
+                // A save landed or the journal failed while syncing. A later save tries again
+                compactFile.delete();
+                return;
+            }
+
+            try {
+                if (!compactFile.renameTo(mFile)) {
+                    throw new IOException("Unable to replace journal " + mFile);
+                }
+                closeQuietly();
+                mChannel = openChannel();
+                mChannel.position(mChannel.size());
+                mRecordCount = 1;
+            } catch (IOException e) {
+                // The existing journal is untouched and still valid. Try again on a later save
+                compactFile.delete();
+                if (mChannel == null) {
+                    mOpened = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the info into a record buffer, ready to be written
+     * @param record the record buffer
+     * @param info the alarm info
+     */
+    private static void encode(ByteBuffer record, AlarmInfo info) {
+        record.clear();
+        record.put(MARKER);
+        record.putLong(info.alarm);
+        record.putInt(info.timeHour);
+        record.putInt(info.timeMinute);
+        record.putInt(checksum(record));
+        record.flip();
+    }
+
+    /**
+     * Switches to the legacy storage after a journal failure. The journal is deleted so that
+     * the next start migrates from the legacy storage, which then holds the newer state
+     */
+    private void fail() {
+        closeQuietly();
+        mFile.delete();
+        mCurrent = null;
+    }
+
+    /**
+     * Opens the journal, replays it and cuts off anything after the last valid record, if not
+     * already attempted
+     * @return TRUE if the journal is open. FALSE if the legacy storage must be used instead
+     */
+    private boolean open() {
+        if (!mOpened) {
+            mOpened = true;
+            try {
+                mChannel = openChannel();
+                replay();
+            } catch (IOException e) {
+                fail();
+            }
+        }
+        return mChannel != null;
+    }
+
+    /**
+     * Opens a read/write channel on the journal file
+     * @return the channel
+     * @throws IOException if the file can not be opened
+     */
+    private FileChannel openChannel() throws IOException {
+        return new RandomAccessFile(mFile, "rw").getChannel();
+    }
+
+    /**
+     * Reads every record from the start of the journal until the first incomplete or invalid
+     * one. The journal is truncated after the last valid record, so later appends stay aligned
+     * @throws IOException if the read fails
+     */
+    private void replay() throws IOException {
+        mCurrent = null;
+        mRecordCount = 0;
+
+        long position = 0;
+        final long size = mChannel.size();
+        while (position + RECORD_SIZE <= size) {
+            mRecord.clear();
+            while (mRecord.hasRemaining()) {
+                if (mChannel.read(mRecord, position + mRecord.position()) < 0) {
+                    break;
+                }
+            }
+            if (mRecord.hasRemaining() || mRecord.get(0) != MARKER
+                    || mRecord.getInt(OFFSET_CHECKSUM) != checksum(mRecord)) {
+                break;
+            }
+
+            mCurrent = AlarmInfo.of(
+                    mRecord.getLong(OFFSET_ALARM),
+                    mRecord.getInt(OFFSET_TIME_HOUR),
+                    mRecord.getInt(OFFSET_TIME_MINUTE));
+            mRecordCount++;
+            position += RECORD_SIZE;
+        }
+
+        if (position < size) {
+            mChannel.truncate(position);
+        }
+        mChannel.position(position);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Delete the journal. The next load will migrate again
+     */
+    @VisibleForTesting
+    public synchronized void deleteAll() {
+        closeQuietly();
+        mFile.delete();
+        mOpened = false;
+        mCurrent = null;
+        mRecordCount = 0;
+    }
+
+    /* ----------------------------------------------
+     * Storage OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Block until all previous appends to the journal are written to disk
+     */
+    @Override
+    public synchronized void flush() {
+        if (mChannel != null) {
+            try {
+                mChannel.force(false);
+                return;
+            } catch (IOException e) {
+                // Carry the latest state over, since the journal holding it is deleted
+                final AlarmInfo current = mCurrent;
+                fail();
+                if (current != null) {
+                    mLegacyStorage.save(current);
+                }
+            }
+        }
+        if (mOpened) {
+            mLegacyStorage.flush();
+        }
+    }
+
+    /**
+     * Load the last valid record from the journal. Migrates from the legacy storage if there is
+     * none
+     * @return stored alarm info
+     */
+    @Override
+    public synchronized AlarmInfo load() {
+        if (!open()) {
+            return mLegacyStorage.load();
+        }
+
+        if (mCurrent == null) {
+            final AlarmInfo migrated = mLegacyStorage.load();
+            try {
+                append(migrated);
+            } catch (IOException e) {
+                fail();
+            }
+            return migrated;
+        }
+        return mCurrent;
+    }
+
+    /**
+     * Append the alarm info to the journal
+     * @param info new alarm info
+     */
+    @Override
+    public synchronized void save(AlarmInfo info) {
+        if (open()) {
+            try {
+                append(info);
+                return;
+            } catch (IOException e) {
+                fail();
+            }
+        }
+        mLegacyStorage.save(info);
+    }
+}
@@ -0,0 +1,240 @@
+package com.jordantymburski.driftoff.data;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation of storage using a small fixed layout memory mapped file. The file holds two
+ * checksummed slots that are written alternately, so a torn write can only ever damage the slot
+ * that was being replaced and the previous state is still recovered. Loading is a few memory
+ * reads once the file is mapped.
+ * On first use, when the file holds no valid slot, the state is migrated from the legacy storage.
+ * If the file can not be mapped, it is deleted and the legacy storage is used for the rest of the
+ * process, so the next start migrates the newer legacy state instead of loading a stale slot
+ */
+public class MappedFileStorage implements Storage {
+    private static final int MAGIC = 0x44524654; // "DRFT"
+
+    // Slot layout: magic, sequence, alarm, hour, minute, checksum
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_SEQUENCE = 4;
+    private static final int OFFSET_ALARM = 12;
+    private static final int OFFSET_TIME_HOUR = 20;
+    private static final int OFFSET_TIME_MINUTE = 24;
+    private static final int OFFSET_CHECKSUM = 28;
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_COUNT = 2;
+    private static final int FILE_SIZE = SLOT_SIZE * SLOT_COUNT;
+
+    /**
+     * Checksum of slot contents, reused for every slot written
+     */
+    private final CRC32 mCrc = new CRC32();
+
+    /**
+     * The backing file
+     */
+    private final File mFile;
+
+    /**
+     * Storage that held the state before this implementation. Read once for migration, and
+     * used instead if the file can not be mapped
+     */
+    private final Storage mLegacyStorage;
+
+    /**
+     * The mapped file. NULL until first use, or if mapping failed
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Offset of the slot holding the latest state. Found once when the file is mapped and kept
+     * by each write. -1 if neither slot is valid
+     */
+    private int mLatest = -1;
+
+    /**
+     * TRUE once mapping has been attempted
+     */
+    private boolean mOpened;
+
+    /**
+     * Sequence of the latest valid slot. The next save goes to the other slot
+     */
+    private long mSequence;
+
+    /**
+     * Main constructor
+     * @param file the backing file. Created if it does not exist
+     * @param legacyStorage previous storage to migrate from
+     */
+    public MappedFileStorage(File file, Storage legacyStorage) {
+        mFile = file;
+        mLegacyStorage = legacyStorage;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Computes the checksum of the slot contents, excluding the checksum itself
+     * @param base slot offset in the buffer
+     * @return checksum value
+     */
+    private int checksum(int base) {
+        mCrc.reset();
+        for (int i = 0; i < OFFSET_CHECKSUM; i++) {
+            mCrc.update(mBuffer.get(base + i));
+        }
+        return (int) mCrc.getValue();
+    }
+
+    /**
+     * Maps the file, if not already attempted
+     * @return TRUE if the file is mapped. FALSE if the legacy storage must be used instead
+     */
+    private boolean open() {
+        if (!mOpened) {
+            mOpened = true;
+            try {
+                final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+                try {
+                    file.setLength(FILE_SIZE);
+                    mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                } finally {
+                    file.close();
+                }
+                mLatest = latestSlot();
+            } catch (IOException e) {
+                mBuffer = null;
+                mFile.delete();
+            }
+        }
+        return mBuffer != null;
+    }
+
+    /**
+     * Finds the slot with the highest sequence that has a valid checksum, and tracks its
+     * sequence for the next write
+     * @return slot offset in the buffer. -1 if neither slot is valid
+     */
+    private int latestSlot() {
+        int latest = -1;
+        long latestSequence = 0;
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            final int base = slot * SLOT_SIZE;
+            if (mBuffer.getInt(base + OFFSET_MAGIC) == MAGIC
+                    && mBuffer.getInt(base + OFFSET_CHECKSUM) == checksum(base)) {
+                final long sequence = mBuffer.getLong(base + OFFSET_SEQUENCE);
+                if (latest < 0 || sequence > latestSequence) {
+                    latest = base;
+                    latestSequence = sequence;
+                }
+            }
+        }
+        mSequence = latestSequence;
+        return latest;
+    }
+
+    /**
+     * Writes the info into the slot not holding the latest state. The checksum is written last,
+     * which is what commits the slot
+     * @param info the alarm info to write
+     */
+    private void write(AlarmInfo info) {
+        final long sequence = mSequence + 1;
+        final int base = (int) (sequence % SLOT_COUNT) * SLOT_SIZE;
+
+        mBuffer.putInt(base + OFFSET_CHECKSUM, 0);
+        mBuffer.putInt(base + OFFSET_MAGIC, MAGIC);
+        mBuffer.putLong(base + OFFSET_SEQUENCE, sequence);
+        mBuffer.putLong(base + OFFSET_ALARM, info.alarm);
+        mBuffer.putInt(base + OFFSET_TIME_HOUR, info.timeHour);
+        mBuffer.putInt(base + OFFSET_TIME_MINUTE, info.timeMinute);
+        mBuffer.putInt(base + OFFSET_CHECKSUM, checksum(base));
+
+        mLatest = base;
+        mSequence = sequence;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Clear both slots in the file. The next load will migrate again
+     */
+    @VisibleForTesting
+    public synchronized void deleteAll() {
+        if (open()) {
+            for (int i = 0; i < FILE_SIZE; i++) {
+                mBuffer.put(i, (byte) 0);
+            }
+            mBuffer.force();
+            mLatest = -1;
+            mSequence = 0;
+        }
+    }
+
+    /* ----------------------------------------------
+     * Storage OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Block until all previous saves in the mapped file are written to disk
+     */
+    @Override
+    public synchronized void flush() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        } else if (mOpened) {
+            mLegacyStorage.flush();
+        }
+    }
+
+    /**
+     * Load the latest valid slot from the mapped file, as found when it was mapped. Migrates from
+     * the legacy storage if there is none
+     * @return stored alarm info
+     */
+    @Override
+    public synchronized AlarmInfo load() {
+        if (!open()) {
+            return mLegacyStorage.load();
+        }
+
+        if (mLatest < 0) {
+            final AlarmInfo migrated = mLegacyStorage.load();
+            write(migrated);
+            return migrated;
+        }
+
+        return AlarmInfo.of(
+                mBuffer.getLong(mLatest + OFFSET_ALARM),
+                mBuffer.getInt(mLatest + OFFSET_TIME_HOUR),
+                mBuffer.getInt(mLatest + OFFSET_TIME_MINUTE));
+    }
+
+    /**
+     * Save the alarm info into the next slot of the mapped file
+     * @param info new alarm info
+     */
+    @Override
+    public synchronized void save(AlarmInfo info) {
+        if (!open()) {
+            mLegacyStorage.save(info);
+            return;
+        }
+        write(info);
+    }
+}
@@ -0,0 +1,93 @@
+package com.jordantymburski.driftoff.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.jordantymburski.driftoff.domain.adapter.ScheduleStorage;
+import com.jordantymburski.driftoff.domain.model.WeeklySchedule;
+
+import java.util.Calendar;
+import java.util.concurrent.Executor;
+
+/**
+ * Implementation of schedule storage using the SharedPreferences android interface. Each day of
+ * the week is one entry holding its setpoint minute of the day. Saves are committed on a
+ * background executor, so they never block the caller and never join the framework pending work
+ * queue that activities and receivers wait on
+ */
+public class PreferenceScheduleStorage implements ScheduleStorage {
+    private static final String KEY_DAY_PREFIX = "day";
+
+    private static final String STORE_NAME = "ScheduleStorage";
+
+    /**
+     * Shared preference database connection
+     */
+    private final SharedPreferences mDatabase;
+
+    /**
+     * Runs the committed saves off the calling thread
+     */
+    private final Executor mWriter;
+
+    /**
+     * Main constructor
+     * @param context android application context
+     * @param writer executor that saves are committed on
+     */
+    public PreferenceScheduleStorage(Context context, Executor writer) {
+        mDatabase = context.getSharedPreferences(STORE_NAME, Context.MODE_PRIVATE);
+        mWriter = writer;
+    }
+
+    /* ----------------------------------------------
+     * ScheduleStorage OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Delete all keys in the preference database
+     */
+    @SuppressWarnings("ApplySharedPref")
+    @VisibleForTesting
+    public void deleteAll() {
+        mDatabase.edit().clear().commit();
+    }
+
+    /**
+     * Load the schedule from the shared preference storage
+     * @return stored schedule. Empty if none is stored
+     */
+    @Override
+    public WeeklySchedule load() {
+        WeeklySchedule schedule = WeeklySchedule.EMPTY;
+        for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+            final int setpoint = mDatabase.getInt(KEY_DAY_PREFIX + day, WeeklySchedule.OFF);
+            if (setpoint >= 0 && setpoint < 24 * 60) {
+                schedule = schedule.with(day, setpoint / 60, setpoint % 60);
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Save the schedule to the shared preference storage. Returns right away and commits on the
+     * background executor
+     * @param schedule new schedule
+     */
+    @Override
+    public void save(final WeeklySchedule schedule) {
+        mWriter.execute(new Runnable() {
+            @SuppressWarnings("ApplySharedPref")
+            @Override
+            public void run() {
+                final SharedPreferences.Editor editor = mDatabase.edit();
+                for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+                    editor.putInt(KEY_DAY_PREFIX + day, schedule.getSetpoint(day));
+                }
+                editor.commit();
+            }
+        });
+    }
+}
@@ -7,6 +7,7 @@ import androidx.annotation.VisibleForTesting;
 
 import com.jordantymburski.driftoff.domain.adapter.Storage;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.PackedAlarmInfo;
 
 /**
  * Implementation of storage using the SharedPreferences android interface
@@ -17,6 +18,7 @@ public class PreferenceStorage implements Storage {
     private static final int DEFAULT_TIME_MINUTE = 30;
 
     private static final String KEY_ALARM = "alarm";
+    private static final String KEY_PACKED = "packed";
     private static final String KEY_TIME_HOUR = "timeHour";
     private static final String KEY_TIME_MINUTE = "timeMinute";
 
@@ -27,12 +29,30 @@ public class PreferenceStorage implements Storage {
      */
     private final SharedPreferences mDatabase;
 
+    /**
+     * TRUE to write saves to disk on the calling thread. FALSE to hand them off to the framework
+     * pending work queue
+     */
+    private final boolean mSynchronous;
+
     /**
      * Main constructor
      * @param context android application context
      */
     public PreferenceStorage(Context context) {
+        this(context, false);
+    }
+
+    /**
+     * Write mode constructor
+     * @param context android application context
+     * @param synchronous TRUE to commit each save on the calling thread, which keeps it out of the
+     *                    framework pending work that activities and receivers wait on. Only use
+     *                    when saves are already made off the main thread
+     */
+    public PreferenceStorage(Context context, boolean synchronous) {
         mDatabase = context.getSharedPreferences(STORE_NAME, Context.MODE_PRIVATE);
+        mSynchronous = synchronous;
     }
 
     /* ----------------------------------------------
@@ -49,27 +69,54 @@ public class PreferenceStorage implements Storage {
     }
 
     /**
-     * Load all data from the shared preference storage
+     * Block until all previous saves are written to disk. An empty commit is queued behind any
+     * pending apply and only returns once they are written
+     */
+    @SuppressWarnings("ApplySharedPref")
+    @Override
+    public void flush() {
+        mDatabase.edit().commit();
+    }
+
+    /**
+     * Load all data from the shared preference storage. Reads the single packed entry, or the
+     * separate entries written by older versions
      * @return stored alarm info
      */
     @Override
     public AlarmInfo load() {
-        return new AlarmInfo(
+        if (mDatabase.contains(KEY_PACKED)) {
+            return PackedAlarmInfo.unpack(mDatabase.getLong(KEY_PACKED, 0L));
+        }
+        return AlarmInfo.of(
                 mDatabase.getLong(KEY_ALARM, DEFAULT_ALARM),
                 mDatabase.getInt(KEY_TIME_HOUR, DEFAULT_TIME_HOUR),
                 mDatabase.getInt(KEY_TIME_MINUTE, DEFAULT_TIME_MINUTE));
     }
 
     /**
-     * Save all changes to the shared preference storage
+     * Save all changes to the shared preference storage, as one packed entry when in range
      * @param info new alarm info
      */
+    @SuppressWarnings("ApplySharedPref")
     @Override
     public void save(AlarmInfo info) {
-        mDatabase.edit()
-                .putLong(KEY_ALARM, info.alarm)
-                .putInt(KEY_TIME_HOUR, info.timeHour)
-                .putInt(KEY_TIME_MINUTE, info.timeMinute)
-                .apply();
+        final SharedPreferences.Editor editor = mDatabase.edit();
+        if (PackedAlarmInfo.canPack(info)) {
+            editor.putLong(KEY_PACKED, PackedAlarmInfo.pack(info, 0))
+                    .remove(KEY_ALARM)
+                    .remove(KEY_TIME_HOUR)
+                    .remove(KEY_TIME_MINUTE);
+        } else {
+            editor.remove(KEY_PACKED)
+                    .putLong(KEY_ALARM, info.alarm)
+                    .putInt(KEY_TIME_HOUR, info.timeHour)
+                    .putInt(KEY_TIME_MINUTE, info.timeMinute);
+        }
+        if (mSynchronous) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
     }
 }
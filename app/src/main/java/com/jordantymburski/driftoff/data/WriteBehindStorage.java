@@ -0,0 +1,243 @@
+package com.jordantymburski.driftoff.data;
+
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Storage decorator that buffers saves and writes them to the wrapped storage on its own
+ * background thread. Saves never block the caller and never join the framework pending work
+ * queue that activities and receivers wait on. Only the latest buffered state is written.
+ * Loads see buffered saves right away. Paths that need durability call flush() or
+ * awaitDurable(). A failed write is logged and reported to durability waiters; the info stays
+ * buffered and is written again on the next save or durability request
+ */
+public class WriteBehindStorage implements Storage {
+    private static final long FLUSH_TIMEOUT_MS = 2000L;
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindStorage.class.getName());
+    private static final String THREAD_NAME = "WriteBehindStorage";
+
+    /**
+     * The wrapped storage. Only saved and flushed from the writer thread
+     */
+    private final Storage mDelegate;
+
+    /**
+     * Number of saves that are written and flushed to the wrapped storage
+     */
+    private long mDurableCount;
+
+    /**
+     * TRUE if a caller is waiting for the buffered saves to be made durable
+     */
+    private boolean mDurableRequested;
+
+    /**
+     * Number of saves at the last failed write. The writer waits for a new save or durability
+     * request before trying again
+     */
+    private long mFailedCount;
+
+    /**
+     * Number of failed writes or flushes of the wrapped storage
+     */
+    private long mFailures;
+
+    /**
+     * The latest saved info. NULL if nothing has been saved yet
+     */
+    private AlarmInfo mLatest;
+
+    /**
+     * Lock guarding all buffer state
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Number of saves made on this storage
+     */
+    private long mSaveCount;
+
+    /**
+     * The writer thread. Created on the first save or flush
+     */
+    private Thread mWriter;
+
+    /**
+     * Number of saves that are written to the wrapped storage
+     */
+    private long mWrittenCount;
+
+    /**
+     * Main constructor
+     * @param delegate the storage to write behind to
+     */
+    public WriteBehindStorage(Storage delegate) {
+        mDelegate = delegate;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Starts the writer if it does not exist yet, otherwise notifies it of new work. Must be
+     * called while holding the lock
+     */
+    private void wakeWriter() {
+        if (mWriter == null) {
+            mWriter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWriter();
+                }
+            }, THREAD_NAME);
+            mWriter.setDaemon(true);
+            mWriter.start();
+        } else {
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Writer loop. Writes the latest buffered info, and flushes the wrapped storage when a caller
+     * is waiting on durability. A failure is recorded without stopping the writer, and the info is
+     * not counted as written
+     */
+    private void runWriter() {
+        while (true) {
+            final AlarmInfo info;
+            final long target;
+            final boolean durable;
+            final boolean write;
+            synchronized (mLock) {
+                while ((mWrittenCount == mSaveCount || mFailedCount == mSaveCount)
+                        && !mDurableRequested) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        // The writer lives for the life of the process. Keep waiting
+                    }
+                }
+                info = mLatest;
+                target = mSaveCount;
+                write = mWrittenCount < target;
+                durable = mDurableRequested;
+                mDurableRequested = false;
+            }
+
+            boolean written = !write;
+            RuntimeException failure = null;
+            try {
+                if (write) {
+                    mDelegate.save(info);
+                    written = true;
+                }
+                if (durable) {
+                    mDelegate.flush();
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            synchronized (mLock) {
+                if (written) {
+                    mWrittenCount = Math.max(mWrittenCount, target);
+                }
+                if (failure != null) {
+                    mFailedCount = target;
+                    mFailures++;
+                } else if (durable) {
+                    mDurableCount = target;
+                }
+                mLock.notifyAll();
+            }
+            if (failure != null) {
+                LOGGER.log(Level.SEVERE, "Write behind failed", failure);
+            }
+        }
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Block until every save made before this call is written and flushed to the wrapped storage
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return TRUE if durable. FALSE if writing failed or the timeout passed first
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public boolean awaitDurable(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (mLock) {
+            final long target = mSaveCount;
+            if (mDurableCount >= target) {
+                return true;
+            }
+
+            final long failures = mFailures;
+            mDurableRequested = true;
+            wakeWriter();
+
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (mDurableCount < target) {
+                if (mFailures != failures) {
+                    return false;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /* ----------------------------------------------
+     * Storage OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Block, for a bounded time, until every previous save is durable in the wrapped storage
+     */
+    @Override
+    public void flush() {
+        try {
+            awaitDurable(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Load the latest info. Buffered saves that are not written yet are returned directly
+     * @return stored alarm info
+     */
+    @Override
+    public AlarmInfo load() {
+        synchronized (mLock) {
+            if (mWrittenCount < mSaveCount) {
+                return mLatest;
+            }
+        }
+        return mDelegate.load();
+    }
+
+    /**
+     * Buffer the info and hand it to the writer thread. Returns right away
+     * @param info new alarm info
+     */
+    @Override
+    public void save(AlarmInfo info) {
+        synchronized (mLock) {
+            mLatest = info;
+            mSaveCount++;
+            wakeWriter();
+        }
+    }
+}
@@ -2,8 +2,19 @@ package com.jordantymburski.driftoff.di;
 
 import android.content.Context;
 
+import com.jordantymburski.driftoff.data.BinaryHistoryStorage;
+import com.jordantymburski.driftoff.data.JournalStorage;
+import com.jordantymburski.driftoff.data.MappedFileStorage;
+import com.jordantymburski.driftoff.data.PreferenceScheduleStorage;
 import com.jordantymburski.driftoff.data.PreferenceStorage;
+import com.jordantymburski.driftoff.data.WriteBehindStorage;
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.adapter.ScheduleStorage;
 import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+
+import java.io.File;
+import java.util.concurrent.Executors;
 
 import javax.inject.Singleton;
 
@@ -12,8 +23,57 @@ import dagger.Provides;
 
 @Module
 class DataModule {
+    private static final String HISTORY_FILE_NAME = "history.bin";
+    private static final String JOURNAL_FILE_NAME = "alarm_info.journal";
+    private static final String MAPPED_FILE_NAME = "alarm_info.bin";
+
+    /**
+     * The storage implementation used by the app
+     */
+    private static final StorageType STORAGE_TYPE = StorageType.MAPPED_FILE;
+
+    /**
+     * TRUE to write saves on a dedicated background thread instead of the calling thread
+     */
+    private static final boolean WRITE_BEHIND = true;
+
+    /**
+     * Available persisted storage implementations
+     */
+    enum StorageType {
+        JOURNAL,
+        MAPPED_FILE,
+        PREFERENCES
+    }
+
+    @Provides @Singleton
+    HistoryStorage provideHistoryStorage(Context context) {
+        return new BinaryHistoryStorage(new File(context.getFilesDir(), HISTORY_FILE_NAME));
+    }
+
+    @Provides @Singleton
+    ScheduleStorage provideScheduleStorage(Context context, BackgroundExecutor background) {
+        return new PreferenceScheduleStorage(context, background);
+    }
+
     @Provides @Singleton
     Storage provideStorage(Context context) {
-        return new PreferenceStorage(context);
+        final Storage storage = createStorage(context);
+        return WRITE_BEHIND ? new WriteBehindStorage(storage) : storage;
+    }
+
+    private Storage createStorage(Context context) {
+        switch (STORAGE_TYPE) {
+            case JOURNAL:
+                return new JournalStorage(new File(context.getFilesDir(), JOURNAL_FILE_NAME),
+                        new PreferenceStorage(context), Executors.newSingleThreadExecutor());
+            case MAPPED_FILE:
+                return new MappedFileStorage(new File(context.getFilesDir(), MAPPED_FILE_NAME),
+                        new PreferenceStorage(context));
+            case PREFERENCES:
+            default:
+                // Behind the write-behind thread, commit directly rather than queue the write
+                return new PreferenceStorage(context, WRITE_BEHIND);
+        }
     }
 }
@@ -7,9 +7,12 @@ import android.media.AudioManager;
 
 import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
 import com.jordantymburski.driftoff.domain.adapter.AudioController;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
 import com.jordantymburski.driftoff.service.AlarmJobScheduler;
 import com.jordantymburski.driftoff.service.AlarmReceiver;
 import com.jordantymburski.driftoff.service.AndroidAudioController;
+import com.jordantymburski.driftoff.service.SystemTimeSource;
+import com.jordantymburski.driftoff.service.TimerMultiplexer;
 
 import javax.inject.Singleton;
 
@@ -20,14 +23,31 @@ import dagger.Provides;
 @Module
 abstract class ServiceModule {
     @Provides @Singleton
-    static AlarmScheduler provideAlarmScheduler(Context context, AlarmManager alarmManager) {
-        final Intent intent = new Intent(context, AlarmReceiver.class);
-        intent.setAction(AlarmReceiver.ACTION_STOP_AUDIO);
-        return new AlarmJobScheduler(context, alarmManager, intent);
+    static AlarmScheduler provideAlarmScheduler(TimerMultiplexer timerMultiplexer) {
+        return timerMultiplexer;
     }
 
     @Provides @Singleton
     static AudioController provideAudioController(AudioManager audioManager) {
         return new AndroidAudioController(audioManager);
     }
+
+    @Provides @Singleton
+    static TimeSource provideTimeSource() {
+        return new SystemTimeSource();
+    }
+
+    @Provides @Singleton
+    static TimerMultiplexer provideTimerMultiplexer(Context context, AlarmManager alarmManager,
+                                                    TimeSource timeSource) {
+        final Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(AlarmReceiver.ACTION_TIMER);
+
+        // Versions before the timers were multiplexed registered the stop audio action directly
+        final Intent legacyIntent = new Intent(context, AlarmReceiver.class);
+        legacyIntent.setAction(AlarmReceiver.ACTION_STOP_AUDIO);
+        return new TimerMultiplexer(context,
+                new AlarmJobScheduler(context, alarmManager, intent),
+                new AlarmJobScheduler(context, alarmManager, legacyIntent), timeSource);
+    }
 }
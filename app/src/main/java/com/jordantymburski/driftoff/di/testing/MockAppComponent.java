@@ -1,6 +1,7 @@
 package com.jordantymburski.driftoff.di.testing;
 
 import com.jordantymburski.driftoff.App;
+import com.jordantymburski.driftoff.di.AppModule;
 import com.jordantymburski.driftoff.di.HomeActivityModule;
 import com.jordantymburski.driftoff.di.ReceiverModule;
 
@@ -13,6 +14,7 @@ import dagger.android.AndroidInjector;
 @Singleton
 @Component(modules = {
         AndroidInjectionModule.class,
+        AppModule.class,
         MockDomainModule.class,
         ReceiverModule.class,
         HomeActivityModule.class
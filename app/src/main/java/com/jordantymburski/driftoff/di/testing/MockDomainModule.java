@@ -1,9 +1,12 @@
 package com.jordantymburski.driftoff.di.testing;
 
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
 import com.jordantymburski.driftoff.domain.usecase.GetInfo;
 import com.jordantymburski.driftoff.domain.usecase.RescheduleAlarm;
 import com.jordantymburski.driftoff.domain.usecase.SetInfo;
 import com.jordantymburski.driftoff.domain.usecase.StopAudio;
+import com.jordantymburski.driftoff.domain.usecase.TransferHistory;
+import com.jordantymburski.driftoff.service.TimerMultiplexer;
 
 import dagger.Module;
 import dagger.Provides;
@@ -17,13 +20,21 @@ public class MockDomainModule {
     private final RescheduleAlarm rescheduleAlarm;
     private final SetInfo setInfo;
     private final StopAudio stopAudio;
+    private final TimeSource timeSource;
+    private final TimerMultiplexer timerMultiplexer;
+    private final TransferHistory transferHistory;
 
     public MockDomainModule(GetInfo getInfo, RescheduleAlarm rescheduleAlarm, SetInfo setInfo,
-                            StopAudio stopAudio) {
+                            StopAudio stopAudio, TimeSource timeSource,
+                            TimerMultiplexer timerMultiplexer,
+                            TransferHistory transferHistory) {
         this.getInfo = getInfo;
         this.rescheduleAlarm = rescheduleAlarm;
         this.setInfo = setInfo;
         this.stopAudio = stopAudio;
+        this.timeSource = timeSource;
+        this.timerMultiplexer = timerMultiplexer;
+        this.transferHistory = transferHistory;
     }
 
     @Provides
@@ -45,4 +56,19 @@ public class MockDomainModule {
     StopAudio provideStopAudio() {
         return stopAudio;
     }
+
+    @Provides
+    TimeSource provideTimeSource() {
+        return timeSource;
+    }
+
+    @Provides
+    TimerMultiplexer provideTimerMultiplexer() {
+        return timerMultiplexer;
+    }
+
+    @Provides
+    TransferHistory provideTransferHistory() {
+        return transferHistory;
+    }
 }
@@ -0,0 +1,16 @@
+package com.jordantymburski.driftoff.domain.adapter;
+
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+
+import java.util.List;
+
+public interface HistoryStorage {
+    boolean appendSessions(List<SleepSession> sessions);
+    void armed(long time, int timeHour, int timeMinute);
+    void scan(Visitor visitor);
+    SleepSession stopped(long time, boolean cancelled);
+
+    interface Visitor {
+        void visit(SleepSession session);
+    }
+}
@@ -0,0 +1,8 @@
+package com.jordantymburski.driftoff.domain.adapter;
+
+import com.jordantymburski.driftoff.domain.model.WeeklySchedule;
+
+public interface ScheduleStorage {
+    WeeklySchedule load();
+    void save(WeeklySchedule schedule);
+}
@@ -3,6 +3,7 @@ package com.jordantymburski.driftoff.domain.adapter;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
 public interface Storage {
+    void flush();
     AlarmInfo load();
     void save(AlarmInfo info);
 }
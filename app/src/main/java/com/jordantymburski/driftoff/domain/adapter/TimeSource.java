@@ -0,0 +1,8 @@
+package com.jordantymburski.driftoff.domain.adapter;
+
+import java.util.TimeZone;
+
+public interface TimeSource {
+    long currentTimeMillis();
+    TimeZone getTimeZone();
+}
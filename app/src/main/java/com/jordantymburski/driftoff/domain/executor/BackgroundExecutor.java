@@ -0,0 +1,53 @@
+package com.jordantymburski.driftoff.domain.executor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Shared worker for slow reads and writes that do not change domain state, such as streaming a
+ * document or decoding an image. Commands run one at a time, in submission order, on a single
+ * thread so they never hold up the domain executor. The queue is not bounded
+ */
+@Singleton
+public class BackgroundExecutor implements Executor {
+    private static final String THREAD_NAME = "BackgroundExecutor";
+
+    /**
+     * The single worker thread and its queue
+     */
+    private final ExecutorService mWorker = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Main constructor
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    public BackgroundExecutor() {
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Queue a command. It will run after all previously queued commands
+     * @param command the command to run
+     */
+    @Override
+    public void execute(Runnable command) {
+        mWorker.execute(command);
+    }
+}
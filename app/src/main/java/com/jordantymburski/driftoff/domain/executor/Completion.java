@@ -0,0 +1,183 @@
+package com.jordantymburski.driftoff.domain.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle that reports when a domain command has finished running, and whether it failed.
+ * Completed once by the side doing the work, and can be awaited or observed from any thread. The
+ * time from creation to completion is kept as the end to end latency of the command
+ */
+public class Completion {
+    /**
+     * Monotonic time, in nanoseconds, when the handle was created
+     */
+    private final long mCreated = System.nanoTime();
+
+    /**
+     * The failure of the work. NULL if it succeeded or is not done
+     */
+    private volatile Throwable mError;
+
+    /**
+     * Released once completed
+     */
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+
+    /**
+     * Nanoseconds from creation to completion. Negative until completed
+     */
+    private volatile long mLatency = -1L;
+
+    /**
+     * Listeners waiting for completion. NULL once completed. Guarded by this
+     */
+    private List<Runnable> mListeners = new ArrayList<>(1);
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Marks the work as finished and runs the listeners on the calling thread. Only the first
+     * call has any effect
+     * @param error the failure. NULL if the work succeeded
+     */
+    private void finish(Throwable error) {
+        final List<Runnable> listeners;
+        synchronized (this) {
+            if (mListeners == null) {
+                return;
+            }
+            // Set before the listeners are released, so a late listener always sees them
+            mError = error;
+            mLatency = System.nanoTime() - mCreated;
+            listeners = mListeners;
+            mListeners = null;
+        }
+        mLatch.countDown();
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /* ----------------------------------------------
+     * STATIC CREATE
+     * ---------------------------------------------- */
+
+    /**
+     * Creates a handle that completes once all of the given handles complete. It fails with the
+     * first failure found, after all have completed
+     * @param completions the handles to wait on
+     * @return the combined handle. Already complete if the list is empty
+     */
+    public static Completion all(final List<Completion> completions) {
+        final Completion all = new Completion();
+        final AtomicInteger remaining = new AtomicInteger(completions.size() + 1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        for (final Completion completion : completions) {
+            completion.whenDone(new Runnable() {
+                @Override
+                public void run() {
+                    if (completion.getError() != null) {
+                        error.compareAndSet(null, completion.getError());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        all.finish(error.get());
+                    }
+                }
+            });
+        }
+        if (remaining.decrementAndGet() == 0) {
+            all.finish(error.get());
+        }
+        return all;
+    }
+
+    /**
+     * Creates a handle for work that has already finished
+     * @return a completed handle
+     */
+    public static Completion done() {
+        final Completion completion = new Completion();
+        completion.complete();
+        return completion;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Blocks until completed or the timeout passes
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return TRUE if completed. FALSE if the timeout passed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return mLatch.await(timeout, unit);
+    }
+
+    /**
+     * Marks the work as succeeded and runs the listeners on the calling thread. Only the first
+     * complete or fail call has any effect
+     */
+    public void complete() {
+        finish(null);
+    }
+
+    /**
+     * Marks the work as failed and runs the listeners on the calling thread. Only the first
+     * complete or fail call has any effect
+     * @param error the failure
+     */
+    public void fail(Throwable error) {
+        finish(error);
+    }
+
+    /**
+     * The failure of the work
+     * @return the failure. NULL if it succeeded or is not done yet
+     */
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * The end to end latency of the work, from when the handle was created until completed
+     * @param unit unit of the result
+     * @return the latency. Negative if not done yet
+     */
+    public long getLatency(TimeUnit unit) {
+        final long latency = mLatency;
+        return latency < 0L ? -1L : unit.convert(latency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Is the work finished, successfully or not?
+     * @return TRUE if completed
+     */
+    public boolean isDone() {
+        return mLatch.getCount() == 0;
+    }
+
+    /**
+     * Runs the listener once completed, on the completing thread. If already completed, it runs
+     * right away on the calling thread
+     * @param listener the listener to run
+     */
+    public void whenDone(Runnable listener) {
+        synchronized (this) {
+            if (mListeners != null) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+}
@@ -0,0 +1,299 @@
+package com.jordantymburski.driftoff.domain.executor;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Single writer execution engine for all domain commands. Commands are run one at a time on a
+ * dedicated worker thread, in submission order within their tier. Commands originating from the
+ * UI are always taken ahead of any queued background work. Delayed commands join the back of
+ * the background tier once they are due. A failing command is logged and the worker carries on
+ * with the next one, so one bad command never takes down the process. The UI and background tiers
+ * are bounded. A command offered to a full tier is refused through the return value or a failed
+ * handle, never by throwing back at the caller, apart from the Executor contract of execute()
+ */
+@Singleton
+public class DomainExecutor implements Executor {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final Logger LOGGER = Logger.getLogger(DomainExecutor.class.getName());
+    private static final String THREAD_NAME = "DomainExecutor";
+
+    /**
+     * Maximum number of commands that can be pending in the UI and background tiers
+     */
+    private final int mCapacity;
+
+    /**
+     * Lock guarding all queues and the worker reference
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Pending delayed commands, ordered by due time. Not bounded, since each use case keeps at
+     * most one delayed check queued at a time
+     */
+    private final PriorityQueue<Delayed> mQueueDelayed = new PriorityQueue<>();
+
+    /**
+     * Sequence counter for delayed commands. Keeps equal due times in submission order
+     */
+    private long mDelayedSequence;
+
+    /**
+     * Pending commands submitted by background sources (receivers, initial loads)
+     */
+    private final ArrayDeque<Runnable> mQueueBackground = new ArrayDeque<>();
+
+    /**
+     * Pending commands submitted by the UI. Always run before any background command
+     */
+    private final ArrayDeque<Runnable> mQueueUi = new ArrayDeque<>();
+
+    /**
+     * The worker thread. Created on the first submitted command
+     */
+    private Thread mWorker;
+
+    /**
+     * Main constructor
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    public DomainExecutor() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Capacity constructor
+     * @param capacity maximum number of pending commands in the UI and background tiers
+     */
+    public DomainExecutor(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Adds the command to the given queue and wakes up the worker
+     * @param queue the tier queue
+     * @param command the command to run
+     * @return TRUE if queued. FALSE if the tier is full and the command was dropped
+     */
+    private boolean enqueue(ArrayDeque<Runnable> queue, Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Command is null");
+        }
+
+        synchronized (mLock) {
+            if (queue.size() >= mCapacity) {
+                return false;
+            }
+            queue.addLast(command);
+            wakeWorker();
+        }
+        return true;
+    }
+
+    /**
+     * Moves all delayed commands that are now due to the back of the background tier. Must be
+     * called while holding the lock
+     * @param now current monotonic time, in nanoseconds
+     */
+    private void promoteDelayed(long now) {
+        Delayed head = mQueueDelayed.peek();
+        while (head != null && head.dueNanos - now <= 0) {
+            mQueueDelayed.poll();
+            mQueueBackground.addLast(head.command);
+            head = mQueueDelayed.peek();
+        }
+    }
+
+    /**
+     * Starts the worker if it does not exist yet, otherwise notifies it of new work. Must be
+     * called while holding the lock
+     */
+    private void wakeWorker() {
+        if (mWorker == null) {
+            mWorker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker();
+                }
+            }, THREAD_NAME);
+            mWorker.setDaemon(true);
+            mWorker.start();
+        } else {
+            mLock.notify();
+        }
+    }
+
+    /**
+     * Blocks until the next command is available, respecting the tier priority
+     * @return the next command
+     * @throws InterruptedException if the worker is interrupted while waiting
+     */
+    private Runnable next() throws InterruptedException {
+        synchronized (mLock) {
+            while (true) {
+                promoteDelayed(System.nanoTime());
+                if (!mQueueUi.isEmpty()) {
+                    return mQueueUi.pollFirst();
+                } else if (!mQueueBackground.isEmpty()) {
+                    return mQueueBackground.pollFirst();
+                }
+
+                final Delayed head = mQueueDelayed.peek();
+                if (head == null) {
+                    mLock.wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(mLock, head.dueNanos - System.nanoTime());
+                }
+            }
+        }
+    }
+
+    /**
+     * Worker loop. Runs each command in turn. A failing command is logged without stopping the
+     * worker
+     */
+    private void runWorker() {
+        while (true) {
+            try {
+                next().run();
+            } catch (InterruptedException e) {
+                // The worker lives for the life of the process. Keep waiting for commands
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Domain command failed", e);
+            }
+        }
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Queue a background command, like offer(), to meet the Executor contract. Use cases call
+     * offer() instead so that a full queue never throws back at their callers
+     * @param command the command to run
+     * @throws RejectedExecutionException if the background queue is full
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (!offer(command)) {
+            throw new RejectedExecutionException("Domain queue is full");
+        }
+    }
+
+    /**
+     * Queue a UI originated command. It will run ahead of any pending background commands and
+     * after all previously queued UI commands
+     * @param command the command to run
+     * @return TRUE if queued. FALSE if the UI queue is full and the command was dropped
+     */
+    public boolean executeUi(Runnable command) {
+        return enqueue(mQueueUi, command);
+    }
+
+    /**
+     * Queue a background command. It will run after all UI commands and after all previously
+     * queued background commands
+     * @param command the command to run
+     * @return TRUE if queued. FALSE if the background queue is full and the command was dropped
+     */
+    public boolean offer(Runnable command) {
+        return enqueue(mQueueBackground, command);
+    }
+
+    /**
+     * Queue a UI originated command, like executeUi(), with a handle that reports when it has run.
+     * A failing command fails the handle and is logged like any other failing command. If the UI
+     * queue is full, the command is dropped and the handle is returned already failed
+     * @param command the command to run
+     * @return completes once the command has run
+     */
+    public Completion submitUi(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Command is null");
+        }
+
+        final Completion completion = new Completion();
+        final boolean queued = executeUi(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    completion.fail(e);
+                    throw e;
+                }
+                completion.complete();
+            }
+        });
+        if (!queued) {
+            LOGGER.log(Level.WARNING, "Domain UI queue is full. Command dropped");
+            completion.fail(new RejectedExecutionException("Domain UI queue is full"));
+        }
+        return completion;
+    }
+
+    /**
+     * Queue a background command to run once the delay has elapsed. When due, it joins the back of
+     * the background tier
+     * @param command the command to run
+     * @param delay time to wait before the command is due
+     * @param unit unit of the delay
+     */
+    public void schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException("Command is null");
+        }
+
+        synchronized (mLock) {
+            mQueueDelayed.add(new Delayed(command,
+                    System.nanoTime() + unit.toNanos(Math.max(0L, delay)), mDelayedSequence++));
+            wakeWorker();
+        }
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL CLASSES
+     * ---------------------------------------------- */
+
+    /**
+     * A command waiting for its due time
+     */
+    private static class Delayed implements Comparable<Delayed> {
+        final Runnable command;
+        final long dueNanos;
+        final long sequence;
+
+        Delayed(Runnable command, long dueNanos, long sequence) {
+            this.command = command;
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            final long diff = dueNanos - other.dueNanos;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
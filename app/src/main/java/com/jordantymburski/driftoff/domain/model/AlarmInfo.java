@@ -1,12 +1,23 @@
 package com.jordantymburski.driftoff.domain.model;
 
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+
 import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Current alarm information including active requested alarms and set visible time points
+ * Current alarm information including active requested alarms and set visible time points.
+ * Prefer the of() factories, which share the instances for an inactive alarm
  */
 public class AlarmInfo {
+    private static final int SETPOINT_COUNT = 24 * 60;
+
+    /**
+     * Shared inactive instances, one per setpoint. Created on first use. Instances are immutable,
+     * so a racing creation is harmless
+     */
+    private static final AlarmInfo[] sInactive = new AlarmInfo[SETPOINT_COUNT];
+
     /**
      * The unix epoch value of the last requested alarm
      */
@@ -71,16 +82,28 @@ public class AlarmInfo {
                 && info.timeMinute == timeMinute;
     }
 
+    /**
+     * Hash of the content, consistent with equals
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        int result = (int) (alarm ^ (alarm >>> 32));
+        result = 31 * result + timeHour;
+        return 31 * result + timeMinute;
+    }
+
     /* ----------------------------------------------
      * PRIVATE FUNCTIONS
      * ---------------------------------------------- */
 
     /**
      * Calculates the milliseconds till the alarm trigger
+     * @param timeSource source of the current time
      * @return in milliseconds
      */
-    private long getMillisTillAlarm() {
-        final long systemTime = System.currentTimeMillis();
+    private long getMillisTillAlarm(TimeSource timeSource) {
+        final long systemTime = timeSource.currentTimeMillis();
         return (alarm > systemTime ? alarm - systemTime : 0L);
     }
 
@@ -91,52 +114,131 @@ public class AlarmInfo {
     /**
      * Calculates the hours till the alarm will trigger. This is rounded up:
      * 1 to 60 minutes = 1 hour, 61 to 120 minutes  = 2 hours, etc
+     * @param timeSource source of the current time
      * @return in hours
      */
-    public long getHoursTillAlarm() {
+    public long getHoursTillAlarm(TimeSource timeSource) {
         return TimeUnit.MILLISECONDS.toHours(
-                getMillisTillAlarm() + TimeUnit.HOURS.toMillis(1) - 1);
+                getMillisTillAlarm(timeSource) + TimeUnit.HOURS.toMillis(1) - 1);
+    }
+
+    /**
+     * Calculates the time until the rounded up time remaining next changes, as displayed: in hours
+     * while getHoursTillAlarm() is over 1, otherwise in minutes. For example, with 2 hours and 10
+     * minutes left it is 10 minutes, when it changes from 3 hours to 2 hours
+     * @param timeSource source of the current time
+     * @return in milliseconds. 0 if the alarm is not in the future
+     */
+    public long getMillisTillRemainingChange(TimeSource timeSource) {
+        final long remaining = getMillisTillAlarm(timeSource);
+        if (remaining <= 0L) {
+            return 0L;
+        }
+        final long unit = remaining > TimeUnit.HOURS.toMillis(1)
+                ? TimeUnit.HOURS.toMillis(1) : TimeUnit.MINUTES.toMillis(1);
+        return (remaining - 1) % unit + 1;
     }
 
     /**
      * Calculates the minutes till the alarm will trigger. This is rounded up:
      * 1 to 60 seconds = 1 minute, 61 to 120 seconds = 2 minutes, etc
+     * @param timeSource source of the current time
      * @return in minutes
      */
-    public long getMinutesTillAlarm() {
+    public long getMinutesTillAlarm(TimeSource timeSource) {
         return TimeUnit.MILLISECONDS.toMinutes(
-                getMillisTillAlarm() + TimeUnit.MINUTES.toMillis(1) - 1);
+                getMillisTillAlarm(timeSource) + TimeUnit.MINUTES.toMillis(1) - 1);
+    }
+
+    /**
+     * Calculates the seconds till the alarm will trigger. This is rounded up:
+     * 1 to 1000 milliseconds = 1 second, 1001 to 2000 milliseconds = 2 seconds, etc
+     * @param timeSource source of the current time
+     * @return in seconds
+     */
+    public long getSecondsTillAlarm(TimeSource timeSource) {
+        return TimeUnit.MILLISECONDS.toSeconds(
+                getMillisTillAlarm(timeSource) + TimeUnit.SECONDS.toMillis(1) - 1);
     }
 
     /**
      * Assembles the time setpoint
+     * @param timeSource source of the current time and time zone
      * @return a calendar object
      */
-    public Calendar getTime() {
-        Calendar c = Calendar.getInstance();
-        c.set(Calendar.HOUR_OF_DAY, timeHour);
-        c.set(Calendar.MINUTE, timeMinute);
-        c.set(Calendar.SECOND, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        if (c.getTimeInMillis() <= System.currentTimeMillis()) {
-            c.add(Calendar.DAY_OF_MONTH, 1);
-        }
+    public Calendar getTime(TimeSource timeSource) {
+        final Calendar c = Calendar.getInstance(timeSource.getTimeZone());
+        c.setTimeInMillis(getTimeInMillis(timeSource));
         return c;
     }
 
     /**
-     * Calculates the unix epoch time that matches the time setpoint
+     * Calculates the unix epoch time that matches the time setpoint. This is the next time, after
+     * now, that the local time of day reaches the setpoint
+     * @param timeSource source of the current time and time zone
      * @return in milliseconds
      */
-    public long getTimeInMillis() {
-        return getTime().getTimeInMillis();
+    public long getTimeInMillis(TimeSource timeSource) {
+        final long systemTime = timeSource.currentTimeMillis();
+        return ZoneTransitions.forZone(timeSource.getTimeZone(), systemTime)
+                .next(systemTime, timeHour, timeMinute);
     }
 
     /**
      * Is the alarm active and waiting to trigger to stop any playing music?
+     * @param timeSource source of the current time
      * @return TRUE if alarm is active. FALSE if off
      */
-    public boolean isActive() {
-        return (alarm > System.currentTimeMillis());
+    public boolean isActive(TimeSource timeSource) {
+        return (alarm > timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Returns the alarm info for the values. Inactive alarms (alarm of 0) share one instance per
+     * setpoint, so resets and time changes do not allocate
+     * @param alarm unix epoch alarm value
+     * @param timeHour 0-23 hour setpoint
+     * @param timeMinute minute setpoint
+     * @return shared or new alarm info
+     */
+    public static AlarmInfo of(long alarm, int timeHour, int timeMinute) {
+        if (alarm != 0L || timeHour < 0 || timeHour >= 24 || timeMinute < 0 || timeMinute >= 60) {
+            return new AlarmInfo(alarm, timeHour, timeMinute);
+        }
+
+        final int setpoint = timeHour * 60 + timeMinute;
+        AlarmInfo info = sInactive[setpoint];
+        if (info == null) {
+            info = new AlarmInfo(0L, timeHour, timeMinute);
+            sInactive[setpoint] = info;
+        }
+        return info;
+    }
+
+    /**
+     * Takes an existing alarm info object and just modifies the alarm value
+     * @param existing current alarm info object
+     * @param alarm unix epoch alarm value
+     * @return the existing object if unchanged, otherwise shared or new alarm info
+     */
+    public static AlarmInfo of(AlarmInfo existing, long alarm) {
+        if (existing.alarm == alarm) {
+            return existing;
+        }
+        return of(alarm, existing.timeHour, existing.timeMinute);
+    }
+
+    /**
+     * Takes an existing alarm info object and just modifies the time values
+     * @param existing current alarm info object
+     * @param timeHour 0-23 hour setpoint
+     * @param timeMinute minute setpoint
+     * @return the existing object if unchanged, otherwise shared or new alarm info
+     */
+    public static AlarmInfo of(AlarmInfo existing, int timeHour, int timeMinute) {
+        if (existing.timeHour == timeHour && existing.timeMinute == timeMinute) {
+            return existing;
+        }
+        return of(existing.alarm, timeHour, timeMinute);
     }
 }
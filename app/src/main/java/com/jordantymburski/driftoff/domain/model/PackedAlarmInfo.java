@@ -0,0 +1,136 @@
+package com.jordantymburski.driftoff.domain.model;
+
+/**
+ * Lossless encoding of an alarm info object, plus a version, in a single long. This lets the
+ * full state be swapped atomically in one compare and set, and be stored or sent as one value.
+ * Layout, from the low bits:
+ * 42 bits of alarm epoch milliseconds (until the year 2109), 11 bits of setpoint minute of the
+ * day and 11 bits of version
+ */
+public class PackedAlarmInfo {
+    private static final int ALARM_BITS = 42;
+    private static final int SETPOINT_BITS = 11;
+    private static final int SETPOINT_SHIFT = ALARM_BITS;
+    private static final int VERSION_SHIFT = ALARM_BITS + SETPOINT_BITS;
+
+    private static final long ALARM_MASK = (1L << ALARM_BITS) - 1;
+    private static final long SETPOINT_MASK = (1L << SETPOINT_BITS) - 1;
+
+    /**
+     * Largest version. Versions wrap back to 1 after it
+     */
+    public static final int MAX_VERSION = (1 << (Long.SIZE - VERSION_SHIFT)) - 1;
+
+    /**
+     * Static only
+     */
+    private PackedAlarmInfo() {
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The alarm value of a packed info
+     * @param packed packed info
+     * @return unix epoch alarm value
+     */
+    public static long alarm(long packed) {
+        return packed & ALARM_MASK;
+    }
+
+    /**
+     * Can the info be packed without loss?
+     * @param info alarm info
+     * @return TRUE if the alarm and setpoint are in range
+     */
+    public static boolean canPack(AlarmInfo info) {
+        return (info.alarm & ~ALARM_MASK) == 0L
+                && info.timeHour >= 0 && info.timeHour < 24
+                && info.timeMinute >= 0 && info.timeMinute < 60;
+    }
+
+    /**
+     * Does the packed value hold the same alarm and setpoint as the info? The version is ignored
+     * @param packed packed info
+     * @param info alarm info
+     * @return TRUE if unpacking would give an equal info
+     */
+    public static boolean matches(long packed, AlarmInfo info) {
+        return info != null
+                && alarm(packed) == info.alarm
+                && setpoint(packed) == info.timeHour * 60 + info.timeMinute;
+    }
+
+    /**
+     * Brings the info into the packable range. Used for infos that the storage still loads but
+     * that can not be packed, such as an out of range legacy alarm. An out of range alarm becomes
+     * inactive and the setpoint is clamped to the day
+     * @param info alarm info
+     * @return the info itself if it can be packed. Otherwise the nearest info that can
+     */
+    public static AlarmInfo normalize(AlarmInfo info) {
+        if (canPack(info)) {
+            return info;
+        }
+        return AlarmInfo.of((info.alarm & ~ALARM_MASK) == 0L ? info.alarm : 0L,
+                Math.min(Math.max(info.timeHour, 0), 23),
+                Math.min(Math.max(info.timeMinute, 0), 59));
+    }
+
+    /**
+     * The version following the given one. Wraps from the maximum back to 1, so versions are
+     * not monotonic and can only be compared for equality. 0 is never used after the first
+     * version, so a snapshot taken before anything was published can never match a later one
+     * @param version current version
+     * @return next version
+     */
+    public static int nextVersion(int version) {
+        return version >= MAX_VERSION ? 1 : version + 1;
+    }
+
+    /**
+     * Packs the info with a version
+     * @param info alarm info. Must be in range, see canPack()
+     * @param version 0 to MAX_VERSION
+     * @return packed info
+     * @throws IllegalArgumentException if the info or version is out of range
+     */
+    public static long pack(AlarmInfo info, int version) {
+        if (!canPack(info) || version < 0 || version > MAX_VERSION) {
+            throw new IllegalArgumentException("Alarm info out of packable range");
+        }
+        return info.alarm
+                | (long) (info.timeHour * 60 + info.timeMinute) << SETPOINT_SHIFT
+                | (long) version << VERSION_SHIFT;
+    }
+
+    /**
+     * The setpoint of a packed info
+     * @param packed packed info
+     * @return minute of the day (0-1439)
+     */
+    public static int setpoint(long packed) {
+        return (int) ((packed >>> SETPOINT_SHIFT) & SETPOINT_MASK);
+    }
+
+    /**
+     * Unpacks the alarm info. Inactive alarms return the shared instance
+     * @param packed packed info
+     * @return alarm info
+     */
+    public static AlarmInfo unpack(long packed) {
+        final int setpoint = setpoint(packed);
+        return AlarmInfo.of(alarm(packed), setpoint / 60, setpoint % 60);
+    }
+
+    /**
+     * The version of a packed info
+     * @param packed packed info
+     * @return 0 to MAX_VERSION
+     */
+    public static int version(long packed) {
+        return (int) (packed >>> VERSION_SHIFT);
+    }
+}
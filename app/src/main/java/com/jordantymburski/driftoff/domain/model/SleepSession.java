@@ -0,0 +1,77 @@
+package com.jordantymburski.driftoff.domain.model;
+
+/**
+ * A single recorded night: when the alarm was armed, what it was set to and how it ended
+ */
+public class SleepSession {
+    /**
+     * The unix epoch time the alarm was armed
+     */
+    public final long armedAt;
+
+    /**
+     * TRUE if the alarm was cancelled before it fired. FALSE if it stopped the music
+     */
+    public final boolean cancelled;
+
+    /**
+     * The unix epoch time the session ended, either by the alarm firing or being cancelled
+     */
+    public final long stoppedAt;
+
+    /**
+     * The time hour setpoint. 24 hour clock (0-23)
+     */
+    public final int timeHour;
+
+    /**
+     * The time minute setpoint
+     */
+    public final int timeMinute;
+
+    /**
+     * Set constructor for all variables
+     * @param armedAt unix epoch time the alarm was armed
+     * @param timeHour 0-23 hour setpoint
+     * @param timeMinute minute setpoint
+     * @param stoppedAt unix epoch time the session ended
+     * @param cancelled TRUE if cancelled before the alarm fired
+     */
+    public SleepSession(long armedAt, int timeHour, int timeMinute, long stoppedAt,
+                        boolean cancelled) {
+        this.armedAt = armedAt;
+        this.timeHour = timeHour;
+        this.timeMinute = timeMinute;
+        this.stoppedAt = stoppedAt;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Compare this current object to another for content equality
+     * @param o the other object to compare
+     * @return TRUE if equal. FALSE if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof SleepSession)) {
+            return false;
+        }
+
+        SleepSession session = (SleepSession) o;
+        return session.armedAt == armedAt
+                && session.timeHour == timeHour
+                && session.timeMinute == timeMinute
+                && session.stoppedAt == stoppedAt
+                && session.cancelled == cancelled;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (armedAt ^ (armedAt >>> 32));
+        result = 31 * result + timeHour;
+        result = 31 * result + timeMinute;
+        result = 31 * result + (int) (stoppedAt ^ (stoppedAt >>> 32));
+        return 31 * result + (cancelled ? 1 : 0);
+    }
+}
@@ -0,0 +1,191 @@
+package com.jordantymburski.driftoff.domain.model;
+
+/**
+ * Aggregate bedtime statistics over a period of sleep sessions. Times are kept as exact sums of
+ * minutes counted from noon, so a bedtime on either side of midnight averages correctly and the
+ * aggregate can be extended one session at a time without any loss of precision.
+ * Instances are immutable
+ */
+public class SleepStats {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int NOON_OFFSET = 12 * 60;
+
+    /**
+     * Statistics with no sessions
+     */
+    public static final SleepStats EMPTY = new SleepStats(0, 0, 0L, 0L, 0L, 0L);
+
+    /**
+     * Number of sessions that were cancelled before the alarm fired
+     */
+    public final int cancelCount;
+
+    /**
+     * Number of sessions
+     */
+    public final int count;
+
+    /**
+     * Sums of the setpoint, in minutes from noon, and of its square
+     */
+    private final long mSetpointSum;
+    private final long mSetpointSquares;
+
+    /**
+     * Sums of the stop time of day, in minutes from noon, and of its square
+     */
+    private final long mStopSum;
+    private final long mStopSquares;
+
+    /**
+     * Set constructor for all variables
+     * @param count number of sessions
+     * @param cancelCount number of cancelled sessions
+     * @param setpointSum sum of setpoints
+     * @param setpointSquares sum of squared setpoints
+     * @param stopSum sum of stop times
+     * @param stopSquares sum of squared stop times
+     */
+    private SleepStats(int count, int cancelCount, long setpointSum, long setpointSquares,
+                       long stopSum, long stopSquares) {
+        this.count = count;
+        this.cancelCount = cancelCount;
+        mSetpointSum = setpointSum;
+        mSetpointSquares = setpointSquares;
+        mStopSum = stopSum;
+        mStopSquares = stopSquares;
+    }
+
+    /**
+     * Compare this current object to another for content equality
+     * @param o the other object to compare
+     * @return TRUE if equal. FALSE if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof SleepStats)) {
+            return false;
+        }
+
+        SleepStats stats = (SleepStats) o;
+        return stats.count == count
+                && stats.cancelCount == cancelCount
+                && stats.mSetpointSum == mSetpointSum
+                && stats.mSetpointSquares == mSetpointSquares
+                && stats.mStopSum == mStopSum
+                && stats.mStopSquares == mStopSquares;
+    }
+
+    /**
+     * Hash of the content, over every field that equals compares
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        int result = count;
+        result = 31 * result + cancelCount;
+        result = 31 * result + (int) (mSetpointSum ^ (mSetpointSum >>> 32));
+        result = 31 * result + (int) (mSetpointSquares ^ (mSetpointSquares >>> 32));
+        result = 31 * result + (int) (mStopSum ^ (mStopSum >>> 32));
+        return 31 * result + (int) (mStopSquares ^ (mStopSquares >>> 32));
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Converts a sum of minutes from noon to an average minute of the day
+     * @param sum sum of minutes from noon
+     * @return average minute of the day (0-1439.x). 0 if there are no sessions
+     */
+    private double average(long sum) {
+        if (count == 0) {
+            return 0.0;
+        }
+        return ((double) sum / count + NOON_OFFSET) % MINUTES_PER_DAY;
+    }
+
+    /**
+     * Converts a minute of the day to minutes from noon
+     * @param minuteOfDay minute of the day (0-1439)
+     * @return minutes from noon (0-1439)
+     */
+    private static int fromNoon(int minuteOfDay) {
+        return (minuteOfDay + MINUTES_PER_DAY - NOON_OFFSET) % MINUTES_PER_DAY;
+    }
+
+    /**
+     * Population variance from a sum and a sum of squares
+     * @param sum sum of values
+     * @param squares sum of squared values
+     * @return variance in minutes squared. 0 if there are no sessions
+     */
+    private double variance(long sum, long squares) {
+        if (count == 0) {
+            return 0.0;
+        }
+        final double mean = (double) sum / count;
+        return Math.max(0.0, (double) squares / count - mean * mean);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Average setpoint
+     * @return minute of the day (0-1439.x)
+     */
+    public double getAverageSetpoint() {
+        return average(mSetpointSum);
+    }
+
+    /**
+     * Average time of day the sessions actually stopped
+     * @return minute of the day (0-1439.x)
+     */
+    public double getAverageStop() {
+        return average(mStopSum);
+    }
+
+    /**
+     * The share of sessions that were cancelled before the alarm fired
+     * @return 0.0 to 1.0. 0 if there are no sessions
+     */
+    public double getCancelRate() {
+        return count == 0 ? 0.0 : (double) cancelCount / count;
+    }
+
+    /**
+     * Variance of the setpoint
+     * @return in minutes squared
+     */
+    public double getSetpointVariance() {
+        return variance(mSetpointSum, mSetpointSquares);
+    }
+
+    /**
+     * Variance of the time of day the sessions actually stopped
+     * @return in minutes squared
+     */
+    public double getStopVariance() {
+        return variance(mStopSum, mStopSquares);
+    }
+
+    /**
+     * Adds one session to the statistics
+     * @param setpointMinute setpoint minute of the day (0-1439)
+     * @param stopMinute local minute of the day the session stopped (0-1439)
+     * @param cancelled TRUE if the session was cancelled before the alarm fired
+     * @return new statistics that include the session
+     */
+    public SleepStats plus(int setpointMinute, int stopMinute, boolean cancelled) {
+        final long setpoint = fromNoon(setpointMinute);
+        final long stop = fromNoon(stopMinute);
+        return new SleepStats(count + 1, cancelCount + (cancelled ? 1 : 0),
+                mSetpointSum + setpoint, mSetpointSquares + setpoint * setpoint,
+                mStopSum + stop, mStopSquares + stop * stop);
+    }
+}
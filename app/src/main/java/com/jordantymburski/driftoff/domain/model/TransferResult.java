@@ -0,0 +1,40 @@
+package com.jordantymburski.driftoff.domain.model;
+
+/**
+ * Outcome of a session history export or import
+ */
+public class TransferResult {
+    /**
+     * TRUE for an export. FALSE for an import
+     */
+    public final boolean export;
+
+    /**
+     * Number of records that were invalid and skipped. Always 0 for an export
+     */
+    public final int rejected;
+
+    /**
+     * Number of sessions written or read
+     */
+    public final int sessions;
+
+    /**
+     * TRUE if the document was transferred to the end. FALSE if it failed part way
+     */
+    public final boolean success;
+
+    /**
+     * Set constructor for all variables
+     * @param export TRUE for an export. FALSE for an import
+     * @param sessions number of sessions transferred
+     * @param rejected number of invalid records skipped
+     * @param success TRUE if the whole document was transferred
+     */
+    public TransferResult(boolean export, int sessions, int rejected, boolean success) {
+        this.export = export;
+        this.sessions = sessions;
+        this.rejected = rejected;
+        this.success = success;
+    }
+}
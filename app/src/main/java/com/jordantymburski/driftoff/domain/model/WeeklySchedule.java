@@ -0,0 +1,233 @@
+package com.jordantymburski.driftoff.domain.model;
+
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recurring alarm setpoints, one optional setpoint per day of the week. A setpoint belongs to
+ * the local day it fires on, so 00:30 on Saturday fires in the first half hour of Saturday.
+ * An index of the next enabled day from each day is built once per schedule, so finding the next
+ * fire time is a fixed number of steps. Instances are immutable
+ */
+public class WeeklySchedule {
+    private static final int DAYS = 7;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // 1 January 1970 was a Thursday, which is day index 4 counting from Sunday
+    private static final int EPOCH_DAY_INDEX = Calendar.THURSDAY - Calendar.SUNDAY;
+
+    /**
+     * Setpoint value of a day without an alarm
+     */
+    public static final int OFF = -1;
+
+    /**
+     * Schedule with no days enabled
+     */
+    public static final WeeklySchedule EMPTY = new WeeklySchedule(
+            new int[] { OFF, OFF, OFF, OFF, OFF, OFF, OFF });
+
+    /**
+     * Number of days from each day, inclusive, to the next enabled day. Indexed from Sunday.
+     * Empty if no days are enabled
+     */
+    private final byte[] mNextDay;
+
+    /**
+     * Minute of the day setpoint of each day, or OFF. Indexed from Sunday
+     */
+    private final int[] mSetpoints;
+
+    /**
+     * Set constructor for all variables
+     * @param setpoints minute of the day or OFF for each day, from Sunday. Owned by the instance
+     */
+    private WeeklySchedule(int[] setpoints) {
+        mSetpoints = setpoints;
+
+        int enabled = -1;
+        for (int day = DAYS - 1; day >= 0 && enabled < 0; day--) {
+            if (setpoints[day] != OFF) {
+                enabled = day;
+            }
+        }
+        if (enabled < 0) {
+            mNextDay = new byte[0];
+        } else {
+            // Walk backwards twice around the week so every day sees the next enabled one
+            mNextDay = new byte[DAYS];
+            int next = enabled + DAYS;
+            for (int day = 2 * DAYS - 1; day >= 0; day--) {
+                if (setpoints[day % DAYS] != OFF) {
+                    next = day;
+                }
+                if (day < DAYS) {
+                    mNextDay[day] = (byte) (next - day);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare this current object to another for content equality
+     * @param o the other object to compare
+     * @return TRUE if equal. FALSE if not
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof WeeklySchedule)) {
+            return false;
+        }
+
+        return Arrays.equals(((WeeklySchedule) o).mSetpoints, mSetpoints);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mSetpoints);
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Converts a calendar day of the week to an index from Sunday
+     * @param dayOfWeek Calendar.SUNDAY to Calendar.SATURDAY
+     * @return 0 to 6
+     * @throws IllegalArgumentException if not a day of the week
+     */
+    private static int index(int dayOfWeek) {
+        if (dayOfWeek < Calendar.SUNDAY || dayOfWeek > Calendar.SATURDAY) {
+            throw new IllegalArgumentException("Not a day of the week: " + dayOfWeek);
+        }
+        return dayOfWeek - Calendar.SUNDAY;
+    }
+
+    /**
+     * Finds the local wall time of the next setpoint after the time
+     * @param table zone transitions that cover the time
+     * @param time unix epoch time in milliseconds
+     * @return local wall time in milliseconds
+     */
+    private long nextLocal(ZoneTransitions table, long time) {
+        final long today = table.startOfLocalDay(time);
+        final long epochDay = today / DAY_MS;
+        final int day = (int) ((epochDay % DAYS + DAYS + EPOCH_DAY_INDEX) % DAYS);
+
+        if (mSetpoints[day] != OFF) {
+            final long local = today + mSetpoints[day] * MINUTE_MS;
+            if (table.toUtc(local) > time) {
+                return local;
+            }
+        }
+        final int ahead = 1 + mNextDay[(day + 1) % DAYS];
+        return today + ahead * DAY_MS + mSetpoints[(day + ahead) % DAYS] * MINUTE_MS;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The setpoint of a day
+     * @param dayOfWeek Calendar.SUNDAY to Calendar.SATURDAY
+     * @return minute of the day (0-1439), or OFF
+     */
+    public int getSetpoint(int dayOfWeek) {
+        return mSetpoints[index(dayOfWeek)];
+    }
+
+    /**
+     * Are no days enabled?
+     * @return TRUE if the schedule never fires
+     */
+    public boolean isEmpty() {
+        return mNextDay.length == 0;
+    }
+
+    /**
+     * Calculates the next fire time after the time
+     * @param table zone transitions that cover the time
+     * @param time unix epoch time in milliseconds
+     * @return unix epoch time in milliseconds. 0 if the schedule is empty
+     */
+    public long next(ZoneTransitions table, long time) {
+        return isEmpty() ? 0L : table.toUtc(nextLocal(table, time));
+    }
+
+    /**
+     * Creates the armed alarm info of the next fire time, with that day's setpoint
+     * @param timeSource source of the current time and time zone
+     * @return alarm info. NULL if the schedule is empty
+     */
+    public AlarmInfo nextAlarm(TimeSource timeSource) {
+        if (isEmpty()) {
+            return null;
+        }
+        final long now = timeSource.currentTimeMillis();
+        final ZoneTransitions table = ZoneTransitions.forZone(timeSource.getTimeZone(), now);
+        final long local = nextLocal(table, now);
+        final int setpoint = (int) ((local - ZoneTransitions.startOfDay(local)) / MINUTE_MS);
+        return AlarmInfo.of(table.toUtc(local), setpoint / 60, setpoint % 60);
+    }
+
+    /**
+     * Calculates the next fire times in order, for a preview of the schedule
+     * @param timeSource source of the current time and time zone
+     * @param count number of fire times
+     * @return unix epoch times in milliseconds. Empty if the schedule is empty
+     */
+    public long[] nextFireTimes(TimeSource timeSource, int count) {
+        if (isEmpty()) {
+            return new long[0];
+        }
+        final TimeZone zone = timeSource.getTimeZone();
+        long time = timeSource.currentTimeMillis();
+        ZoneTransitions table = ZoneTransitions.forZone(zone, time);
+
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (!table.covers(zone, time)) {
+                // Far ahead tables are not cached, to keep the current one
+                table = ZoneTransitions.build(zone, time);
+            }
+            time = next(table, time);
+            times[i] = time;
+        }
+        return times;
+    }
+
+    /**
+     * Takes this schedule and sets the setpoint of one day
+     * @param dayOfWeek Calendar.SUNDAY to Calendar.SATURDAY
+     * @param hour 0-23 hour setpoint
+     * @param minute minute setpoint
+     * @return the new schedule
+     */
+    public WeeklySchedule with(int dayOfWeek, int hour, int minute) {
+        if (hour < 0 || hour >= 24 || minute < 0 || minute >= 60) {
+            throw new IllegalArgumentException("Setpoint out of range");
+        }
+        final int[] setpoints = mSetpoints.clone();
+        setpoints[index(dayOfWeek)] = hour * 60 + minute;
+        return new WeeklySchedule(setpoints);
+    }
+
+    /**
+     * Takes this schedule and turns off one day
+     * @param dayOfWeek Calendar.SUNDAY to Calendar.SATURDAY
+     * @return the new schedule
+     */
+    public WeeklySchedule without(int dayOfWeek) {
+        final int[] setpoints = mSetpoints.clone();
+        setpoints[index(dayOfWeek)] = OFF;
+        return new WeeklySchedule(setpoints);
+    }
+}
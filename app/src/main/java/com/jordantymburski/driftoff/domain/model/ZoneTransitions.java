@@ -0,0 +1,245 @@
+package com.jordantymburski.driftoff.domain.model;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table of the UTC offset changes of one time zone over a window of about a year. It is used to
+ * find the next occurrence of a time of day with plain arithmetic, instead of building and
+ * normalizing a calendar each time. Local times that fall in a gap or an overlap are resolved
+ * the same way as Calendar: with the standard offset, so a time in a gap moves forward by the
+ * length of the gap and a time in an overlap is the later of its two readings.
+ * Instances are immutable. The latest table is cached and rebuilt when the zone changes, the time
+ * leaves the window, or it is invalidated
+ */
+public class ZoneTransitions {
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long SCAN_STEP_MS = TimeUnit.HOURS.toMillis(6);
+    private static final long WINDOW_AFTER_MS = TimeUnit.DAYS.toMillis(366);
+    private static final long WINDOW_BEFORE_MS = TimeUnit.DAYS.toMillis(2);
+
+    // Margins kept inside the window, for the local day lookups on either side of a time. Up to
+    // a week of days ahead is looked up for weekly schedules
+    private static final long MARGIN_AFTER_MS = TimeUnit.DAYS.toMillis(8);
+    private static final long MARGIN_BEFORE_MS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The latest table built. NULL if none or invalidated
+     */
+    private static volatile ZoneTransitions sCached;
+
+    /**
+     * Offset in effect for each segment. Segment i starts at transition i - 1
+     */
+    private final int[] mOffsets;
+
+    /**
+     * UTC instants that the offset changes at, in order
+     */
+    private final long[] mTransitions;
+
+    /**
+     * Local wall times that the offset changes at when resolving a local time. This is the
+     * transition read with the new offset, so a gap keeps the old offset and an overlap takes the
+     * new one
+     */
+    private final long[] mWallTransitions;
+
+    /**
+     * Unix epoch range, in milliseconds, that the table is valid for
+     */
+    private final long mWindowEnd;
+    private final long mWindowStart;
+
+    /**
+     * ID of the time zone the table was built from
+     */
+    private final String mZoneId;
+
+    /**
+     * Set constructor for all variables
+     * @param zoneId time zone ID
+     * @param windowStart start of the valid range
+     * @param windowEnd end of the valid range, exclusive
+     * @param transitions UTC instants of each offset change
+     * @param offsets offset of each segment. One more than the transitions
+     */
+    private ZoneTransitions(String zoneId, long windowStart, long windowEnd, long[] transitions,
+                            int[] offsets) {
+        mZoneId = zoneId;
+        mWindowStart = windowStart;
+        mWindowEnd = windowEnd;
+        mTransitions = transitions;
+        mOffsets = offsets;
+
+        mWallTransitions = new long[transitions.length];
+        for (int i = 0; i < transitions.length; i++) {
+            mWallTransitions[i] = transitions[i] + offsets[i + 1];
+        }
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Finds the exact instant the offset changes between two times
+     * @param zone the time zone
+     * @param before a time with the old offset
+     * @param after a later time with a different offset
+     * @return the first millisecond with the new offset
+     */
+    private static long bisect(TimeZone zone, long before, long after) {
+        final int offsetBefore = zone.getOffset(before);
+        while (after - before > 1L) {
+            final long middle = before + (after - before) / 2;
+            if (zone.getOffset(middle) == offsetBefore) {
+                before = middle;
+            } else {
+                after = middle;
+            }
+        }
+        return after;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Scans the zone for all offset changes over a window around the time. The new table is not
+     * cached, for lookups far from the current time
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @return new table
+     */
+    public static ZoneTransitions build(TimeZone zone, long time) {
+        final long windowStart = time - WINDOW_BEFORE_MS;
+        final long windowEnd = time + WINDOW_AFTER_MS;
+
+        long[] transitions = new long[4];
+        int[] offsets = new int[5];
+        int count = 0;
+        offsets[0] = zone.getOffset(windowStart);
+        for (long t = windowStart; t < windowEnd; ) {
+            final long next = Math.min(t + SCAN_STEP_MS, windowEnd);
+            final int offset = zone.getOffset(next);
+            if (offset != offsets[count]) {
+                if (count == transitions.length) {
+                    final long[] growTransitions = new long[count * 2];
+                    System.arraycopy(transitions, 0, growTransitions, 0, count);
+                    transitions = growTransitions;
+                    final int[] growOffsets = new int[count * 2 + 1];
+                    System.arraycopy(offsets, 0, growOffsets, 0, count + 1);
+                    offsets = growOffsets;
+                }
+                transitions[count] = bisect(zone, t, next);
+                offsets[++count] = offset;
+            }
+            t = next;
+        }
+
+        final long[] finalTransitions = new long[count];
+        System.arraycopy(transitions, 0, finalTransitions, 0, count);
+        final int[] finalOffsets = new int[count + 1];
+        System.arraycopy(offsets, 0, finalOffsets, 0, count + 1);
+        return new ZoneTransitions(zone.getID(), windowStart, windowEnd, finalTransitions,
+                finalOffsets);
+    }
+
+    /**
+     * Returns the table for the zone that covers the time, building a new one if the cached table
+     * does not
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @return transition table
+     */
+    public static ZoneTransitions forZone(TimeZone zone, long time) {
+        final ZoneTransitions cached = sCached;
+        if (cached != null && cached.covers(zone, time)) {
+            return cached;
+        }
+        final ZoneTransitions built = build(zone, time);
+        sCached = built;
+        return built;
+    }
+
+    /**
+     * Drops the cached table. Called when the device time zone, time zone rules or clock change
+     */
+    public static void invalidate() {
+        sCached = null;
+    }
+
+    /**
+     * Rounds a local time down to the start of its day
+     * @param local local wall time in milliseconds
+     * @return start of the local day
+     */
+    public static long startOfDay(long local) {
+        final long day = local / DAY_MS;
+        return (local % DAY_MS < 0 ? day - 1 : day) * DAY_MS;
+    }
+
+    /**
+     * Is the table for the zone and valid for lookups around the time?
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @return TRUE if it can be used. FALSE if a new table is needed
+     */
+    public boolean covers(TimeZone zone, long time) {
+        return time >= mWindowStart + MARGIN_BEFORE_MS
+                && time < mWindowEnd - MARGIN_AFTER_MS
+                && mZoneId.equals(zone.getID());
+    }
+
+    /**
+     * Calculates the next time, after the given one, that the local time of day is the setpoint.
+     * This is today if the setpoint is still ahead, otherwise tomorrow
+     * @param time unix epoch time in milliseconds. Must be covered by the table
+     * @param hour 0-23 hour setpoint
+     * @param minute minute setpoint
+     * @return unix epoch time in milliseconds
+     */
+    public long next(long time, int hour, int minute) {
+        final long setpoint = TimeUnit.MINUTES.toMillis(hour * 60 + minute);
+        final long today = startOfLocalDay(time);
+        final long next = toUtc(today + setpoint);
+        return next > time ? next : toUtc(today + DAY_MS + setpoint);
+    }
+
+    /**
+     * Offset from UTC at a time
+     * @param time unix epoch time in milliseconds. Must be covered by the table
+     * @return offset in milliseconds
+     */
+    public int offsetAt(long time) {
+        int segment = 0;
+        while (segment < mTransitions.length && time >= mTransitions[segment]) {
+            segment++;
+        }
+        return mOffsets[segment];
+    }
+
+    /**
+     * The start of the local day that a time is in
+     * @param time unix epoch time in milliseconds. Must be covered by the table
+     * @return local wall time of midnight, in milliseconds
+     */
+    public long startOfLocalDay(long time) {
+        return startOfDay(time + offsetAt(time));
+    }
+
+    /**
+     * Converts a local wall time to UTC. A time in a gap or an overlap uses the standard offset
+     * @param local local wall time in milliseconds. Must be covered by the table
+     * @return unix epoch time in milliseconds
+     */
+    public long toUtc(long local) {
+        int segment = 0;
+        while (segment < mWallTransitions.length && local >= mWallTransitions[segment]) {
+            segment++;
+        }
+        return local - mOffsets[segment];
+    }
+}
@@ -4,7 +4,9 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.PackedAlarmInfo;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -14,23 +16,47 @@ import javax.inject.Singleton;
  */
 @Singleton
 public class GetInfo {
+    /**
+     * Serialized domain command executor
+     */
+    private final DomainExecutor mExecutor;
+
     /**
      * Observable wrapper that interfaces can monitor for changes
      */
-    private MutableLiveData<AlarmInfo> mInfoObservable;
+    private final MutableLiveData<AlarmInfo> mInfoObservable = new MutableLiveData<>();
+
+    /**
+     * Lock that cold loads are made under. Concurrent cold callers wait on the one load that is
+     * in flight instead of each reading the storage
+     */
+    private final Object mLoadLock = new Object();
+
+    /**
+     * Lock that observable posts are made under. Each post reads the latest snapshot so the last
+     * value delivered is always the newest
+     */
+    private final Object mPostLock = new Object();
 
     /**
      * Connection to the storage layer. Used to fetch current persisted state
      */
     private final Storage mStorage;
 
+    /**
+     * Versioned holder of the latest alarm information
+     */
+    private final InfoStore mStore = new InfoStore();
+
     /**
      * Main constructor
+     * @param executor serialized domain command executor
      * @param storage persisted storage implementation
      */
     @SuppressWarnings("unused")
     @Inject
-    GetInfo(Storage storage) {
+    GetInfo(DomainExecutor executor, Storage storage) {
+        mExecutor = executor;
         mStorage = storage;
     }
 
@@ -39,40 +65,26 @@ public class GetInfo {
      * ---------------------------------------------- */
 
     /**
-     * Create the observable object, if it has not been created already. If its newly created, it
-     * will initiate a fetch immediately to fill it with a legitimate value
-     * @return TRUE if a new observable was created. FALSE if it already exists
+     * Posts the latest snapshot to any active observer
      */
-    private boolean createObservable() {
-        if (mInfoObservable == null) {
-            mInfoObservable = new MutableLiveData<>();
-            return true;
+    private void dispatchLatest() {
+        synchronized (mPostLock) {
+            mInfoObservable.postValue(mStore.info(mStore.get()));
         }
-        return false;
     }
 
     /**
-     * Fetches the persisted information from the storage, on the current thread. It will
-     * post the updates
-     * @return the fetched alarm information object
+     * Loads the persisted information from the storage, asynchronously on the domain executor.
+     * It will post the result. If the executor is full, the load is dropped and the next call
+     * to observable() tries again
      */
-    private AlarmInfo fetch() {
-        final AlarmInfo info = mStorage.load();
-        post(info);
-        return info;
-    }
-
-    /**
-     * Fetches the persisted information from the storage, asynchronously on a thread. It will
-     * post the updates
-     */
-    private void fetchThread() {
-        new Thread(new Runnable() {
+    private void loadAsync() {
+        mExecutor.offer(new Runnable() {
             @Override
             public void run() {
-                fetch();
+                current();
             }
-        }).start();
+        });
     }
 
     /* ----------------------------------------------
@@ -80,25 +92,44 @@ public class GetInfo {
      * ---------------------------------------------- */
 
     /**
-     * Identifies if any value has been fetched last and what it is currently
+     * Identifies the current alarm information. The first call loads it from the storage and any
+     * concurrent callers share that single load. Afterwards, this is a wait-free read
      * @return info object
      */
     AlarmInfo current() {
-        if (createObservable()) {
-            return fetch();
-        } else {
-            return mInfoObservable.getValue();
+        AlarmInfo info = mStore.info(mStore.get());
+        if (info == null) {
+            synchronized (mLoadLock) {
+                final long before = mStore.get();
+                if (mStore.info(before) == null) {
+                    // Only published if nothing newer was posted while the storage was read
+                    if (mStore.compareAndPublish(before, mStorage.load())) {
+                        dispatchLatest();
+                    }
+                }
+                info = mStore.info(mStore.get());
+            }
         }
+        return info;
     }
 
     /**
-     * Posts to any active observer the newly provided info
+     * Posts to any active observer the newly provided info. This always supersedes any load
+     * that is still in flight
      * @param info new info object
      */
     void post(AlarmInfo info) {
-        if (mInfoObservable != null) {
-            mInfoObservable.postValue(info);
-        }
+        mStore.publish(info);
+        dispatchLatest();
+    }
+
+    /**
+     * The version of the latest published alarm information
+     * @return version, which wraps from PackedAlarmInfo.MAX_VERSION to 1. 0 if nothing has been
+     *         published yet
+     */
+    int version() {
+        return PackedAlarmInfo.version(mStore.get());
     }
 
     /* ----------------------------------------------
@@ -106,13 +137,13 @@ public class GetInfo {
      * ---------------------------------------------- */
 
     /**
-     * Creates and returns an active observable object that external modules can watch for changes
-     * to the alarm information
+     * Returns an active observable object that external modules can watch for changes to the
+     * alarm information. If nothing has been loaded yet, a load is started
      * @return life-cycle aware observable
      */
     public LiveData<AlarmInfo> observable() {
-        if (createObservable()) {
-            fetchThread();
+        if (PackedAlarmInfo.version(mStore.get()) == 0) {
+            loadAsync();
         }
         return mInfoObservable;
     }
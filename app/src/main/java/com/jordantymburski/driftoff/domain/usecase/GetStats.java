@@ -0,0 +1,249 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.domain.model.SleepStats;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Use case to get weekly and monthly bedtime statistics. The rollups are built once from the
+ * session history, on the first read, and then kept up to date one session at a time as sessions
+ * complete, so a read is a single lookup and never rescans the history
+ */
+@Singleton
+public class GetStats {
+    /**
+     * Serialized domain command executor. Rollups are only built and updated on it
+     */
+    private final DomainExecutor mExecutor;
+
+    /**
+     * Source of the recorded sessions
+     */
+    private final HistoryStorage mHistory;
+
+    /**
+     * TRUE once the rollups have been built from the history
+     */
+    private volatile boolean mLoaded;
+
+    /**
+     * TRUE once the initial build has been queued. Reads before it completes only queue it once
+     */
+    private final AtomicBoolean mLoadQueued = new AtomicBoolean();
+
+    /**
+     * Statistics per month, keyed by monthKey()
+     */
+    private final Map<Integer, SleepStats> mMonths = new ConcurrentHashMap<>();
+
+    /**
+     * Source of the time zone that periods are split in
+     */
+    private final TimeSource mTimeSource;
+
+    /**
+     * Statistics per week, keyed by weekKey()
+     */
+    private final Map<Integer, SleepStats> mWeeks = new ConcurrentHashMap<>();
+
+    /**
+     * Main constructor
+     * @param executor serialized domain command executor
+     * @param history session history storage
+     * @param timeSource source of the time zone
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    GetStats(DomainExecutor executor, HistoryStorage history, TimeSource timeSource) {
+        mExecutor = executor;
+        mHistory = history;
+        mTimeSource = timeSource;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Adds the session to its week and month
+     * @param rollupWeeks weekly statistics to add to
+     * @param rollupMonths monthly statistics to add to
+     * @param session the completed session
+     * @param calendar scratch calendar
+     */
+    private static void add(Map<Integer, SleepStats> rollupWeeks,
+                            Map<Integer, SleepStats> rollupMonths, SleepSession session,
+                            Calendar calendar) {
+        calendar.setTimeInMillis(session.stoppedAt);
+        final int setpointMinute = session.timeHour * 60 + session.timeMinute;
+        final int stopMinute = calendar.get(Calendar.HOUR_OF_DAY) * 60
+                + calendar.get(Calendar.MINUTE);
+
+        calendar.setTimeInMillis(session.armedAt);
+        final int month = monthKey(calendar);
+        final int week = weekKey(calendar);
+
+        rollupMonths.put(month, get(rollupMonths, month)
+                .plus(setpointMinute, stopMinute, session.cancelled));
+        rollupWeeks.put(week, get(rollupWeeks, week)
+                .plus(setpointMinute, stopMinute, session.cancelled));
+    }
+
+    /**
+     * Looks up the statistics for a period
+     * @param rollup the period statistics
+     * @param key the period key
+     * @return the statistics. Empty if there are no sessions in the period
+     */
+    private static SleepStats get(Map<Integer, SleepStats> rollup, int key) {
+        final SleepStats stats = rollup.get(key);
+        return stats != null ? stats : SleepStats.EMPTY;
+    }
+
+    /**
+     * Builds the rollups from the full history, if not already built. Called on the executor
+     */
+    private void load() {
+        if (!mLoaded) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * Starts the initial build on the executor, if it is not built or queued yet. If the
+     * executor is full, the next read tries again
+     */
+    private void loadAsync() {
+        if (mLoaded || !mLoadQueued.compareAndSet(false, true)) {
+            return;
+        }
+        final boolean queued = mExecutor.offer(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+        if (!queued) {
+            mLoadQueued.set(false);
+        }
+    }
+
+    /**
+     * Builds the rollups from the full history, replacing the current ones. Called on the
+     * executor
+     */
+    private void rebuildAsync() {
+        final Map<Integer, SleepStats> rollupWeeks = new HashMap<>();
+        final Map<Integer, SleepStats> rollupMonths = new HashMap<>();
+        final Calendar calendar = Calendar.getInstance(mTimeSource.getTimeZone());
+        mHistory.scan(new HistoryStorage.Visitor() {
+            @Override
+            public void visit(SleepSession session) {
+                add(rollupWeeks, rollupMonths, session, calendar);
+            }
+        });
+
+        mWeeks.keySet().retainAll(rollupWeeks.keySet());
+        mWeeks.putAll(rollupWeeks);
+        mMonths.keySet().retainAll(rollupMonths.keySet());
+        mMonths.putAll(rollupMonths);
+        mLoaded = true;
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Identifies the month that the calendar time is in
+     * @param calendar calendar set to the time
+     * @return month key
+     */
+    static int monthKey(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH);
+    }
+
+    /**
+     * Adds a newly completed session to the rollups. The session must already be in the history.
+     * Nothing is done if the rollups are not built yet, since the build on the first read scans
+     * the session from the history. Called on the executor
+     * @param session the completed session
+     */
+    void record(SleepSession session) {
+        if (mLoaded) {
+            add(mWeeks, mMonths, session, Calendar.getInstance(mTimeSource.getTimeZone()));
+        }
+    }
+
+    /**
+     * Identifies the week that the calendar time is in, by the date the week starts on. The
+     * calendar is moved to the start of the week
+     * @param calendar calendar set to the time
+     * @return week key
+     */
+    static int weekKey(Calendar calendar) {
+        final int offset = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek()
+                + 7) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -offset);
+        return calendar.get(Calendar.YEAR) * 10000 + calendar.get(Calendar.MONTH) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Statistics for the month that the time is in. If the rollups are not built yet, a build
+     * is started and empty statistics are returned
+     * @param time unix epoch time in the month
+     * @return monthly statistics
+     */
+    public SleepStats getMonth(long time) {
+        loadAsync();
+        final Calendar calendar = Calendar.getInstance(mTimeSource.getTimeZone());
+        calendar.setTimeInMillis(time);
+        return get(mMonths, monthKey(calendar));
+    }
+
+    /**
+     * Statistics for the week that the time is in. If the rollups are not built yet, a build
+     * is started and empty statistics are returned
+     * @param time unix epoch time in the week
+     * @return weekly statistics
+     */
+    public SleepStats getWeek(long time) {
+        loadAsync();
+        final Calendar calendar = Calendar.getInstance(mTimeSource.getTimeZone());
+        calendar.setTimeInMillis(time);
+        return get(mWeeks, weekKey(calendar));
+    }
+
+    /**
+     * Rebuild all rollups from the raw history. Runs after all previously requested changes. If
+     * the executor is full, the rollups are dropped instead and built again on the next read
+     */
+    public void rebuild() {
+        final boolean queued = mExecutor.offer(new Runnable() {
+            @Override
+            public void run() {
+                rebuildAsync();
+            }
+        });
+        if (!queued) {
+            mLoaded = false;
+            mLoadQueued.set(false);
+        }
+    }
+}
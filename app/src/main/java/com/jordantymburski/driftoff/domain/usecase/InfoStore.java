@@ -0,0 +1,87 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.PackedAlarmInfo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned holder of the latest alarm information. The info and its version are packed into
+ * one long, so every publish is a single compare and set and publishing against an outdated
+ * snapshot is rejected so an older load can never replace newer state. Versions wrap after
+ * PackedAlarmInfo.MAX_VERSION publishes, but never back to 0, so a load that started before
+ * anything was published is always rejected. Infos that can not be packed are normalized before
+ * they are published. Reads are wait-free from any thread
+ */
+class InfoStore {
+    /**
+     * The latest info object. Returned by reads while it matches the packed snapshot, so reads
+     * do not need to unpack
+     */
+    private volatile AlarmInfo mInfo;
+
+    /**
+     * The latest packed snapshot. Version 0 until anything is published
+     */
+    private final AtomicLong mPacked = new AtomicLong();
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Publish the info only if the store still holds the expected snapshot
+     * @param expected the packed snapshot the info was derived from
+     * @param loaded the new info object. Normalized if it can not be packed
+     * @return TRUE if published. FALSE if a newer snapshot was published in the meantime
+     */
+    boolean compareAndPublish(long expected, AlarmInfo loaded) {
+        final AlarmInfo info = PackedAlarmInfo.normalize(loaded);
+        final long next = PackedAlarmInfo.pack(info,
+                PackedAlarmInfo.nextVersion(PackedAlarmInfo.version(expected)));
+        if (mPacked.compareAndSet(expected, next)) {
+            mInfo = info;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wait-free read of the latest packed snapshot
+     * @return the packed snapshot. Its version is 0 if nothing has been published yet
+     */
+    long get() {
+        return mPacked.get();
+    }
+
+    /**
+     * The info object of a packed snapshot
+     * @param packed the packed snapshot
+     * @return the info object. NULL if nothing had been published yet
+     */
+    AlarmInfo info(long packed) {
+        if (PackedAlarmInfo.version(packed) == 0) {
+            return null;
+        }
+        final AlarmInfo info = mInfo;
+        return PackedAlarmInfo.matches(packed, info) ? info : PackedAlarmInfo.unpack(packed);
+    }
+
+    /**
+     * Publish the info unconditionally, on top of whichever snapshot is the latest
+     * @param posted the new info object. Normalized if it can not be packed
+     * @return the published packed snapshot
+     */
+    long publish(AlarmInfo posted) {
+        final AlarmInfo info = PackedAlarmInfo.normalize(posted);
+        while (true) {
+            final long current = mPacked.get();
+            final long next = PackedAlarmInfo.pack(info,
+                    PackedAlarmInfo.nextVersion(PackedAlarmInfo.version(current)));
+            if (mPacked.compareAndSet(current, next)) {
+                mInfo = info;
+                return next;
+            }
+        }
+    }
+}
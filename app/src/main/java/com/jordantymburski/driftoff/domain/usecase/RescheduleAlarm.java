@@ -1,36 +1,166 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 /**
- * Use case to reschedule an existing alarm
+ * Use case to reschedule an existing alarm. Requests are coalesced so that a burst of boot and
+ * time change events results in a single reschedule, evaluated once the clock has settled
  */
 @Singleton
 public class RescheduleAlarm {
+    private static final long DEFAULT_QUIET_WINDOW_MS = 2000L;
+
     /**
      * Alarm scheduling port
      */
     private final AlarmScheduler mAlarmScheduler;
 
+    /**
+     * Serialized domain command executor. Used to schedule the delayed reschedule
+     */
+    private final DomainExecutor mExecutor;
+
     /**
      * Get alarm info use case to fetch existing cached value
      */
     private final GetInfo mGetInfo;
 
+    /**
+     * Monotonic time, in nanoseconds, when the pending reschedule can run. Only used on the
+     * executor
+     */
+    private long mPendingDue;
+
+    /**
+     * Number of reschedules that ran
+     */
+    private final AtomicLong mPerformed = new AtomicLong();
+
+    /**
+     * Quiet window that must pass without another request before the reschedule runs
+     */
+    private final long mQuietWindowMs;
+
+    /**
+     * Number of reschedule requests received
+     */
+    private final AtomicLong mReceived = new AtomicLong();
+
+    /**
+     * TRUE if a delayed reschedule check is queued on the executor. Only used on the executor
+     */
+    private boolean mScheduled;
+
+    /**
+     * Completions of the requests waiting on the pending reschedule. Only used on the executor
+     */
+    private final List<Completion> mWaiting = new ArrayList<>();
+
+    /**
+     * Delayed reschedule check. Runs if the window has passed, otherwise waits for the remainder
+     */
+    private final Runnable mRescheduleCheck = new Runnable() {
+        @Override
+        public void run() {
+            final long remaining = mPendingDue - System.nanoTime();
+            if (remaining > 0) {
+                mExecutor.schedule(mRescheduleCheck, remaining, TimeUnit.NANOSECONDS);
+            } else {
+                mScheduled = false;
+                rescheduleAsync();
+            }
+        }
+    };
+
     /**
      * Main constructor
      * @param alarmScheduler manages alarm job scheduling
+     * @param executor serialized domain command executor
      * @param getInfo use case to get the current alarm information
      */
     @SuppressWarnings("unused")
     @Inject
-    RescheduleAlarm(AlarmScheduler alarmScheduler, GetInfo getInfo) {
+    RescheduleAlarm(AlarmScheduler alarmScheduler, DomainExecutor executor, GetInfo getInfo) {
+        this(alarmScheduler, executor, getInfo, DEFAULT_QUIET_WINDOW_MS);
+    }
+
+    /**
+     * Quiet window constructor
+     * @param alarmScheduler manages alarm job scheduling
+     * @param executor serialized domain command executor
+     * @param getInfo use case to get the current alarm information
+     * @param quietWindowMs time without another request before the reschedule runs
+     */
+    RescheduleAlarm(AlarmScheduler alarmScheduler, DomainExecutor executor, GetInfo getInfo,
+                    long quietWindowMs) {
         mAlarmScheduler = alarmScheduler;
+        mExecutor = executor;
         mGetInfo = getInfo;
+        mQuietWindowMs = quietWindowMs;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Record a request and push the reschedule to the end of the quiet window. This is the
+     * internal async logic
+     * @param completion completes once the reschedule has run
+     */
+    private void requestAsync(Completion completion) {
+        mWaiting.add(completion);
+        final long window = TimeUnit.MILLISECONDS.toNanos(mQuietWindowMs);
+        mPendingDue = System.nanoTime() + window;
+        if (!mScheduled) {
+            mScheduled = true;
+            mExecutor.schedule(mRescheduleCheck, window, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Completes every request waiting on the reschedule
+     * @param error the failure of the reschedule. NULL if it succeeded
+     */
+    private void finishWaiting(Throwable error) {
+        for (Completion completion : mWaiting) {
+            if (error != null) {
+                completion.fail(error);
+            } else {
+                completion.complete();
+            }
+        }
+        mWaiting.clear();
+    }
+
+    /**
+     * Reschedule if there is an existing alarm. This is the internal async logic
+     */
+    private void rescheduleAsync() {
+        mPerformed.incrementAndGet();
+        try {
+            AlarmInfo info = mGetInfo.current();
+            if (info.alarm > 0) {
+                mAlarmScheduler.schedule(info.alarm);
+            }
+        } catch (RuntimeException e) {
+            // Rethrown so the executor logs it
+            finishWaiting(e);
+            throw e;
+        }
+        finishWaiting(null);
     }
 
     /* ----------------------------------------------
@@ -39,13 +169,39 @@ public class RescheduleAlarm {
 
     /**
      * Execute a reschedule if there is an existing alarm. If the time has past, it will trigger
-     * the job immediately
+     * the job immediately. Scheduling replaces any registered time, and the scheduler skips the
+     * system call if the same time is already registered. The reschedule runs once no other
+     * request has arrived within the quiet window
+     * @return completes once the reschedule has run. Already failed if the executor is full
      */
-    public void execute() {
-        AlarmInfo info = mGetInfo.current();
-        if (info.alarm > 0) {
-            mAlarmScheduler.cancel();
-            mAlarmScheduler.schedule(info.alarm);
+    public Completion execute() {
+        final Completion completion = new Completion();
+        mReceived.incrementAndGet();
+        final boolean queued = mExecutor.offer(new Runnable() {
+            @Override
+            public void run() {
+                requestAsync(completion);
+            }
+        });
+        if (!queued) {
+            completion.fail(new RejectedExecutionException("Domain queue is full"));
         }
+        return completion;
+    }
+
+    /**
+     * The number of reschedules that ran, to compare against getReceivedRequests()
+     * @return performed reschedule count
+     */
+    public long getPerformedReschedules() {
+        return mPerformed.get();
+    }
+
+    /**
+     * The number of reschedule requests received, such as from boot and time change events
+     * @return received request count
+     */
+    public long getReceivedRequests() {
+        return mReceived.get();
     }
 }
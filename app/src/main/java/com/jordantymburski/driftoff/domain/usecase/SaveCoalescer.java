@@ -0,0 +1,181 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Batches persisted saves so that a burst of changes only writes the final state. A save is
+ * written once no newer change has arrived within the quiet window. All functions, except the
+ * counter, must be called on the domain executor
+ */
+@Singleton
+class SaveCoalescer {
+    private static final long DEFAULT_QUIET_WINDOW_MS = 1000L;
+
+    /**
+     * Number of saves that were replaced by a newer one before reaching storage
+     */
+    private final AtomicLong mAbsorbed = new AtomicLong();
+
+    /**
+     * Shared background worker. Waits for durability off the domain executor
+     */
+    private final BackgroundExecutor mBackground;
+
+    /**
+     * Serialized domain command executor. Used to schedule the delayed write
+     */
+    private final DomainExecutor mExecutor;
+
+    /**
+     * Monotonic time, in nanoseconds, when the pending info can be written
+     */
+    private long mPendingDue;
+
+    /**
+     * The latest info that has not been written to storage yet. NULL if nothing is pending
+     */
+    private AlarmInfo mPendingInfo;
+
+    /**
+     * Quiet window that must pass without a change before the pending info is written
+     */
+    private final long mQuietWindowMs;
+
+    /**
+     * TRUE if a delayed write check is queued on the executor
+     */
+    private boolean mScheduled;
+
+    /**
+     * Connection to the storage layer. Used to persist the final state
+     */
+    private final Storage mStorage;
+
+    /**
+     * Delayed write check. Writes if the window has passed, otherwise waits for the remainder
+     */
+    private final Runnable mWriteCheck = new Runnable() {
+        @Override
+        public void run() {
+            mScheduled = false;
+            if (mPendingInfo != null) {
+                final long remaining = mPendingDue - System.nanoTime();
+                if (remaining > 0) {
+                    scheduleCheck(remaining);
+                } else {
+                    writePending();
+                }
+            }
+        }
+    };
+
+    /**
+     * Main constructor
+     * @param background shared background worker
+     * @param executor serialized domain command executor
+     * @param storage persisted storage implementation
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    SaveCoalescer(BackgroundExecutor background, DomainExecutor executor, Storage storage) {
+        this(background, executor, storage, DEFAULT_QUIET_WINDOW_MS);
+    }
+
+    /**
+     * Quiet window constructor
+     * @param background shared background worker
+     * @param executor serialized domain command executor
+     * @param storage persisted storage implementation
+     * @param quietWindowMs time without a change before the latest state is written
+     */
+    SaveCoalescer(BackgroundExecutor background, DomainExecutor executor, Storage storage,
+                  long quietWindowMs) {
+        mBackground = background;
+        mExecutor = executor;
+        mStorage = storage;
+        mQuietWindowMs = quietWindowMs;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Queue the write check on the executor after the delay
+     * @param delayNanos delay in nanoseconds
+     */
+    private void scheduleCheck(long delayNanos) {
+        mScheduled = true;
+        mExecutor.schedule(mWriteCheck, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Write any pending info to storage
+     */
+    private void writePending() {
+        if (mPendingInfo != null) {
+            final AlarmInfo info = mPendingInfo;
+            mPendingInfo = null;
+            mStorage.save(info);
+        }
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The number of saves that were absorbed by a newer save and never reached storage
+     * @return absorbed count. Safe to call from any thread
+     */
+    long absorbedCount() {
+        return mAbsorbed.get();
+    }
+
+    /**
+     * Write any pending info to storage immediately, then wait for all saves to be durable on
+     * the background worker, so a slow sync never holds up the domain executor
+     * @param durable completed once all saves are durable. Failed if the sync failed
+     */
+    void flush(final Completion durable) {
+        writePending();
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mStorage.flush();
+                } catch (RuntimeException e) {
+                    durable.fail(e);
+                    return;
+                }
+                durable.complete();
+            }
+        });
+    }
+
+    /**
+     * Request a save. The info is written once the quiet window passes without another save
+     * @param info the new alarm info object
+     */
+    void save(AlarmInfo info) {
+        if (mPendingInfo != null) {
+            mAbsorbed.incrementAndGet();
+        }
+        mPendingInfo = info;
+        mPendingDue = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mQuietWindowMs);
+
+        if (!mScheduled) {
+            scheduleCheck(TimeUnit.MILLISECONDS.toNanos(mQuietWindowMs));
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
-import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -17,28 +21,58 @@ public class SetInfo {
      */
     private final AlarmScheduler mAlarmScheduler;
 
+    /**
+     * Serialized domain command executor
+     */
+    private final DomainExecutor mExecutor;
+
     /**
      * Get alarm info use case to fetch existing cached value
      */
     private final GetInfo mGetInfo;
 
     /**
-     * Connection to the storage layer. Used to fetch current persisted state
+     * Get stats use case. Kept up to date as each session completes
+     */
+    private final GetStats mGetStats;
+
+    /**
+     * Sleep session history port
+     */
+    private final HistoryStorage mHistory;
+
+    /**
+     * Batches saves to the storage layer so only the final state of a burst is persisted
+     */
+    private final SaveCoalescer mSaveCoalescer;
+
+    /**
+     * Source of the current time
      */
-    private final Storage mStorage;
+    private final TimeSource mTimeSource;
 
     /**
      * Main constructor
      * @param alarmScheduler manages alarm job scheduling
+     * @param executor serialized domain command executor
      * @param getInfo use case to get the current alarm information
-     * @param storage persisted storage implementation
+     * @param getStats use case to get the bedtime statistics
+     * @param history records each sleep session
+     * @param saveCoalescer batches saves to the persisted storage
+     * @param timeSource source of the current time
      */
     @SuppressWarnings("unused")
     @Inject
-    SetInfo(AlarmScheduler alarmScheduler, GetInfo getInfo, Storage storage) {
+    SetInfo(AlarmScheduler alarmScheduler, DomainExecutor executor, GetInfo getInfo,
+            GetStats getStats, HistoryStorage history, SaveCoalescer saveCoalescer,
+            TimeSource timeSource) {
         mAlarmScheduler = alarmScheduler;
+        mExecutor = executor;
         mGetInfo = getInfo;
-        mStorage = storage;
+        mGetStats = getStats;
+        mHistory = history;
+        mSaveCoalescer = saveCoalescer;
+        mTimeSource = timeSource;
     }
 
     /* ----------------------------------------------
@@ -51,7 +85,17 @@ public class SetInfo {
      */
     private void resetAlarmAsync() {
         mAlarmScheduler.cancel();
-        update(new AlarmInfo(mGetInfo.current(), 0L));
+
+        final AlarmInfo currentInfo = mGetInfo.current();
+        if (currentInfo.alarm > 0L) {
+            final long now = mTimeSource.currentTimeMillis();
+            final SleepSession session = mHistory.stopped(now, currentInfo.alarm > now);
+            if (session != null) {
+                mGetStats.record(session);
+            }
+        }
+
+        update(AlarmInfo.of(currentInfo, 0L));
     }
 
     /**
@@ -59,11 +103,8 @@ public class SetInfo {
      */
     private void setAlarmAsync() {
         final AlarmInfo currentInfo = mGetInfo.current();
-
-        final long alarmTime = currentInfo.getTimeInMillis();
-        mAlarmScheduler.schedule(alarmTime);
-
-        update(new AlarmInfo(currentInfo, alarmTime));
+        armAsync(currentInfo.getTimeInMillis(mTimeSource),
+                currentInfo.timeHour, currentInfo.timeMinute);
     }
 
     /**
@@ -72,59 +113,114 @@ public class SetInfo {
      * @param minute minute setpoint
      */
     private void setTimeAsync(final int hour, final int minute) {
-        update(new AlarmInfo(mGetInfo.current(), hour, minute));
+        update(AlarmInfo.of(mGetInfo.current(), hour, minute));
     }
 
     /**
-     * Update the alarm object in the persisted storage and for any active observers
+     * Update the alarm object for any active observers immediately and in the persisted storage
+     * once the burst of changes settles
      * @param info the new alarm info object
      */
     private void update(AlarmInfo info) {
         if (!info.equals(mGetInfo.current())) {
             mGetInfo.post(info);
-            mStorage.save(info);
+            mSaveCoalescer.save(info);
         }
     }
 
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Arm the alarm, scheduling it and recording it in the history with the setpoint it was armed
+     * on. The user's time setpoint is kept, so a scheduled day with its own setpoint does not
+     * replace it. Called on the executor
+     * @param alarm epoch unix time when the alarm fires
+     * @param timeHour 0-23 hour setpoint the alarm was armed on
+     * @param timeMinute minute setpoint the alarm was armed on
+     */
+    void armAsync(long alarm, int timeHour, int timeMinute) {
+        mAlarmScheduler.schedule(alarm);
+        mHistory.armed(mTimeSource.currentTimeMillis(), timeHour, timeMinute);
+        update(AlarmInfo.of(mGetInfo.current(), alarm));
+    }
+
     /* ----------------------------------------------
      * PUBLIC FUNCTIONS
      * ---------------------------------------------- */
 
+    /**
+     * Write any pending changes to the persisted storage without waiting for the quiet window,
+     * and make them durable. Runs after all previously requested changes. The wait for
+     * durability happens off the executor
+     * @return completes once the changes are durable
+     */
+    public Completion flush() {
+        final Completion durable = new Completion();
+        final Completion written = mExecutor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+                mSaveCoalescer.flush(durable);
+            }
+        });
+        written.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                if (written.getError() != null) {
+                    durable.fail(written.getError());
+                }
+            }
+        });
+        return durable;
+    }
+
+    /**
+     * The number of saves absorbed by a newer change before reaching the persisted storage
+     * @return absorbed write count
+     */
+    public long getAbsorbedWrites() {
+        return mSaveCoalescer.absorbedCount();
+    }
+
     /**
      * Reset the alarm (unset). Called when the alarm either goes off or is cancelled
+     * @return completes once the alarm is reset. Can be ignored to fire and forget
      */
-    public void resetAlarm() {
-        new Thread(new Runnable() {
+    public Completion resetAlarm() {
+        return mExecutor.submitUi(new Runnable() {
             @Override
             public void run() {
                 resetAlarmAsync();
             }
-        }).start();
+        });
     }
 
     /**
      * Set the alarm to the current time setpoint value
+     * @return completes once the alarm is set. Can be ignored to fire and forget
      */
-    public void setAlarm() {
-        new Thread(new Runnable() {
+    public Completion setAlarm() {
+        return mExecutor.submitUi(new Runnable() {
             @Override
             public void run() {
                 setAlarmAsync();
             }
-        }).start();
+        });
     }
 
     /**
      * Set the time setpoint
      * @param hour 0-23 hour setpoint
      * @param minute minute setpoint
+     * @return completes once the setpoint is set. Can be ignored to fire and forget
      */
-    public void setTime(final int hour, final int minute) {
-        new Thread(new Runnable() {
+    public Completion setTime(final int hour, final int minute) {
+        return mExecutor.submitUi(new Runnable() {
             @Override
             public void run() {
                 setTimeAsync(hour, minute);
             }
-        }).start();
+        });
     }
 }
@@ -0,0 +1,144 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import com.jordantymburski.driftoff.domain.adapter.ScheduleStorage;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.WeeklySchedule;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Use case to set the weekly alarm schedule and keep the alarm armed on it. Whenever no alarm is
+ * active, such as after the alarm fires, the next scheduled time is armed
+ */
+@Singleton
+public class SetSchedule {
+    /**
+     * Serialized domain command executor
+     */
+    private final DomainExecutor mExecutor;
+
+    /**
+     * Get alarm info use case to check for an active alarm
+     */
+    private final GetInfo mGetInfo;
+
+    /**
+     * The current schedule. NULL until loaded. Only used on the executor
+     */
+    private WeeklySchedule mSchedule;
+
+    /**
+     * Set alarm info use case to arm the scheduled alarms
+     */
+    private final SetInfo mSetInfo;
+
+    /**
+     * Connection to the schedule storage layer
+     */
+    private final ScheduleStorage mStorage;
+
+    /**
+     * Source of the current time and time zone
+     */
+    private final TimeSource mTimeSource;
+
+    /**
+     * Main constructor
+     * @param executor serialized domain command executor
+     * @param getInfo use case to get the current alarm information
+     * @param setInfo use case to set and update the persisted alarm information
+     * @param storage persisted schedule storage
+     * @param timeSource source of the current time
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    SetSchedule(DomainExecutor executor, GetInfo getInfo, SetInfo setInfo,
+                ScheduleStorage storage, TimeSource timeSource) {
+        mExecutor = executor;
+        mGetInfo = getInfo;
+        mSetInfo = setInfo;
+        mStorage = storage;
+        mTimeSource = timeSource;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Arm the next scheduled alarm if no alarm is active. The history records the scheduled
+     * day's setpoint, while the user's time setpoint is left as is. This is the internal async
+     * logic
+     */
+    private void rearmAsync() {
+        final WeeklySchedule schedule = current();
+        if (!schedule.isEmpty() && !mGetInfo.current().isActive(mTimeSource)) {
+            final AlarmInfo next = schedule.nextAlarm(mTimeSource);
+            mSetInfo.armAsync(next.alarm, next.timeHour, next.timeMinute);
+        }
+    }
+
+    /**
+     * Replace and persist the schedule. This is the internal async logic
+     * @param schedule the new schedule
+     */
+    private void setAsync(WeeklySchedule schedule) {
+        if (!schedule.equals(current())) {
+            mSchedule = schedule;
+            mStorage.save(schedule);
+        }
+        rearmAsync();
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Identifies the current schedule. The first call loads it from the storage. Called on the
+     * executor
+     * @return the schedule
+     */
+    WeeklySchedule current() {
+        if (mSchedule == null) {
+            mSchedule = mStorage.load();
+        }
+        return mSchedule;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Arm the next scheduled alarm, if the schedule has any days and no alarm is active. Runs
+     * after all previously requested changes, so it follows a reset of a fired alarm
+     * @return completes once the check has run
+     */
+    public Completion rearm() {
+        return mExecutor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+                rearmAsync();
+            }
+        });
+    }
+
+    /**
+     * Set the weekly schedule. If no alarm is active, the next scheduled one is armed
+     * @param schedule the new schedule
+     * @return completes once the schedule is set
+     */
+    public Completion set(final WeeklySchedule schedule) {
+        return mExecutor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+                setAsync(schedule);
+            }
+        });
+    }
+}
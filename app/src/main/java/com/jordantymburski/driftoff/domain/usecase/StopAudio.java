@@ -1,6 +1,9 @@
 package com.jordantymburski.driftoff.domain.usecase;
 
 import com.jordantymburski.driftoff.domain.adapter.AudioController;
+import com.jordantymburski.driftoff.domain.executor.Completion;
+
+import java.util.Arrays;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -20,16 +23,23 @@ public class StopAudio {
      */
     private final SetInfo mSetInfo;
 
+    /**
+     * Set schedule use case to arm the next scheduled alarm
+     */
+    private final SetSchedule mSetSchedule;
+
     /**
      * Main constructor
      * @param audioController the audio controller
      * @param setInfo the set info use case
+     * @param setSchedule the set schedule use case
      */
     @SuppressWarnings("unused")
     @Inject
-    StopAudio(AudioController audioController, SetInfo setInfo) {
+    StopAudio(AudioController audioController, SetInfo setInfo, SetSchedule setSchedule) {
         mAudioController = audioController;
         mSetInfo = setInfo;
+        mSetSchedule = setSchedule;
     }
 
     /* ----------------------------------------------
@@ -38,10 +48,13 @@ public class StopAudio {
 
     /**
      * Execute the stop audio use case. It will request a stop on the audio controller and update
-     * any persisted values
+     * any persisted values, then re-arm the next alarm of the weekly schedule if there is one.
+     * The changes are flushed right away since the process may not live long
+     * @return completes once the changes are durable. Fails if any of the steps failed
      */
-    public void execute() {
+    public Completion execute() {
         mAudioController.requestFocus();
-        mSetInfo.resetAlarm();
+        return Completion.all(Arrays.asList(
+                mSetInfo.resetAlarm(), mSetSchedule.rearm(), mSetInfo.flush()));
     }
 }
@@ -0,0 +1,560 @@
+package com.jordantymburski.driftoff.domain.usecase;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.domain.model.TransferResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Use case to export the session history to a document as CSV, and import it back. Both
+ * directions stream through a fixed size buffer. Exports run on the background executor, reading
+ * the history as it was when the export started, so they never hold up domain commands.
+ * Imported records are validated one at a time and invalid ones are skipped, as are sessions
+ * with the same start and stop time as one already in the history. Valid ones are added in
+ * chunks on the domain executor, which are refused while a session is open
+ */
+@Singleton
+public class TransferHistory {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] HEADER =
+            "armed_at,time_hour,time_minute,stopped_at,cancelled".getBytes();
+    private static final int FIELD_COUNT = 5;
+    private static final int IMPORT_CHUNK_SIZE = 256;
+    private static final int MAX_DIGITS = 18;
+    private static final int MAX_LINE_SIZE = 64;
+
+    // Field order within a record
+    private static final int FIELD_ARMED_AT = 0;
+    private static final int FIELD_TIME_HOUR = 1;
+    private static final int FIELD_TIME_MINUTE = 2;
+    private static final int FIELD_STOPPED_AT = 3;
+    private static final int FIELD_CANCELLED = 4;
+
+    /**
+     * Worker for exports and for reading the history before an import
+     */
+    private final BackgroundExecutor mBackground;
+
+    /**
+     * Export buffer. Only used on the background executor
+     */
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Decimal digit scratch space. Only used on the background executor
+     */
+    private final byte[] mDigits = new byte[20];
+
+    /**
+     * Serialized domain command executor
+     */
+    private final DomainExecutor mExecutor;
+
+    /**
+     * Get stats use case. Rebuilt after an import
+     */
+    private final GetStats mGetStats;
+
+    /**
+     * Session history that is exported from and imported into
+     */
+    private final HistoryStorage mHistory;
+
+    /**
+     * Observable of the result of the latest transfer
+     */
+    private final MutableLiveData<TransferResult> mResultObservable = new MutableLiveData<>();
+
+    /**
+     * Main constructor
+     * @param background worker for slow reads and writes
+     * @param executor serialized domain command executor
+     * @param getStats use case to get the bedtime statistics
+     * @param history session history storage
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    TransferHistory(BackgroundExecutor background, DomainExecutor executor, GetStats getStats,
+                    HistoryStorage history) {
+        mBackground = background;
+        mExecutor = executor;
+        mGetStats = getStats;
+        mHistory = history;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Closes a channel, ignoring any failure
+     * @param channel the channel to close
+     */
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The transfer result is already known
+        }
+    }
+
+    /**
+     * Closes the document and posts the result of the transfer
+     * @param channel the document channel
+     * @param result the transfer result
+     */
+    private void complete(Channel channel, TransferResult result) {
+        closeQuietly(channel);
+        mResultObservable.postValue(result);
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and clears it
+     * @param channel output channel
+     * @throws IOException if the write fails
+     */
+    private void drain(WritableByteChannel channel) throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            channel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Encodes a non-negative number as decimal digits into the buffer
+     * @param value the number
+     */
+    private void putDecimal(long value) {
+        int index = mDigits.length;
+        do {
+            mDigits[--index] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        mBuffer.put(mDigits, index, mDigits.length - index);
+    }
+
+    /**
+     * Encodes one session as a CSV line into the buffer
+     * @param session the session
+     */
+    private void putSession(SleepSession session) {
+        putDecimal(Math.max(0L, session.armedAt));
+        mBuffer.put((byte) ',');
+        putDecimal(session.timeHour);
+        mBuffer.put((byte) ',');
+        putDecimal(session.timeMinute);
+        mBuffer.put((byte) ',');
+        putDecimal(Math.max(0L, session.stoppedAt));
+        mBuffer.put((byte) ',');
+        putDecimal(session.cancelled ? 1 : 0);
+        mBuffer.put((byte) '\n');
+    }
+
+    /**
+     * Collects the start and stop times of every session in the history, so an import can skip
+     * the ones it already has
+     * @return the session keys
+     */
+    private Set<SessionKey> scanKeys() {
+        final Set<SessionKey> keys = new HashSet<>();
+        mHistory.scan(new HistoryStorage.Visitor() {
+            @Override
+            public void visit(SleepSession session) {
+                keys.add(new SessionKey(session.armedAt, session.stoppedAt));
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Starts a transfer on the background executor. If it is refused, the document is closed and
+     * a failed result is posted
+     * @param transfer the transfer
+     * @param channel the document channel
+     * @param export TRUE for an export. FALSE for an import
+     */
+    private void start(Runnable transfer, Channel channel, boolean export) {
+        try {
+            mBackground.execute(transfer);
+        } catch (RejectedExecutionException e) {
+            complete(channel, new TransferResult(export, 0, 0, false));
+        }
+    }
+
+    /**
+     * Checks that the parsed fields of a record form a valid session
+     * @param fields parsed field values
+     * @return TRUE if valid
+     */
+    private static boolean isValid(long[] fields) {
+        return fields[FIELD_ARMED_AT] > 0L
+                && fields[FIELD_TIME_HOUR] < 24
+                && fields[FIELD_TIME_MINUTE] < 60
+                && fields[FIELD_STOPPED_AT] >= fields[FIELD_ARMED_AT]
+                && fields[FIELD_CANCELLED] <= 1;
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Writes the full history to the channel. This is the internal async logic
+     * @param channel output channel. Not closed
+     * @return the transfer result
+     */
+    TransferResult exportAsync(final WritableByteChannel channel) {
+        final int[] count = new int[1];
+        final IOException[] failure = new IOException[1];
+
+        mBuffer.clear();
+        mBuffer.put(HEADER);
+        mBuffer.put((byte) '\n');
+        mHistory.scan(new HistoryStorage.Visitor() {
+            @Override
+            public void visit(SleepSession session) {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    if (mBuffer.remaining() < MAX_LINE_SIZE) {
+                        drain(channel);
+                    }
+                    putSession(session);
+                    count[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+
+        if (failure[0] == null) {
+            try {
+                drain(channel);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        }
+        mBuffer.clear();
+        return new TransferResult(true, count[0], 0, failure[0] == null);
+    }
+
+    /**
+     * Reads sessions from the channel and adds every valid one that is not in the history yet,
+     * all in one go. This is the internal async logic
+     * @param channel input channel. Not closed
+     * @return the transfer result
+     */
+    TransferResult importAsync(ReadableByteChannel channel) {
+        final Import task = new Import(channel, scanKeys());
+        TransferResult result;
+        do {
+            result = task.step();
+        } while (result == null);
+        return result;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Export the full session history as CSV. The result is posted to the observable
+     * @param channel output channel of the document. Closed once the export is done
+     */
+    public void exportTo(final WritableByteChannel channel) {
+        start(new Runnable() {
+            @Override
+            public void run() {
+                complete(channel, exportAsync(channel));
+            }
+        }, channel, true);
+    }
+
+    /**
+     * Import sessions from a CSV export into the history. Sessions already in the history are
+     * skipped, so importing the same document again adds nothing. The result is posted to the
+     * observable
+     * @param channel input channel of the document. Closed once the import is done
+     */
+    public void importFrom(final ReadableByteChannel channel) {
+        start(new Runnable() {
+            @Override
+            public void run() {
+                final Import task = new Import(channel, scanKeys());
+                if (!mExecutor.offer(task)) {
+                    // The queue is full, so start here
+                    task.run();
+                }
+            }
+        }, channel, false);
+    }
+
+    /**
+     * Returns an observable of the result of the latest export or import
+     * @return life-cycle aware observable
+     */
+    public LiveData<TransferResult> observable() {
+        return mResultObservable;
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL CLASSES
+     * ---------------------------------------------- */
+
+    /**
+     * One import in progress. Parses through its own buffer and adds the valid sessions to the
+     * history a chunk at a time, queueing itself again between chunks so that other commands are
+     * not held up behind a large document
+     */
+    private class Import implements Runnable {
+        /**
+         * Input channel of the document
+         */
+        private final ReadableByteChannel mChannel;
+
+        /**
+         * Valid sessions parsed since the last chunk was added
+         */
+        private final List<SleepSession> mChunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+
+        /**
+         * Number of digits parsed in the current field
+         */
+        private int mDigitCount;
+
+        /**
+         * Index of the current field in the line
+         */
+        private int mField;
+
+        /**
+         * Parsed field values of the current line
+         */
+        private final long[] mFields = new long[FIELD_COUNT];
+
+        /**
+         * Number of header bytes matched so far
+         */
+        private int mHeaderIndex;
+
+        /**
+         * Number of sessions added to the history
+         */
+        private int mImported;
+
+        /**
+         * TRUE until the header line has been parsed
+         */
+        private boolean mInHeader = true;
+
+        /**
+         * Start and stop times of the sessions in the history and those parsed so far
+         */
+        private final Set<SessionKey> mKeys;
+
+        /**
+         * Read buffer. Unread bytes are between the position and the limit
+         */
+        private final ByteBuffer mInput = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * FALSE once the current line has anything that is not part of a valid record
+         */
+        private boolean mLineValid = true;
+
+        /**
+         * Number of records skipped as invalid
+         */
+        private int mRejected;
+
+        /**
+         * Main constructor
+         * @param channel input channel of the document. Closed once the import is done
+         * @param keys start and stop times of the sessions already in the history
+         */
+        Import(ReadableByteChannel channel, Set<SessionKey> keys) {
+            mChannel = channel;
+            mKeys = keys;
+            mInput.flip();
+        }
+
+        /**
+         * Adds the parsed chunk to the history
+         * @return TRUE if added, or if there was nothing to add
+         */
+        private boolean addChunk() {
+            if (mChunk.isEmpty()) {
+                return true;
+            }
+            final boolean added = mHistory.appendSessions(mChunk);
+            if (added) {
+                mImported += mChunk.size();
+            }
+            mChunk.clear();
+            return added;
+        }
+
+        /**
+         * Completes the import
+         * @param success TRUE if the full document was imported
+         * @return the transfer result
+         */
+        private TransferResult finish(boolean success) {
+            if (mImported > 0) {
+                mGetStats.rebuild();
+            }
+            return new TransferResult(false, mImported, mRejected, success);
+        }
+
+        /**
+         * Parses one byte of the document
+         * @param b the byte
+         * @throws IOException if the document is not a history export
+         */
+        private void parse(byte b) throws IOException {
+            if (b == '\r') {
+                return;
+            }
+
+            if (mInHeader) {
+                if (b == '\n') {
+                    if (mHeaderIndex != HEADER.length) {
+                        throw new IOException("Not a history export");
+                    }
+                    mInHeader = false;
+                } else if (mHeaderIndex >= HEADER.length || HEADER[mHeaderIndex++] != b) {
+                    throw new IOException("Not a history export");
+                }
+            } else if (b == '\n') {
+                if (mField > 0 || mDigitCount > 0 || !mLineValid) {
+                    if (mLineValid && mDigitCount > 0 && mField == FIELD_COUNT - 1
+                            && isValid(mFields)) {
+                        if (mKeys.add(new SessionKey(mFields[FIELD_ARMED_AT],
+                                mFields[FIELD_STOPPED_AT]))) {
+                            mChunk.add(new SleepSession(mFields[FIELD_ARMED_AT],
+                                    (int) mFields[FIELD_TIME_HOUR],
+                                    (int) mFields[FIELD_TIME_MINUTE],
+                                    mFields[FIELD_STOPPED_AT],
+                                    mFields[FIELD_CANCELLED] == 1));
+                        }
+                    } else {
+                        mRejected++;
+                    }
+                }
+                mField = 0;
+                mDigitCount = 0;
+                mLineValid = true;
+                mFields[0] = 0L;
+            } else if (b == ',') {
+                if (mDigitCount == 0 || mField >= FIELD_COUNT - 1) {
+                    mLineValid = false;
+                } else {
+                    mFields[++mField] = 0L;
+                    mDigitCount = 0;
+                }
+            } else if (b >= '0' && b <= '9' && mDigitCount < MAX_DIGITS) {
+                mFields[mField] = mFields[mField] * 10 + (b - '0');
+                mDigitCount++;
+            } else {
+                mLineValid = false;
+            }
+        }
+
+        /**
+         * Parses the next chunk of sessions and adds it to the history. Refused chunks, such as
+         * while a session is open, end the import
+         * @return the transfer result. NULL if there is more to import
+         */
+        TransferResult step() {
+            try {
+                while (mChunk.size() < IMPORT_CHUNK_SIZE) {
+                    if (mInput.hasRemaining()) {
+                        parse(mInput.get());
+                        continue;
+                    }
+
+                    mInput.clear();
+                    final int read = mChannel.read(mInput);
+                    mInput.flip();
+                    if (read < 0) {
+                        // A final record without a line break is incomplete
+                        if (mInHeader) {
+                            throw new IOException("Not a history export");
+                        }
+                        if (mField > 0 || mDigitCount > 0 || !mLineValid) {
+                            mRejected++;
+                        }
+                        return finish(addChunk());
+                    }
+                }
+            } catch (IOException e) {
+                // Keep what was read before the failure
+                addChunk();
+                return finish(false);
+            }
+            return addChunk() ? null : finish(false);
+        }
+
+        @Override
+        public void run() {
+            TransferResult result;
+            while ((result = step()) == null) {
+                if (mExecutor.offer(this)) {
+                    return;
+                }
+                // The queue is full, so carry on with the next chunk here
+            }
+            complete(mChannel, result);
+        }
+    }
+
+    /**
+     * Identifies a session by its start and stop time
+     */
+    private static class SessionKey {
+        final long armedAt;
+        final long stoppedAt;
+
+        SessionKey(long armedAt, long stoppedAt) {
+            this.armedAt = armedAt;
+            this.stoppedAt = stoppedAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+
+            SessionKey key = (SessionKey) o;
+            return key.armedAt == armedAt && key.stoppedAt == stoppedAt;
+        }
+
+        @Override
+        public int hashCode() {
+            final int result = (int) (armedAt ^ (armedAt >>> 32));
+            return 31 * result + (int) (stoppedAt ^ (stoppedAt >>> 32));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.jordantymburski.driftoff.domain.executor.BackgroundExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Window background images, decoded off the main thread straight to the size of the display.
+ * Each image is decoded once per display size and density: the scaled pixels are kept in a file
+ * that later loads are a memory mapped copy from, and in memory for the life of the process so
+ * activity recreations reuse them. Files written by another install of the app are dropped
+ */
+@Singleton
+class BackgroundCache {
+    private static final int BYTES_PER_PIXEL = 2; // Of the config
+    private static final Bitmap.Config CONFIG = Bitmap.Config.RGB_565; // The images are opaque
+    private static final String DIRECTORY_NAME = "backgrounds";
+    private static final Logger LOGGER = Logger.getLogger(BackgroundCache.class.getName());
+    private static final int MAX_IMAGES = 4; // Light and dark, in both orientations
+
+    /**
+     * Application context for the image resources
+     */
+    private final Context mContext;
+
+    /**
+     * Directory of the scaled image files
+     */
+    private final File mDirectory;
+
+    /**
+     * Executor that loads the images
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Loaded images, by key
+     */
+    private final LruCache<String, MutableLiveData<Bitmap>> mImages = new LruCache<>(MAX_IMAGES);
+
+    /**
+     * Main constructor. The files are kept in the cache directory
+     * @param context android application context
+     * @param executor shared background worker that loads the images
+     */
+    @SuppressWarnings("unused")
+    @Inject
+    BackgroundCache(Context context, BackgroundExecutor executor) {
+        this(context, new File(context.getCacheDir(), DIRECTORY_NAME), executor);
+    }
+
+    /**
+     * Directory constructor
+     * @param context android context
+     * @param directory directory of the scaled image files. Created if it does not exist
+     * @param executor executor that loads the images
+     */
+    BackgroundCache(Context context, File directory, Executor executor) {
+        mContext = context.getApplicationContext();
+        mDirectory = directory;
+        mExecutor = executor;
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Decodes an image resource, sampled down as far as possible and then scaled to the size
+     * @param rawId raw image resource
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return the image. NULL if it could not be decoded
+     * @throws IOException if the resource could not be read
+     */
+    private Bitmap decode(int rawId, int width, int height) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream input = mContext.getResources().openRawResource(rawId)) {
+            BitmapFactory.decodeStream(input, null, options);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = CONFIG;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+        final Bitmap decoded;
+        try (InputStream input = mContext.getResources().openRawResource(rawId)) {
+            decoded = BitmapFactory.decodeStream(input, null, options);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        final Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Loads an image from its file, or decodes it and writes the file. Run on the executor
+     * @param rawId raw image resource
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param key name of the image
+     * @return the image. NULL if it could not be decoded
+     */
+    private Bitmap loadAsync(int rawId, int width, int height, String key) {
+        final File file = new File(mDirectory, key + "." + version());
+        try {
+            final Bitmap bitmap = read(file, width, height);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        } catch (IOException e) {
+            // Decode it again below
+            LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+        }
+
+        final Bitmap bitmap;
+        try {
+            bitmap = decode(rawId, width, height);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to decode " + key, e);
+            return null;
+        }
+        if (bitmap != null && bitmap.getConfig() == CONFIG) {
+            try {
+                write(file, bitmap);
+            } catch (IOException e) {
+                // Still usable. Decoded again on the next start
+                LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads the scaled pixels of an image
+     * @param file the image file
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return the image. NULL if there is no file of the size
+     * @throws IOException if the file could not be read
+     */
+    private static Bitmap read(File file, int width, int height) throws IOException {
+        final long byteCount = (long) width * height * BYTES_PER_PIXEL;
+        if (file.length() != byteCount) {
+            return null;
+        }
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, CONFIG);
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final MappedByteBuffer pixels = input.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, byteCount);
+            bitmap.copyPixelsFromBuffer(pixels);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Computes the largest power of 2 sample size that still decodes at or above the size
+     * @param sourceWidth width of the encoded image
+     * @param sourceHeight height of the encoded image
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return the sample size
+     */
+    private static int sampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= width
+                && sourceHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * The install of the app that files are written by. Files of other installs may hold images
+     * from other resources
+     * @return install version
+     */
+    private long version() {
+        try {
+            return mContext.getPackageManager()
+                    .getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Writes the scaled pixels of an image, replacing files of other installs
+     * @param file the image file
+     * @param bitmap the image
+     * @throws IOException if the file could not be written
+     */
+    private void write(File file, Bitmap bitmap) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        final String suffix = file.getName().substring(file.getName().lastIndexOf('.'));
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File existing : files) {
+                if (!existing.getName().endsWith(suffix)) {
+                    existing.delete();
+                }
+            }
+        }
+
+        // Written in full before it is named, so a partial file is never read
+        final File partial = new File(mDirectory, file.getName() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(partial, "rw")) {
+            output.setLength(0);
+            final MappedByteBuffer pixels = output.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, bitmap.getByteCount());
+            bitmap.copyPixelsToBuffer(pixels);
+            pixels.force();
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Failed to name " + file);
+        }
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Fetches an image at a size. Loaded in the background on first use
+     * @param rawId raw image resource
+     * @param width width in pixels
+     * @param height height in pixels
+     * @return life-cycle aware observable of the image. NULL until loaded, or if it failed
+     */
+    LiveData<Bitmap> get(final int rawId, final int width, final int height) {
+        final String key = rawId + "_" + width + "x" + height + "_"
+                + mContext.getResources().getDisplayMetrics().densityDpi;
+        MutableLiveData<Bitmap> image = mImages.get(key);
+        if (image == null) {
+            final MutableLiveData<Bitmap> loading = new MutableLiveData<>();
+            mImages.put(key, loading);
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Bitmap bitmap = loadAsync(rawId, width, height, key);
+                    if (bitmap == null) {
+                        // Try again on the next use
+                        mImages.remove(key);
+                    }
+                    loading.postValue(bitmap);
+                }
+            });
+            image = loading;
+        }
+        return image;
+    }
+}
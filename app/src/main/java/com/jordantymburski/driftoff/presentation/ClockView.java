@@ -0,0 +1,321 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.jordantymburski.driftoff.R;
+
+import java.util.Locale;
+
+/**
+ * Draws the alarm time, its AM/PM period and the time remaining. Replaces a hierarchy of text
+ * views where the period was aligned to the baseline of the time, so every text change caused a
+ * full relayout. The size of this view never depends on its text, so a text change rebuilds one
+ * cached text layout and only invalidates the draw. Only the time is clickable
+ */
+public class ClockView extends View {
+    private static final float PERIOD_LETTER_SPACING = 0.15f;
+    private static final float PERIOD_MARGIN_DP = 8f;
+    private static final float PERIOD_SIZE_SP = 18f;
+    private static final float REMAINING_LETTER_SPACING = 0.1f;
+    private static final float REMAINING_MARGIN_DP = 16f;
+    private static final float REMAINING_SIZE_SP = 14f;
+    private static final String TIME_FONT = "sans-serif-light";
+    private static final float TIME_SIZE_SP = 82f;
+
+    /**
+     * Laid out period text. NULL if there is none
+     */
+    private StaticLayout mPeriod;
+
+    /**
+     * Gap between the time and the period, in pixels
+     */
+    private final float mPeriodMargin;
+
+    /**
+     * Paint of the period text
+     */
+    private final TextPaint mPeriodPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Source period text, before it is capitalized
+     */
+    private CharSequence mPeriodText;
+
+    /**
+     * Laid out time remaining text. NULL if there is none
+     */
+    private StaticLayout mRemaining;
+
+    /**
+     * Gap between the time and the time remaining, in pixels
+     */
+    private final float mRemainingMargin;
+
+    /**
+     * Paint of the time remaining text
+     */
+    private final TextPaint mRemainingPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Source time remaining text, before it is capitalized
+     */
+    private CharSequence mRemainingText;
+
+    /**
+     * Laid out time text. NULL if there is none
+     */
+    private StaticLayout mTime;
+
+    /**
+     * Bounds of the time text within the view, which is the clickable area
+     */
+    private final Rect mTimeBounds = new Rect();
+
+    /**
+     * Paint of the time text
+     */
+    private final TextPaint mTimePaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Source time text
+     */
+    private CharSequence mTimeText;
+
+    /**
+     * Constructor for code
+     * @param context android context
+     */
+    public ClockView(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Constructor for layout inflation
+     * @param context android context
+     * @param attrs layout attributes
+     */
+    public ClockView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        final Typeface light = Typeface.create(TIME_FONT, Typeface.NORMAL);
+        mTimePaint.setColor(Color.WHITE);
+        mTimePaint.setTextSize(sp(TIME_SIZE_SP));
+        mTimePaint.setTypeface(light);
+
+        mPeriodMargin = dp(PERIOD_MARGIN_DP);
+        mPeriodPaint.setColor(Color.WHITE);
+        mPeriodPaint.setLetterSpacing(PERIOD_LETTER_SPACING);
+        mPeriodPaint.setTextSize(sp(PERIOD_SIZE_SP));
+        mPeriodPaint.setTypeface(light);
+
+        mRemainingMargin = dp(REMAINING_MARGIN_DP);
+        mRemainingPaint.setColor(context.getColor(R.color.textActive));
+        mRemainingPaint.setLetterSpacing(REMAINING_LETTER_SPACING);
+        mRemainingPaint.setTextSize(sp(REMAINING_SIZE_SP));
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Converts density independent pixels to pixels
+     * @param value in dp
+     * @return in pixels
+     */
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value,
+                getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Lays out a single line of text, sized to fit the text
+     * @param text the text. May be NULL
+     * @param paint paint of the text
+     * @return the layout. NULL if there is no text
+     */
+    private static StaticLayout layout(CharSequence text, TextPaint paint) {
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+        final int width = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+    }
+
+    /**
+     * Converts scaled pixels to pixels
+     * @param value in sp
+     * @return in pixels
+     */
+    private float sp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value,
+                getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Capitalizes the text in the current locale
+     * @param text the text. May be NULL
+     * @return the capitalized text. NULL if there is no text
+     */
+    private static String upperCase(CharSequence text) {
+        return text != null ? text.toString().toUpperCase(Locale.getDefault()) : null;
+    }
+
+    /**
+     * Positions the time in the center of the view, which the other text is drawn around
+     */
+    private void updateTimeBounds() {
+        final int width = mTime != null ? mTime.getWidth() : 0;
+        final int height = mTime != null ? mTime.getHeight() : 0;
+        final int left = (getWidth() - width) / 2;
+        final int top = (getHeight() - height) / 2;
+        mTimeBounds.set(left, top, left + width, top + height);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The displayed period text, as set
+     * @return the text. NULL if none
+     */
+    public CharSequence getPeriodText() {
+        return mPeriodText;
+    }
+
+    /**
+     * The displayed time remaining text, as set
+     * @return the text. NULL if none
+     */
+    public CharSequence getRemainingText() {
+        return mRemainingText;
+    }
+
+    /**
+     * The displayed time text
+     * @return the text. NULL if none
+     */
+    public CharSequence getTimeText() {
+        return mTimeText;
+    }
+
+    /**
+     * Sets the time remaining text, displayed in capitals
+     * @param remaining the text. NULL to clear
+     */
+    public void setRemainingText(CharSequence remaining) {
+        if (!TextUtils.equals(mRemainingText, remaining)) {
+            mRemainingText = remaining;
+            mRemaining = layout(upperCase(remaining), mRemainingPaint);
+            invalidate();
+        }
+    }
+
+    /**
+     * Sets the color of the time and period text
+     * @param color the color
+     */
+    public void setTimeColor(int color) {
+        if (mTimePaint.getColor() != color) {
+            mTimePaint.setColor(color);
+            mPeriodPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * Sets the time and the period text, with the period displayed in capitals
+     * @param time the time text. NULL to clear
+     * @param period the period text. NULL if none
+     */
+    public void setTimeText(CharSequence time, CharSequence period) {
+        if (!TextUtils.equals(mTimeText, time)) {
+            mTimeText = time;
+            mTime = layout(time, mTimePaint);
+            updateTimeBounds();
+            invalidate();
+        }
+        if (!TextUtils.equals(mPeriodText, period)) {
+            mPeriodText = period;
+            mPeriod = layout(upperCase(period), mPeriodPaint);
+            invalidate();
+        }
+    }
+
+    /* ----------------------------------------------
+     * View OVERRIDES
+     * ---------------------------------------------- */
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        // Time, centered
+        if (mTime != null) {
+            canvas.save();
+            canvas.translate(mTimeBounds.left, mTimeBounds.top);
+            mTime.draw(canvas);
+            canvas.restore();
+        }
+
+        // Period, after the time on the same baseline
+        if (mPeriod != null) {
+            final int baseline = mTimeBounds.top
+                    + (mTime != null ? mTime.getLineBaseline(0) : 0);
+            canvas.save();
+            canvas.translate(mTimeBounds.right + mPeriodMargin,
+                    baseline - mPeriod.getLineBaseline(0));
+            mPeriod.draw(canvas);
+            canvas.restore();
+        }
+
+        // Time remaining, centered below the time
+        if (mRemaining != null) {
+            canvas.save();
+            canvas.translate((getWidth() - mRemaining.getWidth()) / 2f,
+                    mTimeBounds.bottom + mRemainingMargin);
+            mRemaining.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setText(TextUtils.concat(
+                mTimeText != null ? mTimeText : "", " ",
+                mPeriodText != null ? mPeriodText : "", " ",
+                mRemainingText != null ? mRemainingText : ""));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateTimeBounds();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        // Only touches that start on the time are handled, as clicks and long clicks
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN
+                && !mTimeBounds.contains((int) event.getX(), (int) event.getY())) {
+            return false;
+        }
+        return super.onTouchEvent(event);
+    }
+}
@@ -0,0 +1,182 @@
+package com.jordantymburski.driftoff.presentation;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import com.jordantymburski.driftoff.R;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Cache of the formatted time and time remaining labels. Each label is formatted once per
+ * displayed value and reused, so repeat updates do no formatting or string allocation. All labels
+ * are dropped when the locale or the 12/24 hour setting changes. Only used on the main thread
+ */
+class DisplayTextCache {
+    private static final int MAX_HOURS = 48;
+    private static final int MAX_MINUTES = 60;
+    private static final int MAX_SECONDS = 60;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Android context for resources and the time format settings
+     */
+    private final Context mContext;
+
+    /**
+     * Remaining time labels in hours, by count. NULL entries are not formatted yet
+     */
+    private final String[] mHours = new String[MAX_HOURS + 1];
+
+    /**
+     * The locale of the cached labels
+     */
+    private Locale mLocale;
+
+    /**
+     * Remaining time labels in minutes, by count. NULL entries are not formatted yet
+     */
+    private final String[] mMinutes = new String[MAX_MINUTES + 1];
+
+    /**
+     * AM/PM labels, by minute of the day. NULL entries are not formatted yet
+     */
+    private final String[] mPeriods = new String[MINUTES_PER_DAY];
+
+    /**
+     * Remaining time labels in seconds, by count. NULL entries are not formatted yet
+     */
+    private final String[] mSeconds = new String[MAX_SECONDS + 1];
+
+    /**
+     * Time labels, by minute of the day. NULL entries are not formatted yet
+     */
+    private final String[] mTimes = new String[MINUTES_PER_DAY];
+
+    /**
+     * The 12/24 hour setting of the cached labels
+     */
+    private boolean mUse24Hour;
+
+    /**
+     * Main constructor
+     * @param context android context
+     */
+    DisplayTextCache(Context context) {
+        mContext = context;
+        validate();
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The wall clock minute of the day of the time, which is all the time labels depend on
+     * @param time the time
+     * @return 0-1439
+     */
+    private static int minuteOfDay(Calendar time) {
+        return time.get(Calendar.HOUR_OF_DAY) * 60 + time.get(Calendar.MINUTE);
+    }
+
+    /**
+     * Fetches or formats a plural label by count
+     * @param labels cached labels of the plural
+     * @param pluralsId plural string resource
+     * @param count the count
+     * @return the label
+     */
+    private String plural(String[] labels, int pluralsId, long count) {
+        if (count < 0 || count >= labels.length) {
+            return mContext.getResources().getQuantityString(pluralsId, (int) count, count);
+        }
+        final int index = (int) count;
+        if (labels[index] == null) {
+            labels[index] = mContext.getResources().getQuantityString(pluralsId, index, count);
+        }
+        return labels[index];
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * The AM/PM label of a time
+     * @param time the time
+     * @return the label. NULL when using the 24 hour format
+     */
+    String getPeriod(Calendar time) {
+        if (mUse24Hour) {
+            return null;
+        }
+        final int minute = minuteOfDay(time);
+        if (mPeriods[minute] == null) {
+            mPeriods[minute] = DateFormat.format("a", time).toString().replace(".", "");
+        }
+        return mPeriods[minute];
+    }
+
+    /**
+     * The time remaining label in hours
+     * @param hours rounded up hours remaining
+     * @return the label
+     */
+    String getRemainingHours(long hours) {
+        return plural(mHours, R.plurals.alarm_notice_hours, hours);
+    }
+
+    /**
+     * The time remaining label in minutes
+     * @param minutes rounded up minutes remaining
+     * @return the label
+     */
+    String getRemainingMinutes(long minutes) {
+        return plural(mMinutes, R.plurals.alarm_notice_minutes, minutes);
+    }
+
+    /**
+     * The time remaining label in seconds
+     * @param seconds rounded up seconds remaining
+     * @return the label
+     */
+    String getRemainingSeconds(long seconds) {
+        return plural(mSeconds, R.plurals.alarm_notice_seconds, seconds);
+    }
+
+    /**
+     * The time label of a time, without the AM/PM in the 12 hour format
+     * @param time the time
+     * @return the label
+     */
+    String getTime(Calendar time) {
+        final int minute = minuteOfDay(time);
+        if (mTimes[minute] == null) {
+            mTimes[minute] = mUse24Hour
+                    ? DateFormat.getTimeFormat(mContext).format(time.getTime())
+                    : DateFormat.format("h:mm", time).toString();
+        }
+        return mTimes[minute];
+    }
+
+    /**
+     * Drops all labels if the locale or the 12/24 hour setting changed since they were formatted.
+     * Call whenever either may have changed, such as on resume
+     */
+    void validate() {
+        final Locale locale = Locale.getDefault();
+        final boolean use24Hour = DateFormat.is24HourFormat(mContext);
+        if (!locale.equals(mLocale) || use24Hour != mUse24Hour) {
+            mLocale = locale;
+            mUse24Hour = use24Hour;
+            Arrays.fill(mHours, null);
+            Arrays.fill(mMinutes, null);
+            Arrays.fill(mPeriods, null);
+            Arrays.fill(mSeconds, null);
+            Arrays.fill(mTimes, null);
+        }
+    }
+}
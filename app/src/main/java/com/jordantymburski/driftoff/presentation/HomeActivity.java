@@ -1,14 +1,22 @@
 package com.jordantymburski.driftoff.presentation;
 
 import android.app.TimePickerDialog;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.ParcelFileDescriptor;
 import android.text.format.DateFormat;
+import android.view.Choreographer;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.ImageButton;
-import android.widget.TextView;
+import android.widget.PopupMenu;
 import android.widget.TimePicker;
+import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
@@ -16,10 +24,12 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.lifecycle.Observer;
 
 import com.jordantymburski.driftoff.R;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.TransferResult;
 
+import java.io.FileNotFoundException;
 import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -30,12 +40,28 @@ import dagger.android.AndroidInjection;
  * status bar and navigation/system bar) with user interaction.
  */
 public class HomeActivity extends FragmentActivity
-        implements Observer<AlarmInfo>,
+        implements Choreographer.FrameCallback,
+                   Observer<AlarmInfo>,
+                   PopupMenu.OnMenuItemClickListener,
                    View.OnClickListener,
+                   View.OnLongClickListener,
                    TimePickerDialog.OnTimeSetListener {
+    private static final long COUNTDOWN_SECONDS = 60; // Final minute
     private static final long DAY_START_HOUR = 8; // 8:00am inclusive
     private static final long DAY_END_HOUR = 18; // 6:00pm inclusive
-    private static final long UPDATE_TIME_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final String HISTORY_FILE_NAME = "drift_off_history.csv";
+    private static final String HISTORY_MIME_TYPE = "text/csv";
+    private static final int REQUEST_EXPORT_HISTORY = 1;
+    private static final int REQUEST_IMPORT_HISTORY = 2;
+
+    // Window background images
+    @SuppressWarnings("WeakerAccess")
+    @Inject
+    BackgroundCache mBackgroundCache;
+
+    // Final minute countdown, rendered on display frames
+    private Choreographer mChoreographer;
+    private long mCountdownShown;
 
     // Colors
     private int mColorTextActive;
@@ -45,16 +71,22 @@ public class HomeActivity extends FragmentActivity
     private HomeViewModel mModel;
     private AlarmInfo mModelInfo;
 
+    // Formatted labels
+    private DisplayTextCache mDisplayText;
+
     // Model Factory
     @SuppressWarnings("WeakerAccess")
     @Inject
     HomeViewModelFactory mModelFactory;
 
+    // Time
+    @SuppressWarnings("WeakerAccess")
+    @Inject
+    TimeSource mTimeSource;
+
     // UI
     private ImageButton mButtonRun;
-    private TextView mTextPeriod;
-    private TextView mTextRemaining;
-    private TextView mTextTime;
+    private ClockView mClock;
 
     // UI theme
     private int mTheme;
@@ -63,8 +95,9 @@ public class HomeActivity extends FragmentActivity
     @VisibleForTesting
     TimePickerDialog mTimePicker;
 
-    // Update runnable
+    // Update runnable, only posted while resumed
     private final Handler mHandler = new Handler();
+    private boolean mResumed;
     private final Runnable mUpdateRunnable = new Runnable() {
         @Override
         public void run() {
@@ -86,32 +119,93 @@ public class HomeActivity extends FragmentActivity
         getWindow().setFlags(WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS,
                 WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS);
 
+        // Background image, loaded off the main thread at the size of the display. The theme
+        // shows a matching color until it is ready
+        final Point displaySize = new Point();
+        getWindowManager().getDefaultDisplay().getRealSize(displaySize);
+        mBackgroundCache.get(
+                mTheme == R.style.AppTheme_Light ? R.raw.background_light : R.raw.background,
+                displaySize.x, displaySize.y).observe(this, new Observer<Bitmap>() {
+            @Override
+            public void onChanged(@Nullable Bitmap background) {
+                if (background != null) {
+                    getWindow().setBackgroundDrawable(
+                            new BitmapDrawable(getResources(), background));
+                }
+            }
+        });
+
         // Colors
         mColorTextActive = getColor(R.color.textActive);
         mColorTextEdit = getColor(R.color.textEdit);
 
+        // Labels
+        mChoreographer = Choreographer.getInstance();
+        mDisplayText = new DisplayTextCache(this);
+
         // UI references
         mButtonRun = findViewById(R.id.run_button);
         mButtonRun.setOnClickListener(this);
-        mTextPeriod = findViewById(R.id.time_period);
-        mTextRemaining = findViewById(R.id.time_remaining);
-        mTextTime = findViewById(R.id.time_text);
-        mTextTime.setOnClickListener(this);
+        mClock = findViewById(R.id.clock_view);
+        mClock.setOnClickListener(this);
+        mClock.setOnLongClickListener(this);
 
         // Initialize the view model and set up the observable
         mModel = HomeViewModel.getInstance(this, mModelFactory);
         mModel.getInfoObservable().observe(this, this);
+        mModel.getTransferObservable().observe(this, new Observer<TransferResult>() {
+            @Override
+            public void onChanged(@Nullable TransferResult result) {
+                if (result != null) {
+                    showTransferResult(result);
+                }
+            }
+        });
     }
 
     /* ----------------------------------------------
      * Activity OVERRIDES
      * ---------------------------------------------- */
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        try {
+            switch (requestCode) {
+                case REQUEST_EXPORT_HISTORY:
+                    final ParcelFileDescriptor output =
+                            getContentResolver().openFileDescriptor(data.getData(), "wt");
+                    if (output != null) {
+                        mModel.exportHistory(new ParcelFileDescriptor.AutoCloseOutputStream(
+                                output).getChannel());
+                    }
+                    break;
+                case REQUEST_IMPORT_HISTORY:
+                    final ParcelFileDescriptor input =
+                            getContentResolver().openFileDescriptor(data.getData(), "r");
+                    if (input != null) {
+                        mModel.importHistory(new ParcelFileDescriptor.AutoCloseInputStream(
+                                input).getChannel());
+                    }
+                    break;
+            }
+        } catch (FileNotFoundException e) {
+            Toast.makeText(this, R.string.history_transfer_failed, Toast.LENGTH_LONG).show();
+        }
+    }
+
     @Override
     public void onPause() {
         super.onPause();
 
+        // No refreshes or countdown frames while paused. The next resume updates the view
+        mResumed = false;
         mHandler.removeCallbacks(mUpdateRunnable);
+        mChoreographer.removeFrameCallback(this);
     }
 
     @Override
@@ -127,10 +221,21 @@ public class HomeActivity extends FragmentActivity
             return;
         }
 
-        // Otherwise, proceed to update the UI
+        // Otherwise, proceed to update the UI. The time format may have changed in the settings
+        mResumed = true;
+        mDisplayText.validate();
         updateView();
     }
 
+    /* ----------------------------------------------
+     * FrameCallback OVERRIDES
+     * ---------------------------------------------- */
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        updateCountdown();
+    }
+
     /* ----------------------------------------------
      * Observer OVERRIDES
      * ---------------------------------------------- */
@@ -151,20 +256,60 @@ public class HomeActivity extends FragmentActivity
     public void onClick(View v) {
         switch (v.getId()) {
             case R.id.run_button:
-                if (mModelInfo.isActive()) {
+                if (mModelInfo.isActive(mTimeSource)) {
                     mModel.resetAlarm();
                 } else {
                     mModel.setAlarm();
                 }
                 break;
-            case R.id.time_text:
-                if (!mModelInfo.isActive()) {
+            case R.id.clock_view:
+                if (!mModelInfo.isActive(mTimeSource)) {
                     editTime();
                 }
                 break;
         }
     }
 
+    /* ----------------------------------------------
+     * OnLongClickListener OVERRIDES
+     * ---------------------------------------------- */
+
+    @Override
+    public boolean onLongClick(View v) {
+        if (v.getId() == R.id.clock_view) {
+            final PopupMenu menu = new PopupMenu(this, v);
+            menu.inflate(R.menu.history);
+            menu.setOnMenuItemClickListener(this);
+            menu.show();
+            return true;
+        }
+        return false;
+    }
+
+    /* ----------------------------------------------
+     * OnMenuItemClickListener OVERRIDES
+     * ---------------------------------------------- */
+
+    @Override
+    public boolean onMenuItemClick(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.history_export:
+                startActivityForResult(new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType(HISTORY_MIME_TYPE)
+                        .putExtra(Intent.EXTRA_TITLE, HISTORY_FILE_NAME),
+                        REQUEST_EXPORT_HISTORY);
+                return true;
+            case R.id.history_import:
+                startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                        .addCategory(Intent.CATEGORY_OPENABLE)
+                        .setType("text/*"),
+                        REQUEST_IMPORT_HISTORY);
+                return true;
+        }
+        return false;
+    }
+
     /* ----------------------------------------------
      * OnTimeSetListener OVERRIDES
      * ---------------------------------------------- */
@@ -193,7 +338,9 @@ public class HomeActivity extends FragmentActivity
      * @return style resource ID
      */
     private int getThemeResource() {
-        int hourOfDay = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        final Calendar now = Calendar.getInstance(mTimeSource.getTimeZone());
+        now.setTimeInMillis(mTimeSource.currentTimeMillis());
+        int hourOfDay = now.get(Calendar.HOUR_OF_DAY);
         return (hourOfDay >= DAY_START_HOUR && hourOfDay <= DAY_END_HOUR)
                 ? R.style.AppTheme_Light : R.style.AppTheme;
     }
@@ -204,16 +351,52 @@ public class HomeActivity extends FragmentActivity
      */
     private String getTimeTextRemaining() {
         // Check if it should display in hours
-        long hoursToStop = mModelInfo.getHoursTillAlarm();
+        long hoursToStop = mModelInfo.getHoursTillAlarm(mTimeSource);
         if (hoursToStop > 1) {
-            return getResources().getQuantityString(
-                    R.plurals.alarm_notice_hours, (int) hoursToStop, hoursToStop);
+            return mDisplayText.getRemainingHours(hoursToStop);
         }
 
         // Otherwise, it should display in minutes
-        long minutesToStop = mModelInfo.getMinutesTillAlarm();
-        return getResources().getQuantityString(
-                R.plurals.alarm_notice_minutes, (int) minutesToStop, minutesToStop);
+        return mDisplayText.getRemainingMinutes(mModelInfo.getMinutesTillAlarm(mTimeSource));
+    }
+
+    /**
+     * Shows the outcome of a history export or import
+     * @param result the transfer result
+     */
+    private void showTransferResult(TransferResult result) {
+        final String text;
+        if (!result.success) {
+            text = getString(R.string.history_transfer_failed);
+        } else if (result.export) {
+            text = getResources().getQuantityString(
+                    R.plurals.history_exported, result.sessions, result.sessions);
+        } else {
+            text = getResources().getQuantityString(
+                    R.plurals.history_imported, result.sessions, result.sessions, result.rejected);
+        }
+        Toast.makeText(this, text, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Updates the final minute countdown and requests the next display frame while it runs. The
+     * text is only set when the displayed second changes, and nothing is allocated per frame.
+     * Drops back to updating the state once the countdown ends. Nothing runs while paused
+     */
+    private void updateCountdown() {
+        if (!mResumed) {
+            return;
+        }
+        final long seconds = mModelInfo.getSecondsTillAlarm(mTimeSource);
+        if (seconds > 0 && seconds <= COUNTDOWN_SECONDS) {
+            if (seconds != mCountdownShown) {
+                mCountdownShown = seconds;
+                mClock.setRemainingText(mDisplayText.getRemainingSeconds(seconds));
+            }
+            mChoreographer.postFrameCallback(this);
+        } else {
+            updateState();
+        }
     }
 
     /**
@@ -221,20 +404,29 @@ public class HomeActivity extends FragmentActivity
      */
     private void updateState() {
         mHandler.removeCallbacks(mUpdateRunnable);
+        mChoreographer.removeFrameCallback(this);
+        mCountdownShown = 0;
 
         if (mModelInfo != null) {
-            if (mModelInfo.isActive()) {
+            if (mModelInfo.isActive(mTimeSource)) {
                 mButtonRun.setImageResource(R.drawable.ic_stop);
-                mTextTime.setTextColor(mColorTextActive);
-                mTextPeriod.setTextColor(mColorTextActive);
-                mTextRemaining.setText(getTimeTextRemaining());
+                mClock.setTimeColor(mColorTextActive);
 
-                mHandler.postDelayed(mUpdateRunnable, UPDATE_TIME_MS);
+                if (mModelInfo.getSecondsTillAlarm(mTimeSource) <= COUNTDOWN_SECONDS) {
+                    // Count down the final minute in seconds, in step with the display
+                    updateCountdown();
+                } else {
+                    // Refresh exactly when the remaining time text next changes
+                    mClock.setRemainingText(getTimeTextRemaining());
+                    if (mResumed) {
+                        mHandler.postDelayed(mUpdateRunnable,
+                                mModelInfo.getMillisTillRemainingChange(mTimeSource));
+                    }
+                }
             } else {
                 mButtonRun.setImageResource(R.drawable.ic_play);
-                mTextTime.setTextColor(mColorTextEdit);
-                mTextPeriod.setTextColor(mColorTextEdit);
-                mTextRemaining.setText(null);
+                mClock.setTimeColor(mColorTextEdit);
+                mClock.setRemainingText(null);
             }
         }
     }
@@ -244,16 +436,8 @@ public class HomeActivity extends FragmentActivity
      */
     private void updateTime() {
         if (mModelInfo != null) {
-            Calendar alarmTime = mModelInfo.getTime();
-            if (DateFormat.is24HourFormat(getApplicationContext())) {
-                mTextTime.setText(DateFormat.getTimeFormat(getApplicationContext())
-                        .format(alarmTime.getTime()));
-                mTextPeriod.setText(null);
-            } else {
-                mTextTime.setText(DateFormat.format("h:mm", alarmTime));
-                mTextPeriod.setText(DateFormat.format("a", alarmTime).toString()
-                        .replace(".", ""));
-            }
+            Calendar alarmTime = mModelInfo.getTime(mTimeSource);
+            mClock.setTimeText(mDisplayText.getTime(alarmTime), mDisplayText.getPeriod(alarmTime));
         }
     }
 
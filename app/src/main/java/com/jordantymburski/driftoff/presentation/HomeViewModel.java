@@ -6,8 +6,13 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.lifecycle.ViewModelStoreOwner;
 
 import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.TransferResult;
 import com.jordantymburski.driftoff.domain.usecase.GetInfo;
 import com.jordantymburski.driftoff.domain.usecase.SetInfo;
+import com.jordantymburski.driftoff.domain.usecase.TransferHistory;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * View model manager of the home activity
@@ -23,20 +28,35 @@ class HomeViewModel extends ViewModel {
      */
     private final SetInfo mUseSetInfo;
 
+    /**
+     * Transfer history domain use case
+     */
+    private final TransferHistory mUseTransferHistory;
+
     /**
      * Initializing constructor
      * @param getInfo use case to get the current alarm information
      * @param setInfo use case to set and update the persisted alarm information
+     * @param transferHistory use case to export and import the session history
      */
-    HomeViewModel(GetInfo getInfo, SetInfo setInfo) {
+    HomeViewModel(GetInfo getInfo, SetInfo setInfo, TransferHistory transferHistory) {
         mInfoObservable = getInfo.observable();
         mUseSetInfo = setInfo;
+        mUseTransferHistory = transferHistory;
     }
 
     /* ----------------------------------------------
      * PACKAGE FUNCTIONS
      * ---------------------------------------------- */
 
+    /**
+     * Export the session history to a document
+     * @param channel output channel of the document. Closed once done
+     */
+    void exportHistory(WritableByteChannel channel) {
+        mUseTransferHistory.exportTo(channel);
+    }
+
     /**
      * Fetches the set info observable for usage by the holding activity
      * @return life-cycle aware observable
@@ -45,6 +65,22 @@ class HomeViewModel extends ViewModel {
         return mInfoObservable;
     }
 
+    /**
+     * Fetches the history transfer result observable for usage by the holding activity
+     * @return life-cycle aware observable
+     */
+    LiveData<TransferResult> getTransferObservable() {
+        return mUseTransferHistory.observable();
+    }
+
+    /**
+     * Import sessions from a document into the session history
+     * @param channel input channel of the document. Closed once done
+     */
+    void importHistory(ReadableByteChannel channel) {
+        mUseTransferHistory.importFrom(channel);
+    }
+
     /**
      * Reset the alarm (unset). Called when the alarm either goes off or is cancelled
      */
@@ -6,22 +6,25 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.jordantymburski.driftoff.domain.usecase.GetInfo;
 import com.jordantymburski.driftoff.domain.usecase.SetInfo;
+import com.jordantymburski.driftoff.domain.usecase.TransferHistory;
 
 import javax.inject.Inject;
 
 class HomeViewModelFactory implements ViewModelProvider.Factory {
     private final GetInfo mUseGetInfo;
     private final SetInfo mUseSetInfo;
+    private final TransferHistory mUseTransferHistory;
 
     @Inject
-    HomeViewModelFactory(GetInfo getInfo, SetInfo setInfo) {
+    HomeViewModelFactory(GetInfo getInfo, SetInfo setInfo, TransferHistory transferHistory) {
         mUseGetInfo = getInfo;
         mUseSetInfo = setInfo;
+        mUseTransferHistory = transferHistory;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public @NonNull <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
-        return (T) new HomeViewModel(mUseGetInfo, mUseSetInfo);
+        return (T) new HomeViewModel(mUseGetInfo, mUseSetInfo, mUseTransferHistory);
     }
 }
@@ -4,15 +4,23 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 
+import com.jordantymburski.driftoff.domain.executor.Completion;
 import com.jordantymburski.driftoff.domain.usecase.RescheduleAlarm;
 import com.jordantymburski.driftoff.domain.usecase.StopAudio;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.inject.Inject;
 
 import dagger.android.AndroidInjection;
 
 public class AlarmReceiver extends BroadcastReceiver {
     public static final String ACTION_STOP_AUDIO = "com.jordantymburski.driftoff.STOP_AUDIO";
+    public static final String ACTION_TIMER = "com.jordantymburski.driftoff.TIMER";
+
+    // Longest time the broadcast is held for the domain work, below the 10 second timeout
+    private static final long FINISH_DEADLINE_MS = 8000L;
 
     /**
      * Reschedule alarm domain use case
@@ -28,18 +36,55 @@ public class AlarmReceiver extends BroadcastReceiver {
     @Inject
     StopAudio mUseStopAudio;
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
-        AndroidInjection.inject(this, context);
+    /**
+     * Logical timers on the single system alarm
+     */
+    @SuppressWarnings("WeakerAccess")
+    @Inject
+    TimerMultiplexer mTimerMultiplexer;
 
-        switch (intent.getAction() != null ? intent.getAction() : "") {
+    /**
+     * Handles one action, received directly or from a due timer
+     * @param action the intent action
+     * @return completes once the domain work of the action is done
+     */
+    private Completion handle(String action) {
+        switch (action) {
             case Intent.ACTION_BOOT_COMPLETED:
+                mTimerMultiplexer.reset();
+                return mUseRescheduleAlarm.execute();
+            case Intent.ACTION_MY_PACKAGE_REPLACED:
+                mTimerMultiplexer.cancelLegacy();
+                return mUseRescheduleAlarm.execute();
             case Intent.ACTION_TIME_CHANGED:
-                mUseRescheduleAlarm.execute();
+                SystemTimeSource.invalidate();
+                return mUseRescheduleAlarm.execute();
+            case Intent.ACTION_TIMEZONE_CHANGED:
+                SystemTimeSource.invalidate();
                 break;
             case ACTION_STOP_AUDIO:
-                mUseStopAudio.execute();
-                break;
+                return mUseStopAudio.execute();
+            case ACTION_TIMER:
+                final List<Completion> completions = new ArrayList<>();
+                for (String due : mTimerMultiplexer.takeDue()) {
+                    completions.add(handle(due));
+                }
+                return Completion.all(completions);
         }
+        return Completion.done();
+    }
+
+    /**
+     * Handles the broadcast and holds it with goAsync() until the domain work is done, so the
+     * process is not frozen or killed before the changes are saved
+     * @param context the receiver context
+     * @param intent the received intent
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        AndroidInjection.inject(this, context);
+        BroadcastFinisher.finishWhenDone(this,
+                handle(intent.getAction() != null ? intent.getAction() : ""),
+                FINISH_DEADLINE_MS);
     }
 }
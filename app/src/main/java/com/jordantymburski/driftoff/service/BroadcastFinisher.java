@@ -0,0 +1,80 @@
+package com.jordantymburski.driftoff.service;
+
+import android.content.BroadcastReceiver;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.jordantymburski.driftoff.domain.executor.Completion;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finishes an async broadcast result exactly once: as soon as the domain work completes, or at
+ * the deadline if the work takes too long. This keeps the process alive for the work without
+ * holding it past the broadcast timeout
+ */
+class BroadcastFinisher implements Runnable {
+    /**
+     * Main thread handler for the deadline
+     */
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * TRUE once the result has been finished
+     */
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+
+    /**
+     * The async broadcast result to finish
+     */
+    private final BroadcastReceiver.PendingResult mResult;
+
+    /**
+     * Main constructor
+     * @param result the async broadcast result to finish
+     */
+    private BroadcastFinisher(BroadcastReceiver.PendingResult result) {
+        mResult = result;
+    }
+
+    /* ----------------------------------------------
+     * PACKAGE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Holds the broadcast until the work completes or the deadline passes. Nothing is held if the
+     * work has already completed
+     * @param receiver the receiver in its onReceive call
+     * @param completion completes once the work is done
+     * @param deadlineMs maximum time to hold the broadcast, below the broadcast timeout
+     */
+    static void finishWhenDone(BroadcastReceiver receiver, Completion completion,
+                               long deadlineMs) {
+        if (completion.isDone()) {
+            return;
+        }
+
+        // Receivers called outside of a system broadcast, such as local broadcasts, have no result
+        final BroadcastReceiver.PendingResult result = receiver.goAsync();
+        if (result != null) {
+            final BroadcastFinisher finisher = new BroadcastFinisher(result);
+            sHandler.postDelayed(finisher, deadlineMs);
+            completion.whenDone(finisher);
+        }
+    }
+
+    /* ----------------------------------------------
+     * Runnable OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Finishes the result, if not done already, and drops the deadline
+     */
+    @Override
+    public void run() {
+        if (mFinished.compareAndSet(false, true)) {
+            sHandler.removeCallbacks(this);
+            mResult.finish();
+        }
+    }
+}
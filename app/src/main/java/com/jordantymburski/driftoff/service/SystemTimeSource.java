@@ -0,0 +1,58 @@
+package com.jordantymburski.driftoff.service;
+
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+import com.jordantymburski.driftoff.domain.model.ZoneTransitions;
+
+import java.util.TimeZone;
+
+/**
+ * Time source backed by the device wall clock and default time zone. The default time zone is
+ * cloned on every read, so it is cached until the clock or time zone change is received
+ */
+public class SystemTimeSource implements TimeSource {
+    /**
+     * The cached device time zone. NULL if not read yet or invalidated
+     */
+    private static volatile TimeZone sTimeZone;
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Drops the cached time zone and the zone transitions built from it. Called when the device
+     * time zone, time zone rules or clock change
+     */
+    public static void invalidate() {
+        sTimeZone = null;
+        ZoneTransitions.invalidate();
+    }
+
+    /* ----------------------------------------------
+     * TimeSource OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * The current wall clock time
+     * @return unix epoch time in milliseconds
+     */
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * The current device time zone, read again after each invalidate(). Shared, so it must not be
+     * modified
+     * @return time zone
+     */
+    @Override
+    public TimeZone getTimeZone() {
+        TimeZone timeZone = sTimeZone;
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+            sTimeZone = timeZone;
+        }
+        return timeZone;
+    }
+}
@@ -0,0 +1,316 @@
+package com.jordantymburski.driftoff.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.jordantymburski.driftoff.domain.adapter.AlarmScheduler;
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Runs any number of logical timers on a single system alarm. Timers are kept in a queue ordered
+ * by due time and only the earliest is registered with the system, so there is one system call
+ * and one wake up per distinct due time. When the system alarm fires, every due timer is taken in
+ * one batch and the next one is registered. Timers are named by the receiver action they trigger
+ * and are persisted, since the process is often gone by the time the alarm fires. The registered
+ * due time is only kept in memory, so a request that matches what the system already holds makes
+ * no system call. A new process registers the earliest restored timer again, since the system
+ * drops its alarms on a force stop. Changes are applied in the background. The system completes
+ * the write before a receiver's broadcast is finished, so they outlive the process
+ */
+public class TimerMultiplexer implements AlarmScheduler {
+    // Registered due time persisted by earlier versions. Removed on start
+    private static final String KEY_REGISTERED = "registered";
+
+    private static final String STORE_NAME = "TimerStorage";
+
+    /**
+     * Logical timer of the stop audio alarm, used by the alarm scheduler port
+     */
+    public static final String TIMER_STOP_AUDIO = AlarmReceiver.ACTION_STOP_AUDIO;
+
+    /**
+     * Persisted due time of each pending timer
+     */
+    private final SharedPreferences mDatabase;
+
+    /**
+     * Number of system alarm calls made
+     */
+    private long mIssued;
+
+    /**
+     * System alarm of versions before the timers were multiplexed. NULL if there is none
+     */
+    private final AlarmScheduler mLegacyAlarm;
+
+    /**
+     * Pending timers, earliest first
+     */
+    private final PriorityQueue<Timer> mQueue = new PriorityQueue<>(4, new Comparator<Timer>() {
+        @Override
+        public int compare(Timer a, Timer b) {
+            if (a.time != b.time) {
+                return a.time < b.time ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    });
+
+    /**
+     * The due time registered with the system alarm by this process. 0 if none is registered
+     */
+    private long mRegistered;
+
+    /**
+     * Order of timer creation, so timers due at the same time are taken in that order
+     */
+    private long mSequence;
+
+    /**
+     * Number of requests that needed no system alarm call
+     */
+    private long mSkipped;
+
+    /**
+     * The single system alarm
+     */
+    private final AlarmScheduler mSystemAlarm;
+
+    /**
+     * Source of the current time
+     */
+    private final TimeSource mTimeSource;
+
+    /**
+     * Pending timers by action
+     */
+    private final Map<String, Timer> mTimers = new HashMap<>();
+
+    /**
+     * Constructor without a legacy system alarm
+     * @param context android application context
+     * @param systemAlarm the single system alarm, which wakes the alarm receiver with ACTION_TIMER
+     * @param timeSource source of the current time
+     */
+    public TimerMultiplexer(Context context, AlarmScheduler systemAlarm, TimeSource timeSource) {
+        this(context, systemAlarm, null, timeSource);
+    }
+
+    /**
+     * Main constructor. Pending timers are restored from the storage, since system alarms outlive
+     * the process. The earliest one is registered again, in case the system alarm was dropped
+     * @param context android application context
+     * @param systemAlarm the single system alarm, which wakes the alarm receiver with ACTION_TIMER
+     * @param legacyAlarm the system alarm of versions before the timers were multiplexed
+     * @param timeSource source of the current time
+     */
+    public TimerMultiplexer(Context context, AlarmScheduler systemAlarm,
+                            AlarmScheduler legacyAlarm, TimeSource timeSource) {
+        mDatabase = context.getSharedPreferences(STORE_NAME, Context.MODE_PRIVATE);
+        mLegacyAlarm = legacyAlarm;
+        mSystemAlarm = systemAlarm;
+        mTimeSource = timeSource;
+
+        for (Map.Entry<String, ?> entry : mDatabase.getAll().entrySet()) {
+            if (!entry.getKey().equals(KEY_REGISTERED) && entry.getValue() instanceof Long) {
+                add(entry.getKey(), (Long) entry.getValue());
+            }
+        }
+        if (mDatabase.contains(KEY_REGISTERED)) {
+            mDatabase.edit().remove(KEY_REGISTERED).apply();
+        }
+
+        final Timer head = mQueue.peek();
+        if (head != null) {
+            mSystemAlarm.schedule(head.time);
+            mRegistered = head.time;
+            mIssued++;
+        }
+    }
+
+    /* ----------------------------------------------
+     * PRIVATE FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Adds a timer to the queue and index
+     * @param action receiver action of the timer
+     * @param time epoch unix due time
+     */
+    private void add(String action, long time) {
+        final Timer timer = new Timer(action, time, mSequence++);
+        mQueue.add(timer);
+        mTimers.put(action, timer);
+    }
+
+    /**
+     * Reconciles the system alarm with the earliest due time. Only calls the system if they differ
+     * @param editor storage changes to apply along with it
+     */
+    private void register(SharedPreferences.Editor editor) {
+        final Timer head = mQueue.peek();
+        final long time = head != null ? head.time : 0L;
+        if (time != mRegistered) {
+            if (head != null) {
+                mSystemAlarm.schedule(time);
+            } else {
+                mSystemAlarm.cancel();
+            }
+            mRegistered = time;
+            mIssued++;
+        } else {
+            mSkipped++;
+        }
+        editor.apply();
+    }
+
+    /**
+     * Removes a timer from the queue and index
+     * @param action receiver action of the timer
+     * @return TRUE if it was pending
+     */
+    private boolean remove(String action) {
+        final Timer timer = mTimers.remove(action);
+        return timer != null && mQueue.remove(timer);
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Cancel a logical timer. The system alarm is only changed if it was the earliest
+     * @param action receiver action of the timer
+     */
+    public synchronized void cancel(String action) {
+        if (remove(action)) {
+            register(mDatabase.edit().remove(action));
+        } else {
+            mSkipped++;
+        }
+    }
+
+    /**
+     * Cancels the system alarm of versions before the timers were multiplexed, which the timers
+     * do not know about. Used after an upgrade, when the owners schedule their timers again
+     */
+    public synchronized void cancelLegacy() {
+        if (mLegacyAlarm != null) {
+            mLegacyAlarm.cancel();
+            mIssued++;
+        }
+    }
+
+    /**
+     * The number of system alarm calls made, to compare against skippedCount()
+     * @return issued call count
+     */
+    public synchronized long issuedCount() {
+        return mIssued;
+    }
+
+    /**
+     * Drops all timers without touching the system alarm. Used after a boot, when the system has
+     * already cleared its alarms and the owners schedule their timers again
+     */
+    public synchronized void reset() {
+        mQueue.clear();
+        mTimers.clear();
+        mRegistered = 0L;
+        mDatabase.edit().clear().apply();
+    }
+
+    /**
+     * The number of schedule, cancel and fire requests that needed no system alarm call, since
+     * the system already held the wanted due time
+     * @return skipped call count
+     */
+    public synchronized long skippedCount() {
+        return mSkipped;
+    }
+
+    /**
+     * Schedule a logical timer, replacing any pending time of the same timer. The system alarm is
+     * only changed if the earliest due time changes
+     * @param action receiver action of the timer
+     * @param time epoch unix due time
+     */
+    public synchronized void schedule(String action, long time) {
+        final Timer pending = mTimers.get(action);
+        if (pending != null && pending.time == time) {
+            mSkipped++;
+            return;
+        }
+        remove(action);
+        add(action, time);
+        register(mDatabase.edit().putLong(action, time));
+    }
+
+    /**
+     * Takes every timer that is due, when the system alarm fires, and registers the next one
+     * @return receiver actions of the due timers, in due order
+     */
+    public synchronized List<String> takeDue() {
+        final long now = mTimeSource.currentTimeMillis();
+        final List<String> due = new ArrayList<>();
+        final SharedPreferences.Editor editor = mDatabase.edit();
+        while (!mQueue.isEmpty() && mQueue.peek().time <= now) {
+            final Timer timer = mQueue.poll();
+            mTimers.remove(timer.action);
+            editor.remove(timer.action);
+            due.add(timer.action);
+        }
+
+        // The fired system alarm is used up
+        mRegistered = 0L;
+        register(editor);
+        return due;
+    }
+
+    /* ----------------------------------------------
+     * AlarmScheduler OVERRIDES
+     * ---------------------------------------------- */
+
+    /**
+     * Cancel the stop audio timer
+     */
+    @Override
+    public void cancel() {
+        cancel(TIMER_STOP_AUDIO);
+    }
+
+    /**
+     * Schedule the stop audio timer at the given time
+     * @param time epoch unix time
+     */
+    @Override
+    public void schedule(long time) {
+        schedule(TIMER_STOP_AUDIO, time);
+    }
+
+    /* ----------------------------------------------
+     * INTERNAL CLASSES
+     * ---------------------------------------------- */
+
+    /**
+     * One pending logical timer
+     */
+    private static class Timer {
+        final String action;
+        final long sequence;
+        final long time;
+
+        Timer(String action, long time, long sequence) {
+            this.action = action;
+            this.sequence = sequence;
+            this.time = time;
+        }
+    }
+}
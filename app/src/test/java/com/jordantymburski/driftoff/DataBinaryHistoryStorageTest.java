@@ -0,0 +1,284 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.data.BinaryHistoryStorage;
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DataBinaryHistoryStorageTest {
+    /**
+     * History file under test
+     */
+    private File mFile;
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    @Before
+    public void setup() throws IOException {
+        mFile = File.createTempFile("history", ".bin");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void cleanUp() {
+        mFile.delete();
+    }
+
+    /**
+     * Records a random night, starting at the given time
+     * @param storage history to record in
+     * @param start unix epoch time the alarm is armed
+     * @return the session that should be read back
+     */
+    private SleepSession record(HistoryStorage storage, long start) {
+        final SleepSession session = new SleepSession(start,
+                mRandom.nextInt(24), mRandom.nextInt(60),
+                start + mRandom.nextInt((int) TimeUnit.HOURS.toMillis(3)),
+                mRandom.nextBoolean());
+        storage.armed(session.armedAt, session.timeHour, session.timeMinute);
+        storage.stopped(session.stoppedAt, session.cancelled);
+        return session;
+    }
+
+    /**
+     * Reads back every session in the history file with a new storage instance
+     * @return the scanned sessions, oldest first
+     */
+    private List<SleepSession> scan() {
+        final List<SleepSession> sessions = new ArrayList<>();
+        new BinaryHistoryStorage(mFile).scan(new HistoryStorage.Visitor() {
+            @Override
+            public void visit(SleepSession session) {
+                sessions.add(session);
+            }
+        });
+        return sessions;
+    }
+
+    /**
+     * Reads the full contents of the test file
+     * @return file bytes
+     * @throws IOException if the read fails
+     */
+    private byte[] readFile() throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            return bytes;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Replaces the test file contents with the first bytes of the source
+     * @param bytes source bytes
+     * @param length number of bytes to write
+     * @throws IOException if the write fails
+     */
+    private void writeFile(byte[] bytes, int length) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(scan().isEmpty());
+    }
+
+    @Test
+    public void roundTrip() {
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        final List<SleepSession> expected = new ArrayList<>();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            expected.add(record(storage, time));
+            time += TimeUnit.DAYS.toMillis(1);
+        }
+        assertEquals(expected, scan());
+
+        // Delta encoding keeps each night small
+        assertTrue(mFile.length() < 4 + 500 * 20);
+    }
+
+    @Test
+    public void reopenAppends() {
+        final long start = System.currentTimeMillis();
+        final SleepSession first = record(new BinaryHistoryStorage(mFile), start);
+        final SleepSession second = record(new BinaryHistoryStorage(mFile),
+                start + TimeUnit.DAYS.toMillis(1));
+
+        final List<SleepSession> sessions = scan();
+        assertEquals(2, sessions.size());
+        assertEquals(first, sessions.get(0));
+        assertEquals(second, sessions.get(1));
+    }
+
+    @Test
+    public void openSession() {
+        // Armed but not yet stopped, then the process restarts
+        final long armedAt = System.currentTimeMillis();
+        new BinaryHistoryStorage(mFile).armed(armedAt, 7, 15);
+        assertTrue(scan().isEmpty());
+
+        // The completed session is returned and readable
+        final long stoppedAt = armedAt + TimeUnit.MINUTES.toMillis(45);
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        final SleepSession expected = new SleepSession(armedAt, 7, 15, stoppedAt, true);
+        assertEquals(expected, storage.stopped(stoppedAt, true));
+        final List<SleepSession> sessions = scan();
+        assertEquals(1, sessions.size());
+        assertEquals(expected, sessions.get(0));
+
+        // Stopping again without arming is not a session, and writes nothing
+        final long length = mFile.length();
+        assertNull(storage.stopped(stoppedAt + 1000L, false));
+        assertNull(new BinaryHistoryStorage(mFile).stopped(stoppedAt + 2000L, false));
+        assertEquals(length, mFile.length());
+        assertEquals(1, scan().size());
+    }
+
+    @Test
+    public void checkpoint() throws IOException {
+        // Events appended after the checkpoint, such as before a crash, are still found
+        final long start = System.currentTimeMillis();
+        final List<SleepSession> expected = new ArrayList<>();
+        expected.add(record(new BinaryHistoryStorage(mFile), start));
+        final byte[] stale = readFile();
+        expected.add(record(new BinaryHistoryStorage(mFile), start + TimeUnit.DAYS.toMillis(1)));
+        final byte[] full = readFile();
+        // Put back the magic and checkpoint from before the second session
+        System.arraycopy(stale, 0, full, 0, 36);
+        writeFile(full, full.length);
+
+        expected.add(record(new BinaryHistoryStorage(mFile), start + TimeUnit.DAYS.toMillis(2)));
+        assertEquals(expected, scan());
+
+        // The open session is kept in it too
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        storage.armed(start + TimeUnit.DAYS.toMillis(3), 23, 15);
+        final SleepSession open = new SleepSession(start + TimeUnit.DAYS.toMillis(3), 23, 15,
+                start + TimeUnit.DAYS.toMillis(3) + 1000L, false);
+        assertEquals(open, new BinaryHistoryStorage(mFile).stopped(open.stoppedAt, false));
+        expected.add(open);
+        assertEquals(expected, scan());
+    }
+
+    @Test
+    public void checkpointSkipsOlderEvents() throws IOException {
+        // Damage to events before the checkpoint does not hide the tail from the next append
+        final long start = System.currentTimeMillis();
+        record(new BinaryHistoryStorage(mFile), start);
+        record(new BinaryHistoryStorage(mFile), start + TimeUnit.DAYS.toMillis(1));
+        final byte[] bytes = readFile();
+        bytes[40] = 0;
+        writeFile(bytes, bytes.length);
+
+        final long length = mFile.length();
+        new BinaryHistoryStorage(mFile).armed(start + TimeUnit.DAYS.toMillis(2), 22, 0);
+        assertTrue(mFile.length() > length);
+
+        // A damaged checkpoint falls back to reading every event, which stops at the damage
+        bytes[10] ^= 0x40;
+        writeFile(bytes, bytes.length);
+        new BinaryHistoryStorage(mFile).armed(start + TimeUnit.DAYS.toMillis(2), 22, 0);
+        assertTrue(mFile.length() < length);
+    }
+
+    @Test
+    public void appendSessions() {
+        final long start = System.currentTimeMillis();
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        final List<SleepSession> expected = new ArrayList<>();
+        expected.add(record(storage, start));
+
+        // Added in one write, after the recorded session
+        final List<SleepSession> imported = new ArrayList<>();
+        for (int i = 1; i <= 300; i++) {
+            imported.add(new SleepSession(start + TimeUnit.DAYS.toMillis(i),
+                    mRandom.nextInt(24), mRandom.nextInt(60),
+                    start + TimeUnit.DAYS.toMillis(i) + mRandom.nextInt(1000000),
+                    mRandom.nextBoolean()));
+        }
+        assertTrue(storage.appendSessions(imported));
+        expected.addAll(imported);
+        assertEquals(expected, scan());
+
+        // Recording continues from the end of them
+        expected.add(record(storage, start + TimeUnit.DAYS.toMillis(400)));
+        assertEquals(expected, scan());
+    }
+
+    @Test
+    public void appendSessionsRefusedWhileOpen() {
+        final long armedAt = System.currentTimeMillis();
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        storage.armed(armedAt, 6, 30);
+
+        final List<SleepSession> imported = new ArrayList<>();
+        imported.add(new SleepSession(1000L, 22, 0, 2000L, false));
+        assertFalse(storage.appendSessions(imported));
+
+        // The open session still pairs with its stop
+        final SleepSession expected = new SleepSession(armedAt, 6, 30, armedAt + 5000L, false);
+        assertEquals(expected, storage.stopped(armedAt + 5000L, false));
+        final List<SleepSession> sessions = scan();
+        assertEquals(1, sessions.size());
+        assertEquals(expected, sessions.get(0));
+    }
+
+    @Test
+    public void truncateEveryOffset() throws IOException {
+        // Build a history and note where each session ends
+        final BinaryHistoryStorage storage = new BinaryHistoryStorage(mFile);
+        final List<SleepSession> saved = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            saved.add(record(storage, time));
+            ends.add(mFile.length());
+            time += TimeUnit.DAYS.toMillis(1);
+        }
+        final byte[] full = readFile();
+
+        // Cut the file at every byte offset. Every fully written session is recovered
+        for (int length = 0; length <= full.length; length++) {
+            writeFile(full, length);
+
+            int complete = 0;
+            while (complete < ends.size() && ends.get(complete) <= length) {
+                complete++;
+            }
+            assertEquals("Truncated at " + length, saved.subList(0, complete), scan());
+
+            // Appending after recovery must stay readable
+            final BinaryHistoryStorage recovered = new BinaryHistoryStorage(mFile);
+            final SleepSession next = record(recovered, time);
+            final List<SleepSession> sessions = scan();
+            assertFalse("Append after " + length, sessions.isEmpty());
+            assertEquals("Append after " + length, next, sessions.get(sessions.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.data.JournalStorage;
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class DataJournalStorageTest {
+    /**
+     * Runs compactions right away on the saving thread
+     */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Never runs compactions
+     */
+    private static final Executor NEVER = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+        }
+    };
+
+    /**
+     * Default info provided by the legacy storage
+     */
+    private static final AlarmInfo LEGACY_INFO = new AlarmInfo(0L, 21, 30);
+
+    /**
+     * Journal file under test
+     */
+    private File mFile;
+
+    /**
+     * Legacy storage that only ever provides the default info
+     */
+    private final Storage mLegacy = new Storage() {
+        @Override
+        public void flush() {
+            fail("Legacy storage should not be flushed");
+        }
+
+        @Override
+        public AlarmInfo load() {
+            return LEGACY_INFO;
+        }
+
+        @Override
+        public void save(AlarmInfo info) {
+            fail("Legacy storage should not be written");
+        }
+    };
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    @Before
+    public void setup() throws IOException {
+        mFile = File.createTempFile("journal", ".bin");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void cleanUp() {
+        mFile.delete();
+    }
+
+    /**
+     * Creates a journal storage instance on the test file
+     * @param compactor compaction executor
+     * @return the journal storage
+     */
+    private JournalStorage createStorage(Executor compactor) {
+        return new JournalStorage(mFile, mLegacy, compactor);
+    }
+
+    /**
+     * Generates a random alarm info object
+     * @return the info
+     */
+    private AlarmInfo randomInfo() {
+        return new AlarmInfo(mRandom.nextLong(), mRandom.nextInt(24), mRandom.nextInt(60));
+    }
+
+    /**
+     * Reads the full contents of the test file
+     * @return file bytes
+     * @throws IOException if the read fails
+     */
+    private byte[] readFile() throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            return bytes;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Replaces the test file contents with the first bytes of the source
+     * @param bytes source bytes
+     * @param length number of bytes to write
+     * @throws IOException if the write fails
+     */
+    private void writeFile(byte[] bytes, int length) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void loadDefault() {
+        assertEquals(LEGACY_INFO, createStorage(NEVER).load());
+    }
+
+    @Test
+    public void setValue() {
+        final JournalStorage storage = createStorage(NEVER);
+        final AlarmInfo info = randomInfo();
+        storage.save(info);
+        assertEquals(info, storage.load());
+
+        final AlarmInfo info2 = randomInfo();
+        storage.save(info2);
+        assertEquals(info2, storage.load());
+        assertEquals(info2, createStorage(NEVER).load());
+    }
+
+    @Test
+    public void truncateEveryOffset() throws IOException {
+        // Build a journal and note where each record ends
+        final JournalStorage storage = createStorage(NEVER);
+        final List<AlarmInfo> saved = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final AlarmInfo info = randomInfo();
+            storage.save(info);
+            saved.add(info);
+            ends.add(mFile.length());
+        }
+        final byte[] full = readFile();
+
+        // Cut the journal at every byte offset. The last fully written record is recovered
+        for (int length = 0; length <= full.length; length++) {
+            writeFile(full, length);
+
+            AlarmInfo expected = LEGACY_INFO;
+            for (int i = 0; i < ends.size() && ends.get(i) <= length; i++) {
+                expected = saved.get(i);
+            }
+            final JournalStorage recovered = createStorage(NEVER);
+            assertEquals("Truncated at " + length, expected, recovered.load());
+
+            // Appending after recovery must stay readable
+            final AlarmInfo next = randomInfo();
+            recovered.save(next);
+            assertEquals("Append after " + length, next, createStorage(NEVER).load());
+        }
+    }
+
+    @Test
+    public void corruptRecord() throws IOException {
+        final JournalStorage storage = createStorage(NEVER);
+        final AlarmInfo info = randomInfo();
+        storage.save(info);
+        final long validEnd = mFile.length();
+        storage.save(randomInfo());
+        storage.save(randomInfo());
+
+        // Flip a byte in the second record. Everything from it onwards is discarded
+        final byte[] bytes = readFile();
+        bytes[(int) validEnd + 3] ^= 0x40;
+        writeFile(bytes, bytes.length);
+
+        assertEquals(info, createStorage(NEVER).load());
+        assertEquals(validEnd, mFile.length());
+    }
+
+    @Test
+    public void flush() {
+        final JournalStorage storage = createStorage(NEVER);
+        final AlarmInfo info = randomInfo();
+        storage.save(info);
+        storage.flush();
+        assertEquals(info, createStorage(NEVER).load());
+    }
+
+    @Test
+    public void fallbackDeletesJournal() {
+        // A directory in place of the journal can not be opened
+        assertTrue(mFile.mkdir());
+        final List<AlarmInfo> legacySaves = new ArrayList<>();
+        final JournalStorage storage = new JournalStorage(mFile, new Storage() {
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public AlarmInfo load() {
+                return LEGACY_INFO;
+            }
+
+            @Override
+            public void save(AlarmInfo info) {
+                legacySaves.add(info);
+            }
+        }, NEVER);
+
+        // The legacy storage takes over and the journal is removed, so it can not win later
+        assertEquals(LEGACY_INFO, storage.load());
+        final AlarmInfo info = randomInfo();
+        storage.save(info);
+        assertEquals(1, legacySaves.size());
+        assertEquals(info, legacySaves.get(0));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void compaction() {
+        final JournalStorage storage = createStorage(DIRECT);
+        AlarmInfo info = null;
+        for (int i = 0; i < 1000; i++) {
+            info = randomInfo();
+            storage.save(info);
+        }
+
+        // Bounded file and the latest value survives
+        assertTrue(mFile.length() < 64 * 21 + 1);
+        assertEquals(info, storage.load());
+        assertEquals(info, createStorage(NEVER).load());
+
+        // Appends still work after the journal was replaced
+        final AlarmInfo next = randomInfo();
+        storage.save(next);
+        assertEquals(next, createStorage(NEVER).load());
+    }
+}
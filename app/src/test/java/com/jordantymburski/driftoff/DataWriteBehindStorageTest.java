@@ -0,0 +1,144 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.data.WriteBehindStorage;
+import com.jordantymburski.driftoff.domain.adapter.Storage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DataWriteBehindStorageTest {
+    /**
+     * Storage that blocks each save until released and records every call
+     */
+    private static class SlowStorage implements Storage {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        volatile AlarmInfo saved = new AlarmInfo(0L, 21, 30);
+        volatile CountDownLatch release = new CountDownLatch(0);
+        volatile int failSaves;
+
+        @Override
+        public void flush() {
+            calls.add("flush");
+        }
+
+        @Override
+        public AlarmInfo load() {
+            return saved;
+        }
+
+        @Override
+        public void save(AlarmInfo info) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failSaves > 0) {
+                failSaves--;
+                throw new IllegalStateException("Failed save");
+            }
+            saved = info;
+            calls.add("save " + info.timeHour);
+        }
+    }
+
+    @Test
+    public void saveDoesNotBlock() throws InterruptedException {
+        final SlowStorage delegate = new SlowStorage();
+        delegate.release = new CountDownLatch(1);
+        final WriteBehindStorage storage = new WriteBehindStorage(delegate);
+
+        // Save returns while the delegate is still blocked, and loads see it right away
+        final AlarmInfo info = new AlarmInfo(1L, 5, 10);
+        final long start = System.nanoTime();
+        storage.save(info);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(info, storage.load());
+
+        // Not durable until the delegate finishes
+        assertFalse(storage.awaitDurable(100, TimeUnit.MILLISECONDS));
+        delegate.release.countDown();
+        assertTrue(storage.awaitDurable(5, TimeUnit.SECONDS));
+        assertEquals(info, delegate.saved);
+        assertEquals(info, storage.load());
+    }
+
+    @Test
+    public void survivesFailure() throws InterruptedException {
+        final SlowStorage delegate = new SlowStorage();
+        delegate.failSaves = 1;
+        delegate.release = new CountDownLatch(1);
+        final WriteBehindStorage storage = new WriteBehindStorage(delegate);
+
+        // The failure is reported to the waiter, and the info is still buffered
+        final AlarmInfo info = new AlarmInfo(1L, 5, 10);
+        storage.save(info);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delegate.release.countDown();
+            }
+        }).start();
+        final long start = System.nanoTime();
+        assertFalse(storage.awaitDurable(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(info, storage.load());
+        assertTrue(delegate.calls.isEmpty());
+
+        // The writer is still alive, and writes it on the next request
+        assertTrue(storage.awaitDurable(5, TimeUnit.SECONDS));
+        assertEquals(info, delegate.saved);
+
+        // Later saves are written as usual
+        final AlarmInfo info2 = new AlarmInfo(2L, 6, 20);
+        storage.save(info2);
+        assertTrue(storage.awaitDurable(5, TimeUnit.SECONDS));
+        assertEquals(info2, delegate.saved);
+    }
+
+    @Test
+    public void latestWins() throws InterruptedException {
+        final SlowStorage delegate = new SlowStorage();
+        delegate.release = new CountDownLatch(1);
+        final WriteBehindStorage storage = new WriteBehindStorage(delegate);
+
+        // First save holds the writer. Later ones are buffered and collapse to the latest
+        storage.save(new AlarmInfo(1L, 1, 0));
+        Thread.sleep(50);
+        for (int hour = 2; hour <= 10; hour++) {
+            storage.save(new AlarmInfo(1L, hour, 0));
+        }
+        assertEquals(10, storage.load().timeHour);
+
+        delegate.release.countDown();
+        storage.flush();
+        assertEquals(10, delegate.saved.timeHour);
+        assertTrue(delegate.calls.size() <= 3);
+        assertEquals("flush", delegate.calls.get(delegate.calls.size() - 1));
+    }
+
+    @Test
+    public void flushWithoutSaves() throws InterruptedException {
+        final SlowStorage delegate = new SlowStorage();
+        final WriteBehindStorage storage = new WriteBehindStorage(delegate);
+
+        // Nothing saved, nothing to wait on
+        assertTrue(storage.awaitDurable(0, TimeUnit.MILLISECONDS));
+        storage.flush();
+        assertTrue(delegate.calls.isEmpty());
+        assertEquals(delegate.saved, storage.load());
+    }
+}
@@ -0,0 +1,156 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DomainCompletionTest {
+    /**
+     * Creates a listener that counts its runs
+     * @param count the counter
+     * @return the listener
+     */
+    private static Runnable counter(final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void complete() throws InterruptedException {
+        final Completion completion = new Completion();
+        final AtomicInteger count = new AtomicInteger();
+        completion.whenDone(counter(count));
+        assertFalse(completion.isDone());
+        assertFalse(completion.await(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, count.get());
+
+        // Listeners run once, even if completed twice
+        completion.complete();
+        completion.complete();
+        assertTrue(completion.isDone());
+        assertTrue(completion.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, count.get());
+
+        // Late listeners run right away
+        completion.whenDone(counter(count));
+        assertEquals(2, count.get());
+        assertTrue(Completion.done().isDone());
+    }
+
+    @Test
+    public void all() {
+        final Completion a = new Completion();
+        final Completion b = new Completion();
+        final Completion all = Completion.all(Arrays.asList(a, b, Completion.done()));
+        a.complete();
+        assertFalse(all.isDone());
+        b.complete();
+        assertTrue(all.isDone());
+        assertTrue(Completion.all(Collections.<Completion>emptyList()).isDone());
+    }
+
+    @Test
+    public void allFailure() {
+        final Completion a = new Completion();
+        final Completion b = new Completion();
+        final Completion all = Completion.all(Arrays.asList(a, b));
+        final IllegalStateException error = new IllegalStateException("Failed step");
+        a.fail(error);
+        assertFalse(all.isDone());
+        b.complete();
+        assertTrue(all.isDone());
+        assertSame(error, all.getError());
+        assertNull(b.getError());
+    }
+
+    @Test
+    public void allFailureRace() throws InterruptedException {
+        // Failed on the executor while the combined handle is listening
+        final DomainExecutor executor = new DomainExecutor();
+        final IllegalStateException error = new IllegalStateException("Failed step");
+        for (int i = 0; i < 1000; i++) {
+            final Completion completion = new Completion();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    completion.fail(error);
+                }
+            });
+            final Completion all = Completion.all(Collections.singletonList(completion));
+            assertTrue(all.await(5, TimeUnit.SECONDS));
+            assertSame(error, all.getError());
+        }
+    }
+
+    @Test
+    public void submit() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor();
+
+        // A command that completes, with its latency
+        final Completion success = executor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(success.getLatency(TimeUnit.NANOSECONDS) < 0L);
+        assertTrue(success.await(5, TimeUnit.SECONDS));
+        assertNull(success.getError());
+        assertTrue(success.getLatency(TimeUnit.MILLISECONDS) >= 20L);
+
+        // A command that fails, with the worker carrying on
+        final IllegalStateException error = new IllegalStateException("Failing command");
+        final Completion failure = executor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+                throw error;
+            }
+        });
+        assertTrue(failure.await(5, TimeUnit.SECONDS));
+        assertSame(error, failure.getError());
+        assertTrue(executor.submitUi(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void crossThread() throws InterruptedException {
+        // Completed on the executor while other threads wait and listen
+        final DomainExecutor executor = new DomainExecutor();
+        final List<Completion> completions = new ArrayList<>();
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            final Completion completion = new Completion();
+            completions.add(completion);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    completion.complete();
+                }
+            });
+            completion.whenDone(counter(count));
+        }
+        assertTrue(Completion.all(completions).await(5, TimeUnit.SECONDS));
+        assertEquals(50, count.get());
+    }
+}
@@ -0,0 +1,192 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.executor.Completion;
+import com.jordantymburski.driftoff.domain.executor.DomainExecutor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DomainExecutorTest {
+    /**
+     * Creates a command that blocks the worker until the returned latch is released
+     * @param executor the executor to block
+     * @return the latch to count down to release the worker
+     */
+    private CountDownLatch block(DomainExecutor executor) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.executeUi(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    /**
+     * Creates a command that records the given value
+     * @param order the shared record list
+     * @param value value to record
+     * @return the command
+     */
+    private Runnable record(final List<Integer> order, final int value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void fifoOrder() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 50; i++) {
+            executor.executeUi(record(order, i));
+        }
+        executor.executeUi(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(50, order.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void uiPriority() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // Hold the worker so both tiers fill up before anything runs
+        final CountDownLatch release = block(executor);
+        executor.execute(record(order, 10));
+        executor.execute(record(order, 11));
+        executor.executeUi(record(order, 0));
+        executor.executeUi(record(order, 1));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(4, order.size());
+        assertEquals(0, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(10, (int) order.get(2));
+        assertEquals(11, (int) order.get(3));
+    }
+
+    @Test
+    public void bounded() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor(2);
+        final CountDownLatch release = block(executor);
+
+        assertTrue(executor.executeUi(record(new ArrayList<Integer>(), 0)));
+        assertTrue(executor.executeUi(record(new ArrayList<Integer>(), 1)));
+
+        // A full tier drops the command without throwing
+        assertFalse(executor.executeUi(record(new ArrayList<Integer>(), 2)));
+        final Completion dropped = executor.submitUi(record(new ArrayList<Integer>(), 3));
+        assertTrue(dropped.isDone());
+        assertTrue(dropped.getError() instanceof RejectedExecutionException);
+
+        // The background tier is bounded separately and still has room
+        assertTrue(executor.offer(record(new ArrayList<Integer>(), 4)));
+        assertTrue(executor.offer(record(new ArrayList<Integer>(), 5)));
+        assertFalse(executor.offer(record(new ArrayList<Integer>(), 6)));
+
+        release.countDown();
+    }
+
+    @Test
+    public void schedule() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // Later due times run later, regardless of submission order
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                order.add(2);
+                done.countDown();
+            }
+        }, 300, TimeUnit.MILLISECONDS);
+        executor.schedule(record(order, 1), 100, TimeUnit.MILLISECONDS);
+        executor.execute(record(order, 0));
+
+        Thread.sleep(50);
+        assertEquals(1, order.size());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, order.size());
+        assertEquals(0, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(2, (int) order.get(2));
+    }
+
+    @Test
+    public void survivesFailure() throws InterruptedException {
+        final DomainExecutor executor = new DomainExecutor();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // Failures are logged, never passed on to the handler that would kill the process
+        final AtomicInteger uncaught = new AtomicInteger();
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaught.incrementAndGet();
+            }
+        });
+
+        executor.executeUi(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Failing command");
+            }
+        });
+        executor.executeUi(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        try {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, uncaught.get());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+}
@@ -4,16 +4,37 @@ import com.jordantymburski.driftoff.domain.model.AlarmInfo;
 
 import org.junit.Test;
 
+import java.lang.reflect.Method;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
 public class DomainModelAlarmInfoTest {
+    /**
+     * Fixed time source: June 15, 2019, 22:10 in Toronto
+     */
+    private final VirtualTimeSource mTimeSource = new VirtualTimeSource(
+            1560651000000L, TimeZone.getTimeZone("America/Toronto"));
+
+    /**
+     * Creates a calendar at the current virtual time
+     * @return the calendar
+     */
+    private Calendar now() {
+        final Calendar calendar = Calendar.getInstance(mTimeSource.getTimeZone());
+        calendar.setTimeInMillis(mTimeSource.currentTimeMillis());
+        return calendar;
+    }
+
     @Test
     public void constructorSimple() {
-        final long alarmTime = new Date().getTime();
+        final long alarmTime = mTimeSource.currentTimeMillis();
         final int timeHour = 14;
         final int timeMinute = 45;
         final AlarmInfo info = new AlarmInfo(alarmTime, timeHour, timeMinute);
@@ -32,7 +53,7 @@ public class DomainModelAlarmInfoTest {
 
     @Test
     public void constructorModifyAlarm() {
-        final AlarmInfo baseInfo = new AlarmInfo(new Date().getTime(), 8, 21);
+        final AlarmInfo baseInfo = new AlarmInfo(mTimeSource.currentTimeMillis(), 8, 21);
 
         final long modifiedAlarm = 40000L;
         final AlarmInfo modifiedInfo = new AlarmInfo(baseInfo, modifiedAlarm);
@@ -49,7 +70,7 @@ public class DomainModelAlarmInfoTest {
 
     @Test
     public void constructorModifyTime() {
-        final AlarmInfo baseInfo = new AlarmInfo(new Date().getTime(), 21, 8);
+        final AlarmInfo baseInfo = new AlarmInfo(mTimeSource.currentTimeMillis(), 21, 8);
 
         final int modifiedTimeHour = 4;
         final int modifiedTimeMinute = 59;
@@ -68,15 +89,90 @@ public class DomainModelAlarmInfoTest {
         assertEquals(modifiedTimeMinute2, modifiedInfo2.timeMinute);
     }
 
+    @Test
+    public void factory() {
+        // Inactive alarms are shared per setpoint
+        final AlarmInfo reset = AlarmInfo.of(0L, 22, 15);
+        assertSame(reset, AlarmInfo.of(0L, 22, 15));
+        assertEquals(new AlarmInfo(0L, 22, 15), reset);
+        assertNotSame(reset, AlarmInfo.of(0L, 22, 16));
+
+        // Active alarms are not
+        final long alarmTime = mTimeSource.currentTimeMillis();
+        final AlarmInfo active = AlarmInfo.of(reset, alarmTime);
+        assertEquals(new AlarmInfo(alarmTime, 22, 15), active);
+        assertNotSame(active, AlarmInfo.of(alarmTime, 22, 15));
+
+        // Modifications return the shared, or existing if nothing changed
+        assertSame(reset, AlarmInfo.of(active, 0L));
+        assertSame(active, AlarmInfo.of(active, alarmTime));
+        assertSame(active, AlarmInfo.of(active, 22, 15));
+        assertSame(AlarmInfo.of(0L, 6, 0), AlarmInfo.of(reset, 6, 0));
+
+        // Out of range setpoints still work, unshared
+        assertEquals(new AlarmInfo(0L, 25, -4), AlarmInfo.of(0L, 25, -4));
+    }
+
+    @Test
+    public void factoryAllocation() throws ReflectiveOperationException {
+        // Per thread allocation counter of the JVM running the test, if it has one
+        Object threadBean = null;
+        Method allocatedBytes = null;
+        try {
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ClassNotFoundException e) {
+            // Only the distinct instance count is checked
+        }
+        final long threadId = Thread.currentThread().getId();
+        final int rounds = 100000;
+
+        // Time changes and resets through the factory only see one instance per setpoint
+        final Set<AlarmInfo> distinct = Collections.newSetFromMap(
+                new IdentityHashMap<AlarmInfo, Boolean>());
+        AlarmInfo info = AlarmInfo.of(0L, 0, 0);
+        for (int i = 0; i < rounds; i++) {
+            info = AlarmInfo.of(info, (i / 60) % 24, i % 60);
+            distinct.add(info);
+        }
+        assertEquals(24 * 60, distinct.size());
+
+        // Compare the bytes allocated by the same churn with and without the factory
+        if (allocatedBytes != null) {
+            long start = (Long) allocatedBytes.invoke(threadBean, threadId);
+            for (int i = 0; i < rounds; i++) {
+                info = new AlarmInfo(info, (i / 60) % 24, i % 60);
+            }
+            final long constructed = (Long) allocatedBytes.invoke(threadBean, threadId) - start;
+
+            start = (Long) allocatedBytes.invoke(threadBean, threadId);
+            for (int i = 0; i < rounds; i++) {
+                info = AlarmInfo.of(info, (i / 60) % 24, i % 60);
+            }
+            final long shared = (Long) allocatedBytes.invoke(threadBean, threadId) - start;
+
+            assertTrue("constructor " + constructed + " bytes, factory " + shared + " bytes",
+                    shared < constructed / 10);
+        }
+    }
+
     @Test
     public void objectCompare() {
-        final long alarmTime = new Date().getTime();
+        final long alarmTime = mTimeSource.currentTimeMillis();
         final int timeHour = 7;
         final int timeMinute = 34;
 
         final AlarmInfo info1 = new AlarmInfo(alarmTime, timeHour, timeMinute);
         final AlarmInfo info2 = new AlarmInfo(alarmTime, timeHour, timeMinute);
         assertEquals(info1, info2);
+        assertEquals(info1.hashCode(), info2.hashCode());
+
+        // Usable as a set key
+        final Set<AlarmInfo> set = new HashSet<>();
+        assertTrue(set.add(info1));
+        assertFalse(set.add(info2));
 
         // Mod just the alarm value
         final AlarmInfo info2ModAlarm = new AlarmInfo(alarmTime + 1, timeHour, timeMinute);
@@ -95,70 +191,140 @@ public class DomainModelAlarmInfoTest {
     @Test
     public void getHoursTillAlarm() {
         // Now
-        final AlarmInfo nowInfo = new AlarmInfo(new Date().getTime(), 15, 14);
-        assertEquals(0L, nowInfo.getHoursTillAlarm());
+        final AlarmInfo nowInfo = new AlarmInfo(mTimeSource.currentTimeMillis(), 15, 14);
+        assertEquals(0L, nowInfo.getHoursTillAlarm(mTimeSource));
 
         // Just past
         final AlarmInfo pastInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() - TimeUnit.MINUTES.toMillis(1));
-        assertEquals(0L, pastInfo.getHoursTillAlarm());
+                mTimeSource.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+        assertEquals(0L, pastInfo.getHoursTillAlarm(mTimeSource));
 
         // Almost here
         final AlarmInfo almostInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.MINUTES.toMillis(1));
-        assertEquals(1L, almostInfo.getHoursTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        assertEquals(1L, almostInfo.getHoursTillAlarm(mTimeSource));
 
         // Exactly 1 hour
         final AlarmInfo exactlyHourInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.HOURS.toMillis(1));
-        assertEquals(1L, exactlyHourInfo.getHoursTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        assertEquals(1L, exactlyHourInfo.getHoursTillAlarm(mTimeSource));
 
         // Just over 1 hour
         final AlarmInfo overHourInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.HOURS.toMillis(1) + 1);
-        assertEquals(2L, overHourInfo.getHoursTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.HOURS.toMillis(1) + 1);
+        assertEquals(2L, overHourInfo.getHoursTillAlarm(mTimeSource));
 
         // Much larger value
         final AlarmInfo farAwayInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.HOURS.toMillis(24));
-        assertEquals(24L, farAwayInfo.getHoursTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.HOURS.toMillis(24));
+        assertEquals(24L, farAwayInfo.getHoursTillAlarm(mTimeSource));
+    }
+
+    /**
+     * The remaining time as displayed: hours while over 1 hour, minutes otherwise
+     * @param info alarm info
+     * @return negative hours or positive minutes, so the two never compare equal
+     */
+    private long displayed(AlarmInfo info) {
+        final long hours = info.getHoursTillAlarm(mTimeSource);
+        return hours > 1 ? -hours : info.getMinutesTillAlarm(mTimeSource);
+    }
+
+    @Test
+    public void getMillisTillRemainingChange() {
+        final long now = mTimeSource.currentTimeMillis();
+        final long hour = TimeUnit.HOURS.toMillis(1);
+        final long minute = TimeUnit.MINUTES.toMillis(1);
+
+        // Not in the future
+        assertEquals(0L, new AlarmInfo(now, 15, 14).getMillisTillRemainingChange(mTimeSource));
+        assertEquals(0L, new AlarmInfo(now - minute, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+
+        // Hours, then minutes from the last hour
+        assertEquals(10 * minute, new AlarmInfo(now + 2 * hour + 10 * minute, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+        assertEquals(hour, new AlarmInfo(now + 3 * hour, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+        assertEquals(1L, new AlarmInfo(now + hour + 1, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+        assertEquals(minute, new AlarmInfo(now + hour, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+        assertEquals(30000L, new AlarmInfo(now + 30000L, 15, 14)
+                .getMillisTillRemainingChange(mTimeSource));
+
+        // Walk an 8 hour countdown: the text holds until each refresh and changes at it
+        final AlarmInfo info = new AlarmInfo(now + 8 * hour - 12345L, 15, 14);
+        int refreshes = 0;
+        while (info.isActive(mTimeSource)) {
+            final long before = displayed(info);
+            final long delay = info.getMillisTillRemainingChange(mTimeSource);
+            assertTrue(delay > 0L);
+            mTimeSource.advance(delay - 1, TimeUnit.MILLISECONDS);
+            assertEquals(before, displayed(info));
+            mTimeSource.advance(1, TimeUnit.MILLISECONDS);
+            assertNotEquals(before, displayed(info));
+            refreshes++;
+        }
+
+        // 7 hour changes and 60 minute changes, instead of a refresh every 30 seconds
+        assertEquals(7 + 60, refreshes);
     }
 
     @Test
     public void getMinutesTillAlarm() {
         // Now
-        final AlarmInfo nowInfo = new AlarmInfo(new Date().getTime(), 15, 14);
-        assertEquals(0L, nowInfo.getMinutesTillAlarm());
+        final AlarmInfo nowInfo = new AlarmInfo(mTimeSource.currentTimeMillis(), 15, 14);
+        assertEquals(0L, nowInfo.getMinutesTillAlarm(mTimeSource));
 
         // Just past
         final AlarmInfo pastInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() - TimeUnit.SECONDS.toMillis(1));
-        assertEquals(0L, pastInfo.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() - TimeUnit.SECONDS.toMillis(1));
+        assertEquals(0L, pastInfo.getMinutesTillAlarm(mTimeSource));
 
         // More than just past
         final AlarmInfo pastInfoMore = new AlarmInfo(nowInfo,
-                new Date().getTime() - TimeUnit.MINUTES.toMillis(1));
-        assertEquals(0L, pastInfoMore.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+        assertEquals(0L, pastInfoMore.getMinutesTillAlarm(mTimeSource));
 
         // Almost here
         final AlarmInfo almostInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.SECONDS.toMillis(1));
-        assertEquals(1L, almostInfo.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1));
+        assertEquals(1L, almostInfo.getMinutesTillAlarm(mTimeSource));
 
         // Exactly 1 minute
         final AlarmInfo exactlyMinInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.MINUTES.toMillis(1));
-        assertEquals(1L, exactlyMinInfo.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        assertEquals(1L, exactlyMinInfo.getMinutesTillAlarm(mTimeSource));
 
         // Just over 1 minute
         final AlarmInfo overHourInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.MINUTES.toMillis(1) + 1);
-        assertEquals(2L, overHourInfo.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1) + 1);
+        assertEquals(2L, overHourInfo.getMinutesTillAlarm(mTimeSource));
 
         // Much larger value
         final AlarmInfo farAwayInfo = new AlarmInfo(nowInfo,
-                new Date().getTime() + TimeUnit.MINUTES.toMillis(60));
-        assertEquals(60L, farAwayInfo.getMinutesTillAlarm());
+                mTimeSource.currentTimeMillis() + TimeUnit.MINUTES.toMillis(60));
+        assertEquals(60L, farAwayInfo.getMinutesTillAlarm(mTimeSource));
+    }
+
+    @Test
+    public void getSecondsTillAlarm() {
+        final long now = mTimeSource.currentTimeMillis();
+        final AlarmInfo nowInfo = new AlarmInfo(now, 15, 14);
+
+        // Now and past
+        assertEquals(0L, nowInfo.getSecondsTillAlarm(mTimeSource));
+        assertEquals(0L, new AlarmInfo(nowInfo, now - 1).getSecondsTillAlarm(mTimeSource));
+
+        // Rounded up to the next second
+        assertEquals(1L, new AlarmInfo(nowInfo, now + 1).getSecondsTillAlarm(mTimeSource));
+        assertEquals(1L, new AlarmInfo(nowInfo, now + 1000).getSecondsTillAlarm(mTimeSource));
+        assertEquals(2L, new AlarmInfo(nowInfo, now + 1001).getSecondsTillAlarm(mTimeSource));
+
+        // The whole final minute
+        assertEquals(60L, new AlarmInfo(nowInfo, now + TimeUnit.MINUTES.toMillis(1))
+                .getSecondsTillAlarm(mTimeSource));
     }
 
     @Test
@@ -167,31 +333,31 @@ public class DomainModelAlarmInfoTest {
         final int randomHour = 13;
         final int randomMinute = 49;
         final AlarmInfo randomInfo = new AlarmInfo(0L, randomHour, randomMinute);
-        final Calendar randomGen = randomInfo.getTime();
+        final Calendar randomGen = randomInfo.getTime(mTimeSource);
         assertEquals(randomHour, randomGen.get(Calendar.HOUR_OF_DAY));
         assertEquals(randomMinute, randomGen.get(Calendar.MINUTE));
         assertEquals(0, randomGen.get(Calendar.SECOND));
 
         // 1 minute ahead of now
-        final Calendar plusOne = Calendar.getInstance();
+        final Calendar plusOne = now();
         plusOne.add(Calendar.MINUTE, 1);
         final AlarmInfo plusOneInfo = new AlarmInfo(
                 0L, plusOne.get(Calendar.HOUR_OF_DAY), plusOne.get(Calendar.MINUTE));
-        final Calendar plusOneGen = plusOneInfo.getTime();
+        final Calendar plusOneGen = plusOneInfo.getTime(mTimeSource);
         assertTrue(plusOneGen.getTimeInMillis()
-                > Calendar.getInstance().getTimeInMillis());
+                > now().getTimeInMillis());
         assertEquals(plusOne.get(Calendar.HOUR_OF_DAY), plusOneGen.get(Calendar.HOUR_OF_DAY));
         assertEquals(plusOne.get(Calendar.MINUTE), plusOneGen.get(Calendar.MINUTE));
         assertEquals(0, plusOneGen.get(Calendar.SECOND));
 
         // 1 minute behind now
-        final Calendar minusOne = Calendar.getInstance();
+        final Calendar minusOne = now();
         minusOne.add(Calendar.MINUTE, -1);
         final AlarmInfo minusOneInfo = new AlarmInfo(
                 0L, minusOne.get(Calendar.HOUR_OF_DAY), minusOne.get(Calendar.MINUTE));
-        final Calendar minusOneGen = minusOneInfo.getTime();
+        final Calendar minusOneGen = minusOneInfo.getTime(mTimeSource);
         assertTrue(minusOneGen.getTimeInMillis()
-                > Calendar.getInstance().getTimeInMillis());
+                > now().getTimeInMillis());
         assertEquals(minusOne.get(Calendar.HOUR_OF_DAY), minusOneGen.get(Calendar.HOUR_OF_DAY));
         assertEquals(minusOne.get(Calendar.MINUTE), minusOneGen.get(Calendar.MINUTE));
         assertEquals(0, minusOneGen.get(Calendar.SECOND));
@@ -203,46 +369,49 @@ public class DomainModelAlarmInfoTest {
         final int randomHour = 13;
         final int randomMinute = 49;
         final AlarmInfo randomInfo = new AlarmInfo(0L, randomHour, randomMinute);
-        assertEquals(randomInfo.getTime().getTimeInMillis(), randomInfo.getTimeInMillis());
+        assertEquals(randomInfo.getTime(mTimeSource).getTimeInMillis(),
+                randomInfo.getTimeInMillis(mTimeSource));
 
         // 1 minute ahead of now
-        final Calendar plusOne = Calendar.getInstance();
+        final Calendar plusOne = now();
         plusOne.add(Calendar.MINUTE, 1);
         final AlarmInfo plusOneInfo = new AlarmInfo(
                 0L, plusOne.get(Calendar.HOUR_OF_DAY), plusOne.get(Calendar.MINUTE));
-        assertEquals(plusOneInfo.getTime().getTimeInMillis(), plusOneInfo.getTimeInMillis());
+        assertEquals(plusOneInfo.getTime(mTimeSource).getTimeInMillis(),
+                plusOneInfo.getTimeInMillis(mTimeSource));
 
         // 1 minute behind now
-        final Calendar minusOne = Calendar.getInstance();
+        final Calendar minusOne = now();
         minusOne.add(Calendar.MINUTE, -1);
         final AlarmInfo minusOneInfo = new AlarmInfo(
                 0L, minusOne.get(Calendar.HOUR_OF_DAY), minusOne.get(Calendar.MINUTE));
-        assertEquals(minusOneInfo.getTime().getTimeInMillis(), minusOneInfo.getTimeInMillis());
+        assertEquals(minusOneInfo.getTime(mTimeSource).getTimeInMillis(),
+                minusOneInfo.getTimeInMillis(mTimeSource));
     }
 
     @Test
     public void isActive() {
         // Reset
         final AlarmInfo resetInfo = new AlarmInfo(0L, 14, 44);
-        assertFalse(resetInfo.isActive());
+        assertFalse(resetInfo.isActive(mTimeSource));
 
         // 1 minute ahead of now
-        final Calendar plusOne = Calendar.getInstance();
+        final Calendar plusOne = now();
         plusOne.add(Calendar.MINUTE, 1);
         final AlarmInfo plusOneInfo = new AlarmInfo(plusOne.getTimeInMillis(),
                 plusOne.get(Calendar.HOUR_OF_DAY), plusOne.get(Calendar.MINUTE));
-        assertTrue(plusOneInfo.isActive());
+        assertTrue(plusOneInfo.isActive(mTimeSource));
 
         // 1 minute behind now
-        final Calendar minusOne = Calendar.getInstance();
+        final Calendar minusOne = now();
         minusOne.add(Calendar.MINUTE, -1);
         final AlarmInfo minusOneInfo = new AlarmInfo(minusOne.getTimeInMillis(),
                 minusOne.get(Calendar.HOUR_OF_DAY), minusOne.get(Calendar.MINUTE));
-        assertFalse(minusOneInfo.isActive());
+        assertFalse(minusOneInfo.isActive(mTimeSource));
 
         // Random
-        final AlarmInfo randomInfo = new AlarmInfo(resetInfo.getTimeInMillis(),
+        final AlarmInfo randomInfo = new AlarmInfo(resetInfo.getTimeInMillis(mTimeSource),
                 resetInfo.timeHour, resetInfo.timeMinute);
-        assertTrue(randomInfo.isActive());
+        assertTrue(randomInfo.isActive(mTimeSource));
     }
 }
@@ -0,0 +1,53 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.PackedAlarmInfo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DomainModelPackedAlarmInfoBenchmark {
+    private static final long MAX_ALARM = (1L << 42) - 1;
+    private static final int BENCHMARK_ROUNDS = 10000000;
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    @Test
+    public void packAndUnpack() {
+        final AlarmInfo[] infos = new AlarmInfo[1024];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = new AlarmInfo(mRandom.nextLong() & MAX_ALARM,
+                    mRandom.nextInt(24), mRandom.nextInt(60));
+        }
+        long sink = 0L;
+
+        // Warm up
+        for (int i = 0; i < BENCHMARK_ROUNDS / 10; i++) {
+            sink += PackedAlarmInfo.unpack(PackedAlarmInfo.pack(infos[i & 1023], 1)).alarm;
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            sink += PackedAlarmInfo.pack(infos[i & 1023], i & PackedAlarmInfo.MAX_VERSION);
+        }
+        final long packTime = System.nanoTime() - begin;
+
+        final long packed = PackedAlarmInfo.pack(infos[0], 1);
+        begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            sink += PackedAlarmInfo.unpack(packed + (i & 1023)).timeMinute;
+        }
+        final long unpackTime = System.nanoTime() - begin;
+
+        assertNotEquals(0L, sink);
+        System.out.println("PackedAlarmInfo " + BENCHMARK_ROUNDS + " calls: pack "
+                + (double) packTime / BENCHMARK_ROUNDS + " ns/op, unpack "
+                + (double) unpackTime / BENCHMARK_ROUNDS + " ns/op");
+    }
+}
@@ -0,0 +1,120 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.PackedAlarmInfo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DomainModelPackedAlarmInfoTest {
+    private static final long MAX_ALARM = (1L << 42) - 1;
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Packs and unpacks the info and checks every field survives
+     * @param info alarm info in range
+     * @param version version in range
+     */
+    private static void assertRoundTrip(AlarmInfo info, int version) {
+        final long packed = PackedAlarmInfo.pack(info, version);
+        assertEquals(info, PackedAlarmInfo.unpack(packed));
+        assertEquals(info.alarm, PackedAlarmInfo.alarm(packed));
+        assertEquals(info.timeHour * 60 + info.timeMinute, PackedAlarmInfo.setpoint(packed));
+        assertEquals(version, PackedAlarmInfo.version(packed));
+        assertTrue(PackedAlarmInfo.matches(packed, info));
+    }
+
+    @Test
+    public void roundTripBounds() {
+        for (long alarm : new long[] { 0L, 1L, System.currentTimeMillis(), MAX_ALARM }) {
+            for (int version : new int[] { 0, 1, PackedAlarmInfo.MAX_VERSION }) {
+                assertRoundTrip(new AlarmInfo(alarm, 0, 0), version);
+                assertRoundTrip(new AlarmInfo(alarm, 23, 59), version);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripRandom() {
+        for (int i = 0; i < 100000; i++) {
+            final long alarm = mRandom.nextLong() & MAX_ALARM;
+            assertRoundTrip(new AlarmInfo(alarm, mRandom.nextInt(24), mRandom.nextInt(60)),
+                    mRandom.nextInt(PackedAlarmInfo.MAX_VERSION + 1));
+        }
+    }
+
+    @Test
+    public void normalize() {
+        // Infos in range are kept as they are
+        final AlarmInfo info = new AlarmInfo(System.currentTimeMillis(), 7, 34);
+        assertSame(info, PackedAlarmInfo.normalize(info));
+
+        // Out of range alarms become inactive and setpoints are clamped to the day
+        assertEquals(new AlarmInfo(0L, 23, 59),
+                PackedAlarmInfo.normalize(new AlarmInfo(-1L, 24, 60)));
+        assertEquals(new AlarmInfo(0L, 0, 0),
+                PackedAlarmInfo.normalize(new AlarmInfo(MAX_ALARM + 1, -1, -1)));
+        assertEquals(new AlarmInfo(info.alarm, 23, 0),
+                PackedAlarmInfo.normalize(new AlarmInfo(info.alarm, 30, 0)));
+        assertTrue(PackedAlarmInfo.canPack(
+                PackedAlarmInfo.normalize(new AlarmInfo(Long.MIN_VALUE, Integer.MAX_VALUE, 0))));
+    }
+
+    @Test
+    public void distinct() {
+        // Any field change changes the packed value
+        final AlarmInfo info = new AlarmInfo(System.currentTimeMillis(), 7, 34);
+        final long packed = PackedAlarmInfo.pack(info, 5);
+        assertNotEquals(packed, PackedAlarmInfo.pack(new AlarmInfo(info, info.alarm + 1), 5));
+        assertNotEquals(packed, PackedAlarmInfo.pack(new AlarmInfo(info, 8, 34), 5));
+        assertNotEquals(packed, PackedAlarmInfo.pack(new AlarmInfo(info, 7, 35), 5));
+        assertNotEquals(packed, PackedAlarmInfo.pack(info, 6));
+
+        // Matching ignores the version only
+        assertTrue(PackedAlarmInfo.matches(PackedAlarmInfo.pack(info, 6), info));
+        assertFalse(PackedAlarmInfo.matches(packed, new AlarmInfo(info, 7, 35)));
+        assertFalse(PackedAlarmInfo.matches(packed, null));
+    }
+
+    @Test
+    public void outOfRange() {
+        final AlarmInfo[] infos = {
+                new AlarmInfo(-1L, 7, 34),
+                new AlarmInfo(MAX_ALARM + 1, 7, 34),
+                new AlarmInfo(0L, 24, 0),
+                new AlarmInfo(0L, -1, 0),
+                new AlarmInfo(0L, 7, 60),
+                new AlarmInfo(0L, 7, -1)
+        };
+        for (AlarmInfo info : infos) {
+            assertFalse(PackedAlarmInfo.canPack(info));
+            try {
+                PackedAlarmInfo.pack(info, 0);
+                fail("Packed " + info.alarm + " " + info.timeHour + ":" + info.timeMinute);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        try {
+            PackedAlarmInfo.pack(new AlarmInfo(0L, 7, 34), PackedAlarmInfo.MAX_VERSION + 1);
+            fail("Packed an out of range version");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void nextVersion() {
+        assertEquals(1, PackedAlarmInfo.nextVersion(0));
+        assertEquals(2, PackedAlarmInfo.nextVersion(1));
+        assertEquals(1, PackedAlarmInfo.nextVersion(PackedAlarmInfo.MAX_VERSION));
+    }
+}
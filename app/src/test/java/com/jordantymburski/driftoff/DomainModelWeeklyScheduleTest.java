@@ -0,0 +1,245 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.WeeklySchedule;
+import com.jordantymburski.driftoff.domain.model.ZoneTransitions;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DomainModelWeeklyScheduleTest {
+    // Zones with ordinary, half hour, 30 minute DST, southern hemisphere and no DST rules
+    private static final String[] ZONES = {
+            "America/Toronto", "America/St_Johns", "Europe/London", "Australia/Sydney",
+            "Australia/Lord_Howe", "America/Santiago", "Asia/Kolkata", "UTC"
+    };
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    @After
+    public void cleanUp() {
+        ZoneTransitions.invalidate();
+    }
+
+    /**
+     * Reference calculation with a calendar: walk the local days from the date of the time and
+     * take the first enabled setpoint after the time
+     * @param schedule the schedule
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @return unix epoch time in milliseconds
+     */
+    private static long calendarNext(WeeklySchedule schedule, TimeZone zone, long time) {
+        final Calendar now = Calendar.getInstance(zone);
+        now.setTimeInMillis(time);
+        for (int day = 0; ; day++) {
+            final Calendar c = Calendar.getInstance(zone);
+            c.clear();
+            c.set(now.get(Calendar.YEAR), now.get(Calendar.MONTH),
+                    now.get(Calendar.DAY_OF_MONTH) + day);
+            final int setpoint = schedule.getSetpoint(c.get(Calendar.DAY_OF_WEEK));
+            if (setpoint != WeeklySchedule.OFF) {
+                c.set(Calendar.HOUR_OF_DAY, setpoint / 60);
+                c.set(Calendar.MINUTE, setpoint % 60);
+                if (c.getTimeInMillis() > time) {
+                    return c.getTimeInMillis();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a schedule with random days enabled, at least one
+     * @return the schedule
+     */
+    private WeeklySchedule randomSchedule() {
+        WeeklySchedule schedule = WeeklySchedule.EMPTY;
+        while (schedule.isEmpty()) {
+            for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+                if (mRandom.nextBoolean()) {
+                    // Bias towards the small hours, where the DST transitions happen
+                    final int hour = mRandom.nextBoolean() ? mRandom.nextInt(4)
+                                                           : mRandom.nextInt(24);
+                    schedule = schedule.with(day, hour, mRandom.nextInt(60));
+                }
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Creates a unix epoch time from local time fields
+     * @param zone the time zone
+     * @param year year
+     * @param month calendar month (0-11)
+     * @param day day of the month
+     * @param hour 0-23 hour
+     * @param minute minute
+     * @return unix epoch time in milliseconds
+     */
+    private static long time(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        final Calendar c = Calendar.getInstance(zone);
+        c.clear();
+        c.set(year, month, day, hour, minute, 0);
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Creates the weeknight 22:30 and weekend 00:30 schedule
+     * @return the schedule
+     */
+    private static WeeklySchedule weeknights() {
+        return WeeklySchedule.EMPTY
+                .with(Calendar.MONDAY, 22, 30)
+                .with(Calendar.TUESDAY, 22, 30)
+                .with(Calendar.WEDNESDAY, 22, 30)
+                .with(Calendar.THURSDAY, 22, 30)
+                .with(Calendar.FRIDAY, 22, 30)
+                .with(Calendar.SATURDAY, 0, 30)
+                .with(Calendar.SUNDAY, 0, 30);
+    }
+
+    @Test
+    public void randomCorpus() {
+        // 2010 to 2035, every zone
+        final long start = 1262304000000L;
+        final long span = TimeUnit.DAYS.toMillis(25 * 365);
+        for (String id : ZONES) {
+            final TimeZone zone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 2000; i++) {
+                final WeeklySchedule schedule = randomSchedule();
+                final long time = start + (long) (mRandom.nextDouble() * span);
+                final ZoneTransitions table = ZoneTransitions.build(zone, time);
+                assertEquals(id + " at " + time,
+                        calendarNext(schedule, zone, time), schedule.next(table, time));
+            }
+        }
+    }
+
+    @Test
+    public void weeknightExample() {
+        final TimeZone zone = TimeZone.getTimeZone("America/Toronto");
+        final WeeklySchedule schedule = weeknights();
+
+        // Friday 3 May 2019 at 21:00: tonight at 22:30
+        VirtualTimeSource clock = new VirtualTimeSource(time(zone, 2019, 4, 3, 21, 0), zone);
+        AlarmInfo info = schedule.nextAlarm(clock);
+        assertEquals(time(zone, 2019, 4, 3, 22, 30), info.alarm);
+        assertEquals(22, info.timeHour);
+        assertEquals(30, info.timeMinute);
+
+        // Friday at 23:00: early Saturday at 00:30
+        clock.setTime(time(zone, 2019, 4, 3, 23, 0));
+        info = schedule.nextAlarm(clock);
+        assertEquals(time(zone, 2019, 4, 4, 0, 30), info.alarm);
+        assertEquals(0, info.timeHour);
+        assertEquals(30, info.timeMinute);
+
+        // Sunday at 01:00: Monday at 22:30
+        clock.setTime(time(zone, 2019, 4, 5, 1, 0));
+        assertEquals(time(zone, 2019, 4, 6, 22, 30), schedule.nextAlarm(clock).alarm);
+
+        // Exactly at the setpoint: the next one
+        clock.setTime(time(zone, 2019, 4, 6, 22, 30));
+        assertEquals(time(zone, 2019, 4, 7, 22, 30), schedule.nextAlarm(clock).alarm);
+    }
+
+    @Test
+    public void singleDay() {
+        // Only Wednesday: from Wednesday after the setpoint, a full week ahead
+        final TimeZone zone = TimeZone.getTimeZone("UTC");
+        final WeeklySchedule schedule = WeeklySchedule.EMPTY.with(Calendar.WEDNESDAY, 7, 15);
+        final VirtualTimeSource clock =
+                new VirtualTimeSource(time(zone, 2019, 4, 8, 8, 0), zone);
+        assertEquals(time(zone, 2019, 4, 15, 7, 15), schedule.nextAlarm(clock).alarm);
+        clock.setTime(time(zone, 2019, 4, 8, 7, 0));
+        assertEquals(time(zone, 2019, 4, 8, 7, 15), schedule.nextAlarm(clock).alarm);
+    }
+
+    @Test
+    public void dstPreview() {
+        // Across the spring and fall transitions, including setpoints in the gap and overlap
+        final TimeZone zone = TimeZone.getTimeZone("America/Toronto");
+        final WeeklySchedule schedule = weeknights()
+                .with(Calendar.SUNDAY, 2, 30)
+                .with(Calendar.SATURDAY, 1, 30);
+        for (long begin : new long[] {
+                time(zone, 2019, 2, 1, 12, 0), time(zone, 2019, 9, 25, 12, 0) }) {
+            final VirtualTimeSource clock = new VirtualTimeSource(begin, zone);
+            final long[] times = schedule.nextFireTimes(clock, 60);
+            assertEquals(60, times.length);
+            long previous = begin;
+            for (long time : times) {
+                assertTrue(time > previous);
+                assertEquals(calendarNext(schedule, zone, previous), time);
+                previous = time;
+            }
+        }
+    }
+
+    @Test
+    public void longPreview() {
+        // Beyond the cached table window, and the cached table is left in place
+        final TimeZone zone = TimeZone.getTimeZone("Europe/London");
+        final long begin = time(zone, 2019, 0, 1, 12, 0);
+        final VirtualTimeSource clock = new VirtualTimeSource(begin, zone);
+        final WeeklySchedule schedule = randomSchedule();
+        final ZoneTransitions cached = ZoneTransitions.forZone(zone, begin);
+
+        long previous = begin;
+        for (long time : schedule.nextFireTimes(clock, 1000)) {
+            assertEquals(calendarNext(schedule, zone, previous), time);
+            previous = time;
+        }
+        assertSame(cached, ZoneTransitions.forZone(zone, begin));
+    }
+
+    @Test
+    public void empty() {
+        final VirtualTimeSource clock =
+                new VirtualTimeSource(System.currentTimeMillis(), TimeZone.getDefault());
+        assertTrue(WeeklySchedule.EMPTY.isEmpty());
+        assertNull(WeeklySchedule.EMPTY.nextAlarm(clock));
+        assertEquals(0, WeeklySchedule.EMPTY.nextFireTimes(clock, 10).length);
+        assertTrue(WeeklySchedule.EMPTY.with(Calendar.MONDAY, 1, 2)
+                .without(Calendar.MONDAY).isEmpty());
+    }
+
+    @Test
+    public void equality() {
+        final WeeklySchedule schedule = weeknights();
+        assertEquals(schedule, weeknights());
+        assertEquals(schedule.hashCode(), weeknights().hashCode());
+        assertNotEquals(schedule, schedule.with(Calendar.MONDAY, 22, 31));
+        assertNotEquals(schedule, schedule.without(Calendar.MONDAY));
+        assertEquals(WeeklySchedule.EMPTY, schedule.without(Calendar.SUNDAY)
+                .without(Calendar.MONDAY).without(Calendar.TUESDAY)
+                .without(Calendar.WEDNESDAY).without(Calendar.THURSDAY)
+                .without(Calendar.FRIDAY).without(Calendar.SATURDAY));
+        assertEquals(22 * 60 + 30, schedule.getSetpoint(Calendar.MONDAY));
+    }
+
+    @Test
+    public void outOfRange() {
+        final int[][] args = { { 0, 1, 0 }, { 8, 1, 0 }, { 1, 24, 0 }, { 1, -1, 0 },
+                               { 1, 1, 60 }, { 1, 1, -1 } };
+        for (int[] arg : args) {
+            try {
+                WeeklySchedule.EMPTY.with(arg[0], arg[1], arg[2]);
+                fail("Set day " + arg[0] + " to " + arg[1] + ":" + arg[2]);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.model.ZoneTransitions;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DomainModelZoneTransitionsBenchmark {
+    private static final int BENCHMARK_ROUNDS = 1000000;
+
+    @After
+    public void cleanUp() {
+        ZoneTransitions.invalidate();
+    }
+
+    /**
+     * The calendar arithmetic the table lookup replaced: the setpoint on the local date of the
+     * time, or on the next local date if that is not after the time
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @param hour 0-23 hour setpoint
+     * @param minute minute setpoint
+     * @return unix epoch time in milliseconds
+     */
+    private static long calendarNext(TimeZone zone, long time, int hour, int minute) {
+        final Calendar c = Calendar.getInstance(zone);
+        c.setTimeInMillis(time);
+        c.set(Calendar.HOUR_OF_DAY, hour);
+        c.set(Calendar.MINUTE, minute);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        if (c.getTimeInMillis() <= time) {
+            c.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void nextSetpoint() {
+        final TimeZone zone = TimeZone.getTimeZone("America/Toronto");
+        final long start = 1560651000000L;
+        final long step = TimeUnit.MINUTES.toMillis(1);
+        long sink = 0L;
+
+        // Warm up both paths
+        for (int i = 0; i < BENCHMARK_ROUNDS / 10; i++) {
+            sink += calendarNext(zone, start + i * step, 23, 30);
+            sink += ZoneTransitions.forZone(zone, start + i * step).next(start + i * step, 23, 30);
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            sink += calendarNext(zone, start + i * step, 23, 30);
+        }
+        final long calendarTime = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            final long time = start + i * step;
+            sink += ZoneTransitions.forZone(zone, time).next(time, 23, 30);
+        }
+        final long tableTime = System.nanoTime() - begin;
+
+        assertNotEquals(0L, sink);
+        System.out.println("Next setpoint, " + BENCHMARK_ROUNDS + " calls: Calendar "
+                + calendarTime / BENCHMARK_ROUNDS + " ns/op, ZoneTransitions "
+                + tableTime / BENCHMARK_ROUNDS + " ns/op");
+    }
+}
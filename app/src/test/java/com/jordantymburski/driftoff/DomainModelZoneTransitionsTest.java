@@ -0,0 +1,157 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.model.ZoneTransitions;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DomainModelZoneTransitionsTest {
+    // Zones with ordinary, half hour, 30 minute DST, southern hemisphere and no DST rules
+    private static final String[] ZONES = {
+            "America/Toronto", "America/St_Johns", "Europe/London", "Europe/Berlin",
+            "Australia/Sydney", "Australia/Lord_Howe", "America/Santiago", "Asia/Tehran",
+            "Asia/Kolkata", "Pacific/Chatham", "UTC"
+    };
+
+    /**
+     * Random number generator instance
+     */
+    private final Random mRandom = new Random();
+
+    @After
+    public void cleanUp() {
+        ZoneTransitions.invalidate();
+    }
+
+    /**
+     * Reference calculation with a calendar: the setpoint on the local date of the time, or on the
+     * next local date if that is not after the time
+     * @param zone the time zone
+     * @param time unix epoch time in milliseconds
+     * @param hour 0-23 hour setpoint
+     * @param minute minute setpoint
+     * @return unix epoch time in milliseconds
+     */
+    private static long calendarNext(TimeZone zone, long time, int hour, int minute) {
+        final Calendar now = Calendar.getInstance(zone);
+        now.setTimeInMillis(time);
+        for (int day = 0; ; day++) {
+            final Calendar c = Calendar.getInstance(zone);
+            c.clear();
+            c.set(now.get(Calendar.YEAR), now.get(Calendar.MONTH),
+                    now.get(Calendar.DAY_OF_MONTH) + day, hour, minute, 0);
+            if (c.getTimeInMillis() > time) {
+                return c.getTimeInMillis();
+            }
+        }
+    }
+
+    /**
+     * Creates a unix epoch time from local time fields
+     * @param zone the time zone
+     * @param year year
+     * @param month calendar month (0-11)
+     * @param day day of the month
+     * @param hour 0-23 hour
+     * @param minute minute
+     * @return unix epoch time in milliseconds
+     */
+    private static long time(TimeZone zone, int year, int month, int day, int hour, int minute) {
+        final Calendar c = Calendar.getInstance(zone);
+        c.clear();
+        c.set(year, month, day, hour, minute, 0);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void randomCorpus() {
+        // 2010 to 2035, every zone
+        final long start = 1262304000000L;
+        final long span = TimeUnit.DAYS.toMillis(25 * 365);
+        for (String id : ZONES) {
+            final TimeZone zone = TimeZone.getTimeZone(id);
+            for (int i = 0; i < 10000; i++) {
+                final long time = start + (long) (mRandom.nextDouble() * span);
+                final int hour = mRandom.nextInt(24);
+                final int minute = mRandom.nextInt(60);
+                assertEquals(id + " at " + time + " for " + hour + ":" + minute,
+                        calendarNext(zone, time, hour, minute),
+                        ZoneTransitions.forZone(zone, time).next(time, hour, minute));
+            }
+        }
+    }
+
+    @Test
+    public void transitionDays() {
+        // Every setpoint through every minute around each change, where gaps and overlaps are
+        for (String id : ZONES) {
+            final TimeZone zone = TimeZone.getTimeZone(id);
+            final ZoneTransitions table = ZoneTransitions.forZone(zone, 1546300800000L);
+            for (long time = 1546300800000L; time < 1577836800000L;
+                    time += TimeUnit.DAYS.toMillis(1)) {
+                if (zone.getOffset(time) == zone.getOffset(time + TimeUnit.DAYS.toMillis(1))) {
+                    continue;
+                }
+                for (long t = time; t < time + TimeUnit.DAYS.toMillis(1);
+                        t += TimeUnit.MINUTES.toMillis(7)) {
+                    for (int setpoint = 0; setpoint < 24 * 60; setpoint += 13) {
+                        assertEquals(id + " at " + t + " for " + setpoint,
+                                calendarNext(zone, t, setpoint / 60, setpoint % 60),
+                                table.next(t, setpoint / 60, setpoint % 60));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gapAndOverlap() {
+        final TimeZone zone = TimeZone.getTimeZone("America/Toronto");
+
+        // Spring forward: 2:30 does not exist on March 10, 2019 and is read as 3:30 EDT
+        final long beforeGap = time(zone, 2019, Calendar.MARCH, 10, 0, 0);
+        assertEquals(time(zone, 2019, Calendar.MARCH, 10, 3, 30),
+                ZoneTransitions.forZone(zone, beforeGap).next(beforeGap, 2, 30));
+
+        // Once past it, the next one is 2:30 EDT the following day
+        final long afterGap = time(zone, 2019, Calendar.MARCH, 10, 12, 0);
+        assertEquals(time(zone, 2019, Calendar.MARCH, 11, 2, 30),
+                ZoneTransitions.forZone(zone, afterGap).next(afterGap, 2, 30));
+
+        // Fall back: 1:30 happens twice on November 3, 2019 and the later, EST, one is used
+        final long beforeOverlap = time(zone, 2019, Calendar.NOVEMBER, 3, 0, 0);
+        assertEquals(beforeOverlap + TimeUnit.MINUTES.toMillis(150),
+                ZoneTransitions.forZone(zone, beforeOverlap).next(beforeOverlap, 1, 30));
+    }
+
+    @Test
+    public void cache() {
+        final TimeZone toronto = TimeZone.getTimeZone("America/Toronto");
+        final TimeZone london = TimeZone.getTimeZone("Europe/London");
+        final long time = 1560651000000L;
+
+        // Reused while the zone and time stay covered
+        final ZoneTransitions table = ZoneTransitions.forZone(toronto, time);
+        assertSame(table, ZoneTransitions.forZone(toronto, time + TimeUnit.DAYS.toMillis(100)));
+        assertSame(table, ZoneTransitions.forZone(
+                TimeZone.getTimeZone("America/Toronto"), time));
+
+        // Rebuilt on a zone change, clock jump or invalidation
+        final ZoneTransitions other = ZoneTransitions.forZone(london, time);
+        assertNotSame(table, other);
+        assertEquals(TimeUnit.HOURS.toMillis(1), other.offsetAt(time));
+        assertFalse(other.covers(london, time - TimeUnit.DAYS.toMillis(30)));
+        assertFalse(other.covers(london, time + TimeUnit.DAYS.toMillis(400)));
+        assertNotSame(other, ZoneTransitions.forZone(london, time + TimeUnit.DAYS.toMillis(400)));
+        final ZoneTransitions current = ZoneTransitions.forZone(london, time);
+        ZoneTransitions.invalidate();
+        assertNotSame(current, ZoneTransitions.forZone(london, time));
+    }
+}
@@ -0,0 +1,148 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.data.BinaryHistoryStorage;
+import com.jordantymburski.driftoff.domain.adapter.HistoryStorage;
+import com.jordantymburski.driftoff.domain.model.AlarmInfo;
+import com.jordantymburski.driftoff.domain.model.SleepSession;
+import com.jordantymburski.driftoff.domain.model.SleepStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DomainSimulationTest {
+    private static final double DELTA = 1e-9;
+    private static final int NIGHTS = 180;
+    private static final int SETPOINT_HOUR = 23;
+    private static final int SETPOINT_MINUTE = 30;
+
+    /**
+     * Virtual clock: January 1, 2019, 22:00 in Toronto
+     */
+    private final VirtualTimeSource mClock = new VirtualTimeSource(
+            1546398000000L, TimeZone.getTimeZone("America/Toronto"));
+
+    /**
+     * History file under test
+     */
+    private File mFile;
+
+    @Before
+    public void setup() throws IOException {
+        mFile = File.createTempFile("history", ".bin");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void cleanUp() {
+        mFile.delete();
+    }
+
+    /**
+     * Creates a calendar at the current virtual time
+     * @return the calendar
+     */
+    private Calendar now() {
+        final Calendar calendar = Calendar.getInstance(mClock.getTimeZone());
+        calendar.setTimeInMillis(mClock.currentTimeMillis());
+        return calendar;
+    }
+
+    /**
+     * Moves the virtual clock to 22:00 local time
+     * @param days number of days ahead of the current local date
+     */
+    private void evening(int days) {
+        final Calendar calendar = now();
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        calendar.set(Calendar.HOUR_OF_DAY, 22);
+        calendar.set(Calendar.MINUTE, 0);
+        mClock.setTime(calendar.getTimeInMillis());
+    }
+
+    @Test
+    public void nightlyUse() {
+        final HistoryStorage history = new BinaryHistoryStorage(mFile);
+        final AlarmInfo idle = new AlarmInfo(0L, SETPOINT_HOUR, SETPOINT_MINUTE);
+        final long realStart = System.nanoTime();
+
+        int cancelled = 0;
+        for (int night = 0; night < NIGHTS; night++) {
+            // A stretch of the nights are spent in another time zone
+            mClock.setTimeZone(TimeZone.getTimeZone(night >= 90 && night < 100
+                    ? "Europe/London" : "America/Toronto"));
+            evening(0);
+
+            // Arm the alarm. It must land on the local setpoint, across DST changes
+            final AlarmInfo armed = new AlarmInfo(idle, idle.getTimeInMillis(mClock));
+            final Calendar alarmTime = now();
+            alarmTime.setTimeInMillis(armed.alarm);
+            assertEquals(SETPOINT_HOUR, alarmTime.get(Calendar.HOUR_OF_DAY));
+            assertEquals(SETPOINT_MINUTE, alarmTime.get(Calendar.MINUTE));
+            assertTrue(armed.isActive(mClock));
+            assertEquals(90L, armed.getMinutesTillAlarm(mClock));
+            history.armed(mClock.currentTimeMillis(), armed.timeHour, armed.timeMinute);
+
+            // Every fifth night is cancelled an hour in, otherwise the alarm fires
+            final boolean cancel = night % 5 == 0;
+            if (cancel) {
+                mClock.advance(1, TimeUnit.HOURS);
+                assertTrue(armed.isActive(mClock));
+                cancelled++;
+            } else {
+                mClock.setTime(armed.alarm - 1L);
+                assertTrue(armed.isActive(mClock));
+                mClock.advance(1, TimeUnit.MILLISECONDS);
+                assertFalse(armed.isActive(mClock));
+            }
+            final SleepSession session = history.stopped(mClock.currentTimeMillis(), cancel);
+            assertNotNull(session);
+            assertEquals(cancel, session.cancelled);
+
+            evening(1);
+        }
+
+        // Replay the recorded history into statistics
+        final List<SleepSession> sessions = new ArrayList<>();
+        new BinaryHistoryStorage(mFile).scan(new HistoryStorage.Visitor() {
+            @Override
+            public void visit(SleepSession session) {
+                sessions.add(session);
+            }
+        });
+        assertEquals(NIGHTS, sessions.size());
+
+        SleepStats stats = SleepStats.EMPTY;
+        for (int night = 0; night < NIGHTS; night++) {
+            final SleepSession session = sessions.get(night);
+            final Calendar stop = Calendar.getInstance(TimeZone.getTimeZone(
+                    night >= 90 && night < 100 ? "Europe/London" : "America/Toronto"));
+            stop.setTimeInMillis(session.stoppedAt);
+            stats = stats.plus(session.timeHour * 60 + session.timeMinute,
+                    stop.get(Calendar.HOUR_OF_DAY) * 60 + stop.get(Calendar.MINUTE),
+                    session.cancelled);
+        }
+        assertEquals(NIGHTS, stats.count);
+        assertEquals(cancelled, stats.cancelCount);
+        assertEquals(SETPOINT_HOUR * 60 + SETPOINT_MINUTE, stats.getAverageSetpoint(), DELTA);
+        assertEquals(0.0, stats.getSetpointVariance(), DELTA);
+
+        // Stops are at 23:00 when cancelled and 23:30 otherwise
+        final double expectedStop = (cancelled * (23 * 60) + (NIGHTS - cancelled)
+                * (SETPOINT_HOUR * 60 + SETPOINT_MINUTE)) / (double) NIGHTS;
+        assertEquals(expectedStop, stats.getAverageStop(), DELTA);
+
+        // Half a year of nights with no real waiting
+        assertTrue(System.nanoTime() - realStart < TimeUnit.SECONDS.toNanos(5));
+    }
+}
@@ -0,0 +1,75 @@
+package com.jordantymburski.driftoff;
+
+import com.jordantymburski.driftoff.domain.adapter.TimeSource;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controllable time source for tests. Time only moves when the test moves it, so days of use can
+ * be replayed without waiting
+ */
+public class VirtualTimeSource implements TimeSource {
+    /**
+     * The current virtual time
+     */
+    private volatile long mTime;
+
+    /**
+     * The current virtual time zone
+     */
+    private volatile TimeZone mTimeZone;
+
+    /**
+     * Main constructor
+     * @param time starting unix epoch time in milliseconds
+     * @param timeZone starting time zone
+     */
+    public VirtualTimeSource(long time, TimeZone timeZone) {
+        mTime = time;
+        mTimeZone = timeZone;
+    }
+
+    /* ----------------------------------------------
+     * PUBLIC FUNCTIONS
+     * ---------------------------------------------- */
+
+    /**
+     * Moves the time forward
+     * @param duration amount to move by
+     * @param unit unit of the duration
+     */
+    public void advance(long duration, TimeUnit unit) {
+        mTime += unit.toMillis(duration);
+    }
+
+    /**
+     * Jumps to a specific time, forward or back
+     * @param time unix epoch time in milliseconds
+     */
+    public void setTime(long time) {
+        mTime = time;
+    }
+
+    /**
+     * Changes the time zone, as if changed in the device settings
+     * @param timeZone new time zone
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    /* ----------------------------------------------
+     * TimeSource OVERRIDES
+     * ---------------------------------------------- */
+
+    @Override
+    public long currentTimeMillis() {
+        return mTime;
+    }
+
+    @Override
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+}